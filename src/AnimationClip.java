@@ -0,0 +1,69 @@
+import bagel.DrawOptions;
+import bagel.Image;
+
+/**
+ * A looping animation made of frames of an entity's existing sprites.
+ * Each frame draws the entity's sprite with a rotation, or the sprite facing the other way, so
+ * walking, climbing, swinging and rolling can be shown without extra sprite sheets.
+ *
+ * Clips are shared by every entity of a type. An entity only remembers which clip it plays and
+ * the tick it started, and the frame is worked out from the game tick when it is drawn, so
+ * animating adds no work to the update of each tick.
+ */
+public class AnimationClip {
+    private final int ticksPerFrame;
+    private final boolean[] mirrored;
+    private final DrawOptions[] options;
+
+    /**
+     * Creates a clip.
+     *
+     * @param ticksPerFrame The number of ticks each frame is shown for.
+     * @param rotations     The rotation of the sprite in each frame, in radians.
+     * @param mirrored      Whether each frame shows the sprite facing the other way.
+     */
+    public AnimationClip(int ticksPerFrame, double[] rotations, boolean[] mirrored) {
+        this.ticksPerFrame = ticksPerFrame;
+        this.mirrored = mirrored;
+        this.options = new DrawOptions[rotations.length];
+        for (int i = 0; i < rotations.length; i++) {
+            options[i] = new DrawOptions().setRotation(rotations[i]);
+        }
+    }
+
+    /**
+     * Creates a clip whose frames only rotate the sprite.
+     *
+     * @param ticksPerFrame The number of ticks each frame is shown for.
+     * @param rotations     The rotation of the sprite in each frame, in radians.
+     */
+    public AnimationClip(int ticksPerFrame, double... rotations) {
+        this(ticksPerFrame, rotations, new boolean[rotations.length]);
+    }
+
+    /**
+     * Works out which frame of the clip is shown at a tick.
+     *
+     * @param startTick The tick the clip started playing.
+     * @param tick      The current tick.
+     * @return The index of the frame.
+     */
+    public int frameAt(int startTick, int tick) {
+        return Math.floorMod((tick - startTick) / ticksPerFrame, options.length);
+    }
+
+    /**
+     * Draws the frame of the clip shown at a tick.
+     *
+     * @param image         The entity's sprite.
+     * @param mirroredImage The entity's sprite facing the other way.
+     * @param x             The horizontal centre of the entity.
+     * @param y             The vertical centre of the entity.
+     * @param startTick     The tick the clip started playing.
+     * @param tick          The current tick.
+     */
+    public void draw(Image image, Image mirroredImage, double x, double y, int startTick, int tick) {
+        int frame = frameAt(startTick, tick);
+        (mirrored[frame] ? mirroredImage : image).draw(x, y, options[frame]);
+    }
+}
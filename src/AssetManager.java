@@ -0,0 +1,73 @@
+import bagel.Image;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Loads the images each level declares in the config and keeps the most recently used ones for reuse.
+ * Levels share sprite images through the static images of each object class, so what varies per
+ * level is its background. Images are keyed by file, so levels using the same file share one
+ * image, and going back to a recently played level does not load its background again. Once more
+ * files are loaded than the configured limit, the least recently used one is dropped from the cache.
+ * bagel has no way to free an image's texture, so a dropped image is only loaded again if needed,
+ * while its texture stays in video memory. The cache saves reloading and does not bound memory.
+ * Images must be created on the game thread, which owns the OpenGL context, so the next level's
+ * assets are loaded ahead during a frame rather than on another thread.
+ */
+public class AssetManager {
+    private final Properties props;
+    private final Map<String, Image> images;
+
+    /**
+     * Creates an asset manager.
+     *
+     * @param props         The game properties containing each level's assets.
+     * @param residentCount The number of images kept loaded at once.
+     */
+    public AssetManager(Properties props, int residentCount) {
+        this.props = props;
+        this.images = new LinkedHashMap<>(residentCount * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+                return size() > residentCount;
+            }
+        };
+    }
+
+    /**
+     * Returns the background of a level, loading it if it is not resident.
+     * Levels without their own background use the default one.
+     *
+     * @param levelId The level number.
+     * @return The background image.
+     */
+    public Image getBackground(int levelId) {
+        String file = props.getProperty("background.level" + levelId, props.getProperty("backgroundImage"));
+        Image image = images.get(file);
+        if (image == null) {
+            image = new Image(file);
+            images.put(file, image);
+        }
+        return image;
+    }
+
+    /**
+     * Loads the assets of a level ahead of time so that entering it does not stall a frame.
+     *
+     * @param levelId The level number, or 0 for none.
+     */
+    public void preload(int levelId) {
+        if (levelId > 0) {
+            getBackground(levelId);
+        }
+    }
+
+    /**
+     * Returns the number of images currently loaded.
+     *
+     * @return The number of resident images.
+     */
+    public int getResidentCount() {
+        return images.size();
+    }
+}
@@ -0,0 +1,173 @@
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Loads the game's sprites a little at a time while the home screen is showing, instead of all at once
+ * when a level first creates its objects.
+ *
+ * Each sprite class loads its images and collision masks in its static initializer, which runs the first
+ * time the class is used. Left alone, that happens in the middle of the first gameplay frame. The
+ * preloader instead initializes one class after another within a time budget per frame, so the home
+ * screen keeps drawing and can show how far loading has got. Images need the OpenGL context, so this
+ * runs on the game thread.
+ *
+ * Optionally, the preloader then warms up the JIT compiler by simulating a scripted headless session
+ * a hundred or so ticks per frame, so the first minute of play does not run in the interpreter.
+ */
+public class AssetPreloader {
+
+    /** The classes that load sprites in their static initializers, in the order a level first needs them. */
+    public static final List<Class<?>> SPRITE_CLASSES = List.of(
+        GameScreen.class, Platform.class, Ladder.class, Mario.class, DonkeyKong.class, Hammer.class, Barrel.class,
+        Blaster.class, Bullet.class, NormalMonkey.class, SmartMonkey.class, PursuingMonkey.class, ScriptedMonkey.class,
+        Banana.class
+    );
+    private static final int WARM_UP_TICKS_PER_STEP = 120;
+
+    private final Properties props;
+    private final List<Runnable> steps = new ArrayList<>();
+    private int nextStep = 0;
+
+    // the headless game being played to warm up
+    private Game warmUpGame;
+    private GameScreen warmUpScreen;
+    private int warmUpTick;
+
+    /**
+     * Creates a preloader for the sprites and, if configured, the warm-up session.
+     *
+     * @param props The game properties containing the warm-up settings.
+     */
+    public AssetPreloader(Properties props) {
+        this.props = props;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> spriteClass : SPRITE_CLASSES) {
+            steps.add(() -> initialize(lookup, spriteClass));
+        }
+
+        int warmUpTicks = Integer.parseInt(props.getProperty("startup.warmUpTicks", "0"));
+        if (warmUpTicks > 0) {
+            int[] inputs = MatchServer.parseInputs(props.getProperty("startup.warmUpInputs"), warmUpTicks);
+            for (String level : props.getProperty("startup.warmUpLevels").split(",")) {
+                int levelId = Integer.parseInt(level.trim());
+                steps.add(() -> startWarmUp(levelId));
+                for (int start = 0; start < warmUpTicks; start += WARM_UP_TICKS_PER_STEP) {
+                    int end = Math.min(start + WARM_UP_TICKS_PER_STEP, warmUpTicks);
+                    steps.add(() -> playWarmUp(inputs, end));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads every sprite at once, such as before games are simulated on other threads.
+     */
+    public static void loadSprites() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> spriteClass : SPRITE_CLASSES) {
+            initialize(lookup, spriteClass);
+        }
+    }
+
+    /**
+     * Runs the static initializer of a class, which loads its sprites.
+     *
+     * @param lookup      A lookup with access to the class.
+     * @param spriteClass The class.
+     */
+    private static void initialize(MethodHandles.Lookup lookup, Class<?> spriteClass) {
+        try {
+            lookup.ensureInitialized(spriteClass);
+        } catch (IllegalAccessException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Starts a fresh headless game on a level to warm up with.
+     *
+     * @param levelId The level to play.
+     */
+    private void startWarmUp(int levelId) {
+        warmUpGame = new Game(props, true);
+        warmUpScreen = new GameScreen(props);
+        warmUpGame.startLevel(levelId);
+        warmUpScreen.setCurrentStatus(GameScreen.PLAY);
+        warmUpTick = 0;
+    }
+
+    /**
+     * Plays the warm-up game up to a tick, starting the level again whenever it ends.
+     *
+     * @param inputs The buttons held each tick; none are held once they run out.
+     * @param end    The tick to play up to.
+     */
+    private void playWarmUp(int[] inputs, int end) {
+        int levelId = warmUpGame.getCurrentLevel().getLevelId();
+        while (warmUpTick < end) {
+            if (warmUpScreen.getCurrentStatus() != GameScreen.PLAY) {
+                warmUpGame.startLevel(levelId);
+                warmUpScreen.setCurrentStatus(GameScreen.PLAY);
+            }
+            int buttons = warmUpTick < inputs.length ? inputs[warmUpTick] : 0;
+            warmUpTick++;
+            warmUpGame.update(buttons, warmUpScreen, warmUpTick);
+        }
+    }
+
+    /**
+     * Runs loading steps until the time budget for this frame is spent. At least one step runs
+     * each frame, so loading always moves on.
+     *
+     * @param budgetNanos The time the steps may take this frame.
+     * @return True once every step has run.
+     */
+    public boolean advance(long budgetNanos) {
+        long start = System.nanoTime();
+        while (nextStep < steps.size()) {
+            steps.get(nextStep++).run();
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+        if (isDone()) {
+            warmUpGame = null;
+            warmUpScreen = null;
+        }
+        return isDone();
+    }
+
+    /**
+     * Loads the remaining sprites at once and skips the rest of the warm-up, for when the player
+     * starts a level before loading is done.
+     */
+    public void finish() {
+        while (nextStep < SPRITE_CLASSES.size()) {
+            steps.get(nextStep++).run();
+        }
+        nextStep = steps.size();
+        warmUpGame = null;
+        warmUpScreen = null;
+    }
+
+    /**
+     * Checks whether every loading step has run.
+     *
+     * @return True once loading is done.
+     */
+    public boolean isDone() {
+        return nextStep == steps.size();
+    }
+
+    /**
+     * Returns how much of the loading is done.
+     *
+     * @return The fraction of steps that have run, from 0 to 1.
+     */
+    public double getProgress() {
+        return steps.isEmpty() ? 1 : (double) nextStep / steps.size();
+    }
+}
@@ -1,12 +1,13 @@
 import bagel.Image;
 
 /**
- * Represents a Banana thrown by SmartMonkey
+ * Represents a Banana thrown by a ThrowingMonkey
  * The banana travels horizontally in the specified direction and disappears
  * after covering a certain maximum distance.
  */
 public class Banana extends Projectile {
     private static final Image BANANA = new Image("res/banana.png");
+    private static final CollisionMask BANANA_MASK = CollisionMask.load("res/banana.png");
     private static final double SPEED = 1.8;
 
     /**
@@ -39,4 +40,14 @@ public class Banana extends Projectile {
     public Image getImage() {
         return BANANA;
     }
+
+    /**
+     * Returns the solid pixels of the banana.
+     *
+     * @return The collision mask.
+     */
+    @Override
+    public CollisionMask getMask() {
+        return BANANA_MASK;
+    }
 }
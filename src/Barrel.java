@@ -1,16 +1,42 @@
 import bagel.*;
+import java.nio.ByteBuffer;
 
 /**
  * Represents a barrel object in the game.
- * Barrels are affected by gravity and can be destroyed.
+ * Barrels are affected by gravity and can be destroyed. Barrels thrown by Donkey Kong instead
+ * follow the level's {@link BarrelPaths}: they roll along a platform, drop off its ends, sometimes
+ * climb down a ladder, and turn around each time they reach a lower platform, until they leave
+ * the screen.
  */
 public class Barrel extends GameObject implements AffectedByGravity, Destroyable {
 
     private static final Image BARREL = new Image("res/barrel.png");
+
+    // Animation clips shared by all barrels
+    private static final int IDLE_CLIP = 0;
+    private static final int ROLL_CLIP = 1;
+    private static final AnimationClip[] CLIPS = {
+            new AnimationClip(1, 0),
+            new AnimationClip(4, 0, Math.PI / 2, Math.PI, Math.PI * 1.5)
+    };
     private boolean isDestroyed = false;
     private final Motion motion;
     private static final double BARREL_GRAVITY = 0.4;
     private static final double BARREL_TERMINAL_VELOCITY = 5;
+    private static final double ROLL_SPEED = 2.0;
+    private static final double LADDER_SPEED = 1.5;
+
+    // How a barrel moves: resting barrels from the config use gravity, thrown ones follow the paths
+    private static final byte RESTING = 0;
+    private static final byte ROLLING = 1;
+    private static final byte FALLING = 2;
+    private static final byte DESCENDING = 3;
+    private byte mode = RESTING;
+    private double vx = 0;
+    private int segment = BarrelPaths.NONE;
+    private int target = BarrelPaths.NONE;
+    private int nextLadder = BarrelPaths.NONE;
+    private int seed = 0;
 
     /**
      * Constructs a new Barrel object at the specified coordinates.
@@ -28,8 +54,19 @@ public class Barrel extends GameObject implements AffectedByGravity, Destroyable
      */
     @Override
     public void draw() {
+        draw(clipStartTick);
+    }
+
+    /**
+     * Draws the frame of the barrel's animation shown at a tick, if it is not destroyed.
+     *
+     * @param tick The current tick.
+     */
+    @Override
+    public void draw(int tick) {
         if (!isDestroyed) {
-            BARREL.draw(x, y);
+            playClip(vx != 0 ? ROLL_CLIP : IDLE_CLIP, tick);
+            CLIPS[clipId].draw(BARREL, BARREL, x, y, clipStartTick, tick);
         }
     }
 
@@ -43,17 +80,136 @@ public class Barrel extends GameObject implements AffectedByGravity, Destroyable
     }
 
     /**
-     * Applies gravity to the barrel.
+     * Returns the height of the barrel sprite.
+     *
+     * @return The height in pixels.
+     */
+    public static double getSpriteHeight() {
+        return BARREL.getHeight();
+    }
+
+    /**
+     * Applies gravity to the barrel, unless it was thrown and follows the level's paths instead.
      *
      * @param platforms An array of Platform objects that the barrel may land on.
      */
     @Override
     public void applyGravity(Platform[] platforms) {
-        if (!isDestroyed) {
+        if (!isDestroyed && mode == RESTING) {
             motion.applyGravity(this, platforms);
         }
     }
 
+    /**
+     * Moves a thrown barrel one frame along the level's paths, and destroys it once it leaves the screen.
+     * Rolling barrels only check the end of their segment and the next ladder ahead. Whether a barrel
+     * takes a ladder depends only on its seed and the ladder, so replays roll the same way.
+     *
+     * @param paths The rolling paths of the level.
+     */
+    public void roll(BarrelPaths paths) {
+        if (isDestroyed || mode == RESTING) {
+            return;
+        }
+        boolean rollRight = vx > 0;
+
+        if (mode == ROLLING) {
+            x += vx;
+            if (nextLadder != BarrelPaths.NONE) {
+                double ladderX = paths.getLadderX(segment, nextLadder);
+                if (rollRight ? x >= ladderX : x <= ladderX) {
+                    if (takesLadder(nextLadder)) {
+                        x = ladderX;
+                        target = paths.getLadderTarget(segment, nextLadder);
+                        mode = DESCENDING;
+                        return;
+                    }
+                    nextLadder = paths.getNextLadder(segment, nextLadder, rollRight);
+                }
+            }
+            if (x < paths.getLeft(segment) || x > paths.getRight(segment)) {
+                target = paths.getDrop(segment, rollRight);
+                motion.setVelocityY(0);
+                mode = FALLING;
+            }
+        } else if (mode == FALLING) {
+            double vy = Math.min(motion.getVelocityY() + BARREL_GRAVITY, BARREL_TERMINAL_VELOCITY);
+            motion.setVelocityY(vy);
+            y += vy;
+            if (target != BarrelPaths.NONE && y >= paths.getSurface(target)) {
+                land(paths);
+            }
+        } else {
+            y += LADDER_SPEED;
+            if (y >= paths.getSurface(target)) {
+                land(paths);
+            }
+        }
+
+        if (x < 0 || x > Window.getWidth() || y > Window.getHeight()) {
+            destroy();
+        }
+    }
+
+    /**
+     * Puts a falling or descending barrel onto the segment it reached, turned around.
+     *
+     * @param paths The rolling paths of the level.
+     */
+    private void land(BarrelPaths paths) {
+        segment = target;
+        y = paths.getSurface(segment);
+        vx = -vx;
+        motion.setVelocityY(0);
+        nextLadder = paths.findLadderAhead(segment, x, vx > 0);
+        mode = ROLLING;
+    }
+
+    /**
+     * Finds the next ladder ahead of a rolling barrel again on rebuilt paths, such as after the level's
+     * ladders were reloaded, since the ladder it was heading for may have moved or been removed.
+     * Falling and descending barrels keep their target, as the segments only change with the platforms.
+     *
+     * @param paths The new rolling paths of the level.
+     */
+    public void followPaths(BarrelPaths paths) {
+        if (!isDestroyed && mode == ROLLING) {
+            nextLadder = paths.findLadderAhead(segment, x, vx > 0);
+        }
+    }
+
+    /**
+     * Decides whether the barrel climbs down a ladder it reaches, about one time in four.
+     *
+     * @param ladder The index of the ladder on the barrel's segment.
+     * @return True if the barrel takes the ladder.
+     */
+    private boolean takesLadder(int ladder) {
+        int hash = (seed ^ segment * 0x45D9F3B ^ ladder * 0x119DE1F3) * 0x9E3779B9;
+        return (hash >>> 30) == 0;
+    }
+
+    /**
+     * Brings a destroyed barrel back into play, thrown from the given position.
+     *
+     * @param x         The x-coordinate the barrel is thrown from.
+     * @param y         The y-coordinate the barrel is thrown from.
+     * @param rollRight True to roll to the right, false to roll to the left.
+     * @param seed      The number that decides which ladders the barrel takes.
+     * @param paths     The rolling paths of the level.
+     */
+    public void respawn(double x, double y, boolean rollRight, int seed, BarrelPaths paths) {
+        this.x = x;
+        this.y = y;
+        this.seed = seed;
+        // the barrel turns around when it lands, so it starts facing away from where it will roll
+        this.vx = rollRight ? -ROLL_SPEED : ROLL_SPEED;
+        this.segment = BarrelPaths.NONE;
+        this.target = paths.findSegmentBelow(x, y);
+        this.mode = FALLING;
+        motion.setVelocityY(0);
+        isDestroyed = false;
+    }
     /**
      * Marks the barrel as destroyed so it no longer updates or renders.
      */
@@ -70,5 +226,40 @@ public class Barrel extends GameObject implements AffectedByGravity, Destroyable
     public boolean isDestroyed() {
         return isDestroyed;
     }
-}
 
+    /**
+     * Writes the barrel's position, velocities, path position and destroyed state to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        motion.writeState(buffer);
+        buffer.putDouble(vx);
+        buffer.put(mode);
+        buffer.putInt(segment);
+        buffer.putInt(target);
+        buffer.putInt(nextLadder);
+        buffer.putInt(seed);
+        buffer.put((byte) (isDestroyed ? 1 : 0));
+    }
+
+    /**
+     * Restores the barrel's position, velocities, path position and destroyed state from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        motion.readState(buffer);
+        vx = buffer.getDouble();
+        mode = buffer.get();
+        segment = buffer.getInt();
+        target = buffer.getInt();
+        nextLadder = buffer.getInt();
+        seed = buffer.getInt();
+        isDestroyed = buffer.get() != 0;
+    }
+}
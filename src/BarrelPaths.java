@@ -0,0 +1,298 @@
+import bagel.Window;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+
+/**
+ * The paths thrown barrels roll along in a level, worked out once when the level loads.
+ * Platforms at the same height that touch or overlap, such as a floor built from several platforms,
+ * form one segment that barrels roll along. Rolling off either end of a segment drops a barrel
+ * onto the segment below that end, and each ladder going down from a segment is a point where a
+ * barrel may climb down to the segment at the ladder's foot. A rolling barrel only needs the segment
+ * it is on and the next ladder ahead of it, so moving it never scans the platforms.
+ */
+public final class BarrelPaths {
+
+    /** Value used when there is no segment or ladder. */
+    public static final int NONE = -1;
+
+    private static final double LADDER_MARGIN = 10;
+
+    private final int segmentCount;
+    private final double[] left;
+    private final double[] right;
+    private final double[] surface;
+    private final int[] dropLeft;
+    private final int[] dropRight;
+    private final double[][] ladderX;
+    private final int[][] ladderTarget;
+
+    /**
+     * Works out the segments, drop points and ladders of a level.
+     *
+     * @param platforms    The platforms of the level.
+     * @param ladders      The ladders of the level.
+     * @param barrelHeight The height of the barrel sprite.
+     */
+    public BarrelPaths(Platform[] platforms, Ladder[] ladders, double barrelHeight) {
+        // join platforms at the same height that touch or overlap, going through them from left to right
+        Platform[] sorted = platforms.clone();
+        Arrays.sort(sorted, Comparator.comparingDouble(BarrelPaths::getTop)
+                .thenComparingDouble(BarrelPaths::getLeftEnd));
+        double[] joinedLeft = new double[sorted.length];
+        double[] joinedRight = new double[sorted.length];
+        double[] joinedTop = new double[sorted.length];
+        int count = 0;
+        for (Platform platform : sorted) {
+            double platformLeft = getLeftEnd(platform);
+            double platformRight = platformLeft + platform.getImage().getWidth();
+            if (count > 0 && joinedTop[count - 1] == getTop(platform) && platformLeft <= joinedRight[count - 1]) {
+                joinedRight[count - 1] = Math.max(joinedRight[count - 1], platformRight);
+            } else {
+                joinedLeft[count] = platformLeft;
+                joinedRight[count] = platformRight;
+                joinedTop[count] = getTop(platform);
+                count++;
+            }
+        }
+        segmentCount = count;
+        left = Arrays.copyOf(joinedLeft, count);
+        right = Arrays.copyOf(joinedRight, count);
+        double[] top = Arrays.copyOf(joinedTop, count);
+        surface = new double[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            surface[i] = top[i] - barrelHeight / 2.0;
+        }
+
+        dropLeft = new int[segmentCount];
+        dropRight = new int[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            dropLeft[i] = findSegmentBelow(left[i], surface[i] + 1);
+            dropRight[i] = findSegmentBelow(right[i], surface[i] + 1);
+        }
+
+        // a ladder goes down from the segment at its top to the segment at its foot
+        ladderX = new double[segmentCount][0];
+        ladderTarget = new int[segmentCount][0];
+        for (Ladder ladder : ladders) {
+            double x = ladder.getX();
+            double ladderTop = ladder.getY() - ladder.getImage().getHeight() / 2.0;
+            double ladderBottom = ladder.getY() + ladder.getImage().getHeight() / 2.0;
+            int from = NONE;
+            int to = NONE;
+            for (int i = 0; i < segmentCount; i++) {
+                if (x >= left[i] && x <= right[i]) {
+                    if (Math.abs(top[i] - ladderTop) <= LADDER_MARGIN) {
+                        from = i;
+                    } else if (Math.abs(top[i] - ladderBottom) <= LADDER_MARGIN) {
+                        to = i;
+                    }
+                }
+            }
+            if (from != NONE && to != NONE) {
+                int n = ladderX[from].length;
+                ladderX[from] = Arrays.copyOf(ladderX[from], n + 1);
+                ladderTarget[from] = Arrays.copyOf(ladderTarget[from], n + 1);
+                ladderX[from][n] = x;
+                ladderTarget[from][n] = to;
+            }
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            sortLadders(i);
+        }
+    }
+
+    /**
+     * @param platform A platform.
+     * @return The y-coordinate of the top of the platform.
+     */
+    private static double getTop(Platform platform) {
+        return platform.getY() - platform.getImage().getHeight() / 2.0;
+    }
+
+    /**
+     * @param platform A platform.
+     * @return The x-coordinate of the left end of the platform.
+     */
+    private static double getLeftEnd(Platform platform) {
+        return platform.getX() - platform.getImage().getWidth() / 2.0;
+    }
+
+    /**
+     * Finds the segment a barrel falling straight down from a point lands on.
+     *
+     * @param x The horizontal position of the barrel.
+     * @param y The vertical centre of the barrel.
+     * @return The highest segment below the point, or {@link #NONE} if the barrel falls off the screen.
+     */
+    public int findSegmentBelow(double x, double y) {
+        int below = NONE;
+        for (int i = 0; i < segmentCount; i++) {
+            if (x >= left[i] && x <= right[i] && surface[i] >= y && (below == NONE || surface[i] < surface[below])) {
+                below = i;
+            }
+        }
+        return below;
+    }
+
+    /**
+     * Returns the segment a barrel lands on after rolling off one end of a segment.
+     *
+     * @param segment   The segment rolled off.
+     * @param rollRight True if the barrel rolled off the right end.
+     * @return The segment below that end, or {@link #NONE} if the barrel falls off the screen.
+     */
+    public int getDrop(int segment, boolean rollRight) {
+        return rollRight ? dropRight[segment] : dropLeft[segment];
+    }
+
+    /**
+     * Finds the first ladder going down from a segment that a barrel reaches when rolling from a point.
+     *
+     * @param segment   The segment the barrel rolls along.
+     * @param x         The horizontal position of the barrel.
+     * @param rollRight True if the barrel rolls to the right.
+     * @return The index of the ladder on the segment, or {@link #NONE} if there is none ahead.
+     */
+    public int findLadderAhead(int segment, double x, boolean rollRight) {
+        double[] xs = ladderX[segment];
+        if (rollRight) {
+            for (int k = 0; k < xs.length; k++) {
+                if (xs[k] > x) {
+                    return k;
+                }
+            }
+        } else {
+            for (int k = xs.length - 1; k >= 0; k--) {
+                if (xs[k] < x) {
+                    return k;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the ladder after the given one in the direction a barrel rolls.
+     *
+     * @param segment   The segment the barrel rolls along.
+     * @param ladder    The index of the ladder just passed.
+     * @param rollRight True if the barrel rolls to the right.
+     * @return The index of the next ladder, or {@link #NONE} if there is none.
+     */
+    public int getNextLadder(int segment, int ladder, boolean rollRight) {
+        int next = rollRight ? ladder + 1 : ladder - 1;
+        return next >= 0 && next < ladderX[segment].length ? next : NONE;
+    }
+
+    /**
+     * @param segment The segment.
+     * @param ladder  The index of a ladder on the segment.
+     * @return The horizontal position of the ladder.
+     */
+    public double getLadderX(int segment, int ladder) {
+        return ladderX[segment][ladder];
+    }
+
+    /**
+     * @param segment The segment.
+     * @param ladder  The index of a ladder on the segment.
+     * @return The segment at the foot of the ladder.
+     */
+    public int getLadderTarget(int segment, int ladder) {
+        return ladderTarget[segment][ladder];
+    }
+
+    /**
+     * @param segment The segment.
+     * @return The x-coordinate of the left end of the segment.
+     */
+    public double getLeft(int segment) {
+        return left[segment];
+    }
+
+    /**
+     * @param segment The segment.
+     * @return The x-coordinate of the right end of the segment.
+     */
+    public double getRight(int segment) {
+        return right[segment];
+    }
+
+    /**
+     * @param segment The segment.
+     * @return The vertical centre of a barrel rolling along the segment.
+     */
+    public double getSurface(int segment) {
+        return surface[segment];
+    }
+
+    /**
+     * Checks that a barrel rolls along the bottom floor of a level until it leaves the screen, both to the
+     * left and to the right, rather than falling through a join between the floor's platforms. Barrels
+     * load their sprite, so the check runs in the first frame of a game window.
+     * Usage: {@code BarrelPaths [level]}
+     *
+     * @param args The level to check, 1 by default.
+     */
+    public static void main(String[] args) {
+        int levelId = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        WindowHarness.runInFirstFrame(props, "BarrelPaths", () -> checkFloor(props, levelId));
+    }
+
+    /**
+     * Runs the check described in {@link #main}.
+     *
+     * @param props   The game properties.
+     * @param levelId The level to check.
+     */
+    private static void checkFloor(Properties props, int levelId) {
+        Platform[] platforms = ObjectLoader.loadPlatforms(props, levelId);
+        Ladder[] ladders = ObjectLoader.loadLadders(props, platforms, levelId);
+        BarrelPaths paths = new BarrelPaths(platforms, ladders, Barrel.getSpriteHeight());
+        int floor = 0;
+        for (int i = 1; i < paths.segmentCount; i++) {
+            if (paths.surface[i] > paths.surface[floor]) {
+                floor = i;
+            }
+        }
+        double floorY = paths.surface[floor];
+        for (boolean rollRight : new boolean[]{true, false}) {
+            // start just inside the end of the floor the barrel rolls away from, or the screen edge
+            double startX = rollRight ? Math.max(paths.left[floor], 0) + 1
+                    : Math.min(paths.right[floor], Window.getWidth()) - 1;
+            Barrel barrel = new Barrel(0, 0);
+            barrel.respawn(startX, floorY, rollRight, 0, paths);
+            double lastX = startX;
+            boolean fell = false;
+            while (!barrel.isDestroyed() && !fell) {
+                lastX = barrel.getX();
+                barrel.roll(paths);
+                fell = barrel.getY() > floorY;
+            }
+            System.out.printf("level %d floor, rolling %s from x=%.0f: %s at x=%.0f%n", levelId,
+                    rollRight ? "right" : "left", startX, fell ? "FELL THROUGH" : "left the screen", lastX);
+        }
+    }
+
+    /**
+     * Sorts the ladders of a segment from left to right.
+     *
+     * @param segment The segment.
+     */
+    private void sortLadders(int segment) {
+        double[] xs = ladderX[segment];
+        int[] targets = ladderTarget[segment];
+        for (int i = 1; i < xs.length; i++) {
+            for (int j = i; j > 0 && xs[j - 1] > xs[j]; j--) {
+                double x = xs[j];
+                xs[j] = xs[j - 1];
+                xs[j - 1] = x;
+                int target = targets[j];
+                targets[j] = targets[j - 1];
+                targets[j - 1] = target;
+            }
+        }
+    }
+}
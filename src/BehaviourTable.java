@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Enemy behaviours declared in the config as state machines, compiled into flat tables of ints.
+ *
+ * A behaviour is a list of states. Each tick, a monkey in a state carries out the state's action, then
+ * takes the first of the state's transitions whose guard holds, if any. A behaviour is declared as
+ * <pre>
+ * behaviour.names=patrol
+ * behaviour.patrol.states=walk,turn
+ * behaviour.patrol.walk=walk;atEdge&gt;turn;after 300&gt;turn
+ * behaviour.patrol.turn=turn;always&gt;walk
+ * </pre>
+ * where each state names its action followed by its transitions as {@code guard>state}, and the first
+ * state is the one monkeys start in. The states of every behaviour are numbered together, so a monkey's
+ * state is a single index into the tables, and its transitions are the entries from
+ * {@code transitionStart[state]} up to {@code transitionStart[state + 1]}. Running a monkey is a few array
+ * reads with no lookups by name or objects per state, however many behaviours there are.
+ */
+public class BehaviourTable {
+
+    /** Action that stands still. */
+    public static final int WAIT = 0;
+
+    /** Action that walks the way the monkey is facing, stopping at the edge of its platform. */
+    public static final int WALK = 1;
+
+    /** Action that turns the monkey around. */
+    public static final int TURN = 2;
+
+    /** Action that faces Mario and walks towards him, stopping at the edge of the platform. */
+    public static final int CHASE = 3;
+
+    /** Action that throws a banana the way the monkey is facing. */
+    public static final int SHOOT = 4;
+
+    /** Guard that always holds. */
+    public static final int ALWAYS = 0;
+
+    /** Guard that holds when the next step would leave the platform or the screen. */
+    public static final int AT_EDGE = 1;
+
+    /** Guard that holds once the monkey has been in the state for at least the given number of ticks. */
+    public static final int AFTER = 2;
+
+    /** Guard that holds when Mario is at most the given number of pixels across from the monkey. */
+    public static final int MARIO_WITHIN = 3;
+
+    /** Guard that holds when Mario is more than the given number of pixels across from the monkey. */
+    public static final int MARIO_BEYOND = 4;
+
+    /** Guard that holds when the monkey stands at a ladder. */
+    public static final int ON_LADDER = 5;
+
+    private static final String[] ACTION_NAMES = {"wait", "walk", "turn", "chase", "shoot"};
+    private static final String[] GUARD_NAMES = {"always", "atEdge", "after", "marioWithin", "marioBeyond", "onLadder"};
+    private static final String PREFIX = "behaviour.";
+
+    private final Map<String, Integer> startStates;
+    private final int[] actions;
+    private final int[] transitionStart;
+    private final int[] guards;
+    private final int[] guardValues;
+    private final int[] targets;
+
+    /**
+     * Creates a table from compiled arrays.
+     *
+     * @param startStates     The first state of each behaviour by name.
+     * @param actions         The action of each state.
+     * @param transitionStart The first transition of each state, with one more entry for the end.
+     * @param guards          The guard of each transition.
+     * @param guardValues     The number each guard compares against, 0 for guards without one.
+     * @param targets         The state each transition goes to.
+     */
+    private BehaviourTable(Map<String, Integer> startStates, int[] actions, int[] transitionStart,
+                           int[] guards, int[] guardValues, int[] targets) {
+        this.startStates = startStates;
+        this.actions = actions;
+        this.transitionStart = transitionStart;
+        this.guards = guards;
+        this.guardValues = guardValues;
+        this.targets = targets;
+    }
+
+    /**
+     * Compiles every behaviour named in {@code behaviour.names}. A config without behaviours gives an
+     * empty table.
+     *
+     * @param props The game properties containing the behaviours.
+     * @return The compiled behaviours.
+     * @throws IllegalArgumentException If a behaviour names an unknown action, guard or state.
+     */
+    public static BehaviourTable compile(Properties props) {
+        Map<String, Integer> startStates = new HashMap<>();
+        List<String[]> states = new ArrayList<>();
+        List<String> behaviourOfState = new ArrayList<>();
+        Map<String, Integer> stateIndex = new HashMap<>();
+
+        // number the states of every behaviour first, so that transitions can name later states
+        for (String behaviour : splitList(props.getProperty(PREFIX + "names", ""), ",")) {
+            String[] names = splitList(props.getProperty(PREFIX + behaviour + ".states", ""), ",");
+            if (names.length == 0) {
+                throw new IllegalArgumentException("Behaviour " + behaviour + " has no states");
+            }
+            startStates.put(behaviour, states.size());
+            for (String name : names) {
+                String key = PREFIX + behaviour + "." + name;
+                String definition = props.getProperty(key);
+                if (definition == null) {
+                    throw new IllegalArgumentException("Missing " + key);
+                }
+                stateIndex.put(behaviour + "." + name, states.size());
+                states.add(splitList(definition, ";"));
+                behaviourOfState.add(behaviour);
+            }
+        }
+
+        int[] actions = new int[states.size()];
+        int[] transitionStart = new int[states.size() + 1];
+        List<int[]> transitions = new ArrayList<>();
+        for (int state = 0; state < states.size(); state++) {
+            String[] parts = states.get(state);
+            actions[state] = indexOf(ACTION_NAMES, parts[0], "action");
+            transitionStart[state] = transitions.size();
+            for (int i = 1; i < parts.length; i++) {
+                int arrow = parts[i].indexOf('>');
+                if (arrow < 0) {
+                    throw new IllegalArgumentException("Transition without a target state: " + parts[i]);
+                }
+                String[] guard = parts[i].substring(0, arrow).trim().split("\\s+");
+                String targetName = behaviourOfState.get(state) + "." + parts[i].substring(arrow + 1).trim();
+                Integer target = stateIndex.get(targetName);
+                if (target == null) {
+                    throw new IllegalArgumentException("Unknown state " + targetName);
+                }
+                int guardValue = guard.length > 1 ? Integer.parseInt(guard[1]) : 0;
+                transitions.add(new int[] {indexOf(GUARD_NAMES, guard[0], "guard"), guardValue, target});
+            }
+        }
+        transitionStart[states.size()] = transitions.size();
+
+        int[] guards = new int[transitions.size()];
+        int[] guardValues = new int[transitions.size()];
+        int[] targets = new int[transitions.size()];
+        for (int i = 0; i < transitions.size(); i++) {
+            guards[i] = transitions.get(i)[0];
+            guardValues[i] = transitions.get(i)[1];
+            targets[i] = transitions.get(i)[2];
+        }
+        return new BehaviourTable(startStates, actions, transitionStart, guards, guardValues, targets);
+    }
+
+    /**
+     * Splits a config value into its trimmed, non-empty entries.
+     *
+     * @param value     The config value.
+     * @param separator The regular expression separating entries.
+     * @return The entries.
+     */
+    private static String[] splitList(String value, String separator) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : value.split(separator)) {
+            if (!entry.trim().isEmpty()) {
+                entries.add(entry.trim());
+            }
+        }
+        return entries.toArray(new String[0]);
+    }
+
+    /**
+     * Finds the number of an action or guard from its name.
+     *
+     * @param names The names, in order of their numbers.
+     * @param name  The name to look up.
+     * @param kind  What is being looked up, for the error message.
+     * @return The number of the name.
+     * @throws IllegalArgumentException If the name is unknown.
+     */
+    private static int indexOf(String[] names, String name, String kind) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + kind + " " + name);
+    }
+
+    /**
+     * Returns the state monkeys with a behaviour start in.
+     *
+     * @param behaviour The name of the behaviour.
+     * @return The first state of the behaviour.
+     * @throws IllegalArgumentException If there is no such behaviour.
+     */
+    public int getStartState(String behaviour) {
+        Integer state = startStates.get(behaviour);
+        if (state == null) {
+            throw new IllegalArgumentException("Unknown behaviour " + behaviour);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the action carried out in a state.
+     *
+     * @param state The state.
+     * @return The action, such as {@link #WALK}.
+     */
+    public int getAction(int state) {
+        return actions[state];
+    }
+
+    /**
+     * Works out the state a monkey moves to after a tick, from the conditions it found itself in.
+     *
+     * @param state         The monkey's state.
+     * @param ticksInState  The number of ticks the monkey has been in the state, including this one.
+     * @param atEdge        Whether the monkey's next step would leave its platform or the screen.
+     * @param marioDistance How many pixels across Mario is from the monkey.
+     * @param onLadder      Whether the monkey stands at a ladder.
+     * @return The state of the first transition whose guard holds, or the same state if none does.
+     */
+    public int next(int state, int ticksInState, boolean atEdge, double marioDistance, boolean onLadder) {
+        for (int t = transitionStart[state], end = transitionStart[state + 1]; t < end; t++) {
+            int value = guardValues[t];
+            boolean holds;
+            switch (guards[t]) {
+                case ALWAYS:
+                    holds = true;
+                    break;
+                case AT_EDGE:
+                    holds = atEdge;
+                    break;
+                case AFTER:
+                    holds = ticksInState >= value;
+                    break;
+                case MARIO_WITHIN:
+                    holds = marioDistance <= value;
+                    break;
+                case MARIO_BEYOND:
+                    holds = marioDistance > value;
+                    break;
+                default:
+                    holds = onLadder;
+                    break;
+            }
+            if (holds) {
+                return targets[t];
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns the number of states across every behaviour.
+     *
+     * @return The number of states.
+     */
+    public int getStateCount() {
+        return actions.length;
+    }
+}
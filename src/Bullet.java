@@ -8,6 +8,8 @@ import bagel.*;
 public class Bullet extends Projectile {
     private static final Image BULLET_RIGHT = new Image("res/bullet_right.png");
     private static final Image BULLET_LEFT = new Image("res/bullet_left.png");
+    private static final CollisionMask BULLET_RIGHT_MASK = CollisionMask.load("res/bullet_right.png");
+    private static final CollisionMask BULLET_LEFT_MASK = CollisionMask.load("res/bullet_left.png");
     private static final double SPEED = 3.8;
 
     /**
@@ -38,4 +40,14 @@ public class Bullet extends Projectile {
     public Image getImage() {
         return (isFacingLeft() ? BULLET_LEFT : BULLET_RIGHT);
     }
+
+    /**
+     * Returns the solid pixels of the bullet depending on its facing direction.
+     *
+     * @return The collision mask.
+     */
+    @Override
+    public CollisionMask getMask() {
+        return isFacingLeft() ? BULLET_LEFT_MASK : BULLET_RIGHT_MASK;
+    }
 }
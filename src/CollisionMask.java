@@ -0,0 +1,234 @@
+import bagel.util.Rectangle;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The solid pixels of a sprite, so that collisions can ignore the transparent parts of its bounding box.
+ *
+ * Each row of the sprite is packed into longs, one bit per pixel with the leftmost pixel in the lowest
+ * bit. Two sprites whose bounding boxes overlap are compared one row at a time, 64 pixels per step: the
+ * bits of the other sprite are shifted into line with this one and the two are ANDed together, and the
+ * sprites collide as soon as any bit is set in both. The bounding boxes are still compared first, so
+ * only pairs that are already close pay for this.
+ */
+public class CollisionMask {
+
+    // pixels at least this opaque are solid, the faint edges of anti-aliased sprites are not
+    private static final int SOLID_ALPHA = 128;
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    /**
+     * Creates a mask from the bits of each row.
+     *
+     * @param width  The width of the sprite in pixels.
+     * @param height The height of the sprite in pixels.
+     * @param bits   The rows one after another, each {@code (width + 63) / 64} longs long.
+     */
+    private CollisionMask(int width, int height, long[] bits) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.bits = bits;
+    }
+
+    /**
+     * Creates the mask of an image from its alpha channel. Images without one, such as JPEGs, are solid.
+     *
+     * @param image The image.
+     * @return The mask of the image.
+     */
+    public static CollisionMask fromImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int wordsPerRow = (width + 63) >>> 6;
+        long[] bits = new long[wordsPerRow * height];
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!hasAlpha || (image.getRGB(x, y) >>> 24) >= SOLID_ALPHA) {
+                    bits[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+        return new CollisionMask(width, height, bits);
+    }
+
+    /**
+     * Reads the mask of a sprite from its image file.
+     *
+     * @param imageFile The path to the image file.
+     * @return The mask of the sprite.
+     */
+    public static CollisionMask load(String imageFile) {
+        try {
+            return fromImage(ImageIO.read(new File(imageFile)));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether two sprites touch, given bounding boxes that are already known to overlap.
+     * A sprite without a mask is solid across its whole bounding box.
+     *
+     * @param a    The mask of the first sprite, or null if it is solid.
+     * @param boxA The bounding box of the first sprite.
+     * @param b    The mask of the second sprite, or null if it is solid.
+     * @param boxB The bounding box of the second sprite.
+     * @return True if a solid pixel of one sprite covers a solid pixel of the other.
+     */
+    public static boolean overlaps(CollisionMask a, Rectangle boxA, CollisionMask b, Rectangle boxB) {
+        if (a == null && b == null) {
+            return true;
+        }
+        int ax = (int) Math.round(boxA.left());
+        int ay = (int) Math.round(boxA.top());
+        int bx = (int) Math.round(boxB.left());
+        int by = (int) Math.round(boxB.top());
+        int aWidth = a != null ? a.width : (int) Math.round(boxA.right()) - ax;
+        int aHeight = a != null ? a.height : (int) Math.round(boxA.bottom()) - ay;
+        int bWidth = b != null ? b.width : (int) Math.round(boxB.right()) - bx;
+        int bHeight = b != null ? b.height : (int) Math.round(boxB.bottom()) - by;
+
+        int left = Math.max(ax, bx);
+        int right = Math.min(ax + aWidth, bx + bWidth);
+        int top = Math.max(ay, by);
+        int bottom = Math.min(ay + aHeight, by + bHeight);
+        if (left >= right || top >= bottom) {
+            return false;
+        }
+
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x += 64) {
+                long mask = right - x >= 64 ? -1L : (1L << (right - x)) - 1;
+                long bitsA = rowBits(a, aWidth, y - ay, x - ax);
+                long bitsB = rowBits(b, bWidth, y - by, x - bx);
+                if ((bitsA & bitsB & mask) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns 64 bits of a row of a mask, starting at any pixel of the row. Pixels outside the
+     * sprite are clear.
+     *
+     * @param mask  The mask, or null for a solid sprite.
+     * @param width The width of the sprite.
+     * @param row   The row, which must be within the sprite.
+     * @param from  The first pixel, which may be outside the sprite.
+     * @return The bits of the 64 pixels starting at the given one.
+     */
+    private static long rowBits(CollisionMask mask, int width, int row, int from) {
+        if (from >= width || from <= -64) {
+            return 0;
+        }
+        if (mask == null) {
+            long solid = width - from >= 64 ? -1L : (1L << (width - from)) - 1;
+            return from >= 0 ? solid : solid & (-1L << -from);
+        }
+        int word = from >> 6;
+        int shift = from & 63;
+        int start = row * mask.wordsPerRow;
+        long low = word >= 0 ? mask.bits[start + word] >>> shift : 0;
+        long high = shift != 0 && word + 1 < mask.wordsPerRow ? mask.bits[start + word + 1] << (64 - shift) : 0;
+        return low | high;
+    }
+
+    /**
+     * Checks whether a pixel of the sprite is solid.
+     *
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @return True if the pixel is solid.
+     */
+    public boolean isSolid(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height
+                && (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Returns the width of the sprite.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the sprite.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Checks the masks of Mario and a monkey against a pixel-by-pixel comparison at many random
+     * overlapping positions, then measures how long comparing an overlapping pair takes.
+     * Usage: {@code CollisionMask [pairs]}
+     *
+     * @param args The number of pairs to measure, a million by default.
+     */
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        CollisionMask mario = load("res/mario_hammer_right.png");
+        CollisionMask monkey = load("res/intelli_monkey_left.png");
+        Random random = new Random(1);
+
+        // positions where the bounding boxes overlap, with Mario's box at the origin
+        int[] offsets = new int[pairs * 2];
+        for (int i = 0; i < pairs; i++) {
+            offsets[i * 2] = random.nextInt(mario.width + monkey.width - 1) - monkey.width + 1;
+            offsets[i * 2 + 1] = random.nextInt(mario.height + monkey.height - 1) - monkey.height + 1;
+        }
+        Rectangle marioBox = new Rectangle(0, 0, mario.width, mario.height);
+        Rectangle[] monkeyBoxes = new Rectangle[pairs];
+        int mismatches = 0;
+        int touching = 0;
+        for (int i = 0; i < pairs; i++) {
+            monkeyBoxes[i] = new Rectangle(offsets[i * 2], offsets[i * 2 + 1], monkey.width, monkey.height);
+            boolean expected = false;
+            for (int y = 0; y < mario.height && !expected; y++) {
+                for (int x = 0; x < mario.width && !expected; x++) {
+                    expected = mario.isSolid(x, y) && monkey.isSolid(x - offsets[i * 2], y - offsets[i * 2 + 1]);
+                }
+            }
+            boolean actual = overlaps(mario, marioBox, monkey, monkeyBoxes[i]);
+            if (actual != expected) {
+                mismatches++;
+            }
+            if (actual) {
+                touching++;
+            }
+        }
+        System.out.printf("%d of %d overlapping boxes touch, %d mismatches against pixel-by-pixel%n",
+                touching, pairs, mismatches);
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int hits = 0;
+            for (int i = 0; i < pairs; i++) {
+                if (overlaps(mario, marioBox, monkey, monkeyBoxes[i])) {
+                    hits++;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("round %d: %.1f ns per overlapping pair (%d touch)%n", round,
+                    (double) nanos / pairs, hits);
+        }
+    }
+}
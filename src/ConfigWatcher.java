@@ -0,0 +1,192 @@
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches the config file for edits so that a running level can pick them up without a restart.
+ * A background thread waits on a {@link WatchService} and only notes that the file changed. The
+ * game thread then re-reads the file between frames, works out which keys changed and updates
+ * the live properties in place, so nothing in a level changes while it is being updated or drawn.
+ *
+ * A file being saved can be read half written. It usually still parses, but with keys missing, which
+ * would be removed from the live properties. So a change is only read once the file has kept the same
+ * size and modification time for {@link #SETTLE_MILLIS} milliseconds of polls.
+ */
+public class ConfigWatcher implements Closeable {
+
+    /** How long the file must stay the same size and modification time before a change is read. */
+    public static final long SETTLE_MILLIS = 100;
+
+    private final Path file;
+    private final Properties props;
+    private Properties loaded;
+    private final WatchService watchService;
+    private final AtomicBoolean changed = new AtomicBoolean(false);
+    private final Thread thread;
+
+    // owned by the game thread: a change waiting for the file to settle, and the file's last seen size and time
+    private boolean pending = false;
+    private long pendingSize = -1;
+    private long pendingModified = -1;
+    private long pendingSinceNanos;
+
+    /**
+     * Creates a watcher for a config file.
+     *
+     * @param configFile The path of the config file.
+     * @param props      The properties loaded from the file, which are kept up to date with it.
+     *                   They may also hold entries from other files, which are left alone.
+     * @throws IOException If the file cannot be read or its directory cannot be watched.
+     */
+    public ConfigWatcher(String configFile, Properties props) throws IOException {
+        this.file = Paths.get(configFile).toAbsolutePath();
+        this.props = props;
+        this.loaded = load();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_CREATE);
+        this.thread = new Thread(this::run, "config-watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the background thread that waits for the file to change.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Waits for events in the config file's directory and notes when the file itself changes.
+     * Editors that save by replacing the file show up as a create rather than a modify.
+     */
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed.set(true);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * Re-reads the config file if it changed and has since settled, and updates the properties with
+     * the new values. Called by the game thread once per frame.
+     *
+     * @return The keys whose values were added, changed or removed, empty if nothing changed.
+     */
+    public Set<String> pollChanges() {
+        if (changed.getAndSet(false)) {
+            // every new write starts the wait again
+            pending = true;
+            pendingSize = -1;
+        }
+        if (!pending || !hasSettled()) {
+            return Collections.emptySet();
+        }
+        pending = false;
+        Properties fresh;
+        try {
+            fresh = load();
+        } catch (IOException ex) {
+            // keep playing with the current config, the file may be half written
+            ex.printStackTrace();
+            return Collections.emptySet();
+        }
+
+        Set<String> changedKeys = new HashSet<>();
+        for (String key : fresh.stringPropertyNames()) {
+            if (!Objects.equals(loaded.getProperty(key), fresh.getProperty(key))) {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : loaded.stringPropertyNames()) {
+            if (!fresh.containsKey(key)) {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : changedKeys) {
+            String value = fresh.getProperty(key);
+            if (value == null) {
+                props.remove(key);
+            } else {
+                props.setProperty(key, value);
+            }
+        }
+        loaded = fresh;
+        return changedKeys;
+    }
+
+    /**
+     * Checks whether the file has kept the same size and modification time for {@link #SETTLE_MILLIS},
+     * starting the wait again whenever either differs from the last poll.
+     *
+     * @return True if the file has settled.
+     */
+    private boolean hasSettled() {
+        long size;
+        long modified;
+        try {
+            size = Files.size(file);
+            modified = Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            // the file may be being replaced
+            pendingSize = -1;
+            return false;
+        }
+        long now = System.nanoTime();
+        if (size != pendingSize || modified != pendingModified) {
+            pendingSize = size;
+            pendingModified = modified;
+            pendingSinceNanos = now;
+            return false;
+        }
+        return now - pendingSinceNanos >= SETTLE_MILLIS * 1_000_000L;
+    }
+
+    /**
+     * Reads the config file as it is now.
+     *
+     * @return The properties in the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private Properties load() throws IOException {
+        Properties fileProps = new Properties();
+        try (FileInputStream stream = new FileInputStream(file.toFile())) {
+            fileProps.load(stream);
+        }
+        return fileProps;
+    }
+
+    /**
+     * Stops watching the file.
+     *
+     * @throws IOException If the watch service cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -1,13 +1,17 @@
 import bagel.*;
+import java.nio.ByteBuffer;
 
 /**
  * Represents the Donkey Kong enemy in the game.
- * Donkey Kong is a stationary enemy with health that can be reduced.
+ * Donkey Kong is a stationary enemy with health that can be reduced, unless a second player
+ * controls him, in which case he walks left and right.
  * When health reaches 0, Donkey Kong is marked as destroyed.
  */
 public class DonkeyKong extends Enemy implements AffectedByGravity, Destroyable {
     private static final Image DONKEY_KONG = new Image("res/donkey_kong.png");
+    private static final CollisionMask DONKEY_KONG_MASK = CollisionMask.load("res/donkey_kong.png");
     private static final int DEFAULT_HEALTH = 5;
+    private static final double CONTROLLED_SPEED = 2.0;
     private int health;
 
     /**
@@ -50,6 +54,21 @@ public class DonkeyKong extends Enemy implements AffectedByGravity, Destroyable
         }
     }
 
+    /**
+     * Moves Donkey Kong horizontally based on the buttons held by the player controlling him.
+     * Donkey Kong is kept within the screen.
+     *
+     * @param buttons The buttons held this frame, see {@link PlayerInput}.
+     */
+    public void control(int buttons) {
+        if ((buttons & PlayerInput.LEFT) != 0) {
+            x -= CONTROLLED_SPEED;
+        } else if ((buttons & PlayerInput.RIGHT) != 0) {
+            x += CONTROLLED_SPEED;
+        }
+        x = Math.max(0, Math.min(x, Window.getWidth()));
+    }
+
     /**
      * Draws Donkey Kong at its current position.
      */
@@ -67,4 +86,35 @@ public class DonkeyKong extends Enemy implements AffectedByGravity, Destroyable
         return DONKEY_KONG;
     }
 
+    /**
+     * Returns the solid pixels of Donkey Kong.
+     *
+     * @return The collision mask.
+     */
+    @Override
+    public CollisionMask getMask() {
+        return DONKEY_KONG_MASK;
+    }
+
+    /**
+     * Writes Donkey Kong's state, including health, to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putInt(health);
+    }
+
+    /**
+     * Restores Donkey Kong's state, including health, from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        health = buffer.getInt();
+    }
 }
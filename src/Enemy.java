@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+
 /**
  * Represents an abstract enemy in the game world.
  * Enemies are game objects that can be affected by gravity and can be destroyed.
@@ -44,4 +46,28 @@ public abstract class Enemy extends GameObject implements AffectedByGravity, Des
     public boolean isDestroyed() {
         return isDestroyed;
     }
+
+    /**
+     * Writes the enemy's position, velocity and destroyed state to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        motion.writeState(buffer);
+        buffer.put((byte) (isDestroyed ? 1 : 0));
+    }
+
+    /**
+     * Restores the enemy's position, velocity and destroyed state from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        motion.readState(buffer);
+        isDestroyed = buffer.get() != 0;
+    }
 }
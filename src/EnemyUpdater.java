@@ -0,0 +1,211 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+
+/**
+ * Updates the monkeys of a level in two phases. In the first, every monkey falls and thinks,
+ * reading only its own state and the state of the level from the previous tick, so monkeys can
+ * think in parallel on a fork/join pool once there are enough of them to be worth it. In the second,
+ * monkeys act one at a time in list order, so anything they create, such as bananas, appears in the
+ * same order however many threads thought. A level therefore ends up in exactly the same state as
+ * when every monkey is updated on one thread, and replays and snapshots do not depend on the pool.
+ */
+public class EnemyUpdater {
+
+    private static final int MONKEYS_PER_TASK = 64;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private ThinkTask root;
+
+    // what the monkeys think about this tick, set before the tasks run
+    private List<Monkey> monkeys;
+    private Platform[] platforms;
+    private int tick;
+    private double marioX;
+    private int marioPlatform;
+
+    /**
+     * A fork/join task letting a range of monkeys think, split into a fixed tree so that it can be
+     * reinitialised and invoked again every tick while the number of monkeys stays the same.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private class ThinkTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final ThinkTask left;
+        private final ThinkTask right;
+
+        private ThinkTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+            if (to - from > MONKEYS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                this.left = new ThinkTask(from, middle);
+                this.right = new ThinkTask(middle, to);
+            } else {
+                this.left = null;
+                this.right = null;
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (left == null) {
+                think(from, to);
+            } else {
+                left.reinitialize();
+                right.reinitialize();
+                invokeAll(left, right);
+            }
+        }
+    }
+
+    /**
+     * Creates an updater that thinks on the given pool.
+     *
+     * @param pool              The pool monkeys think on.
+     * @param parallelThreshold The fewest monkeys thought about in parallel, fewer think on the calling thread.
+     */
+    public EnemyUpdater(ForkJoinPool pool, int parallelThreshold) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Updates every monkey by one tick.
+     *
+     * @param levelMonkeys   The monkeys of the level.
+     * @param levelPlatforms The platforms of the level.
+     * @param levelTick      The current tick of the level's clock.
+     * @param x              The horizontal position of Mario.
+     * @param platform       The platform Mario is on, or {@link NavigationGraph#NO_PLATFORM}.
+     */
+    public void update(List<Monkey> levelMonkeys, Platform[] levelPlatforms, int levelTick, double x, int platform) {
+        monkeys = levelMonkeys;
+        platforms = levelPlatforms;
+        tick = levelTick;
+        marioX = x;
+        marioPlatform = platform;
+
+        int count = levelMonkeys.size();
+        if (count < parallelThreshold) {
+            think(0, count);
+        } else {
+            if (root == null || root.to != count) {
+                root = new ThinkTask(0, count);
+            }
+            root.reinitialize();
+            pool.invoke(root);
+        }
+
+        for (Monkey monkey : levelMonkeys) {
+            monkey.act(levelTick);
+        }
+        monkeys = null;
+    }
+
+    /**
+     * Lets a range of monkeys fall and think.
+     *
+     * @param from The index of the first monkey.
+     * @param to   The index after the last monkey.
+     */
+    private void think(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Monkey monkey = monkeys.get(i);
+            monkey.applyGravity(platforms);
+            monkey.think(tick, marioX, marioPlatform);
+        }
+    }
+
+    /**
+     * Measures how long updating many monkeys takes with 1 to 16 threads, and checks that every
+     * thread count ends in the same state as one thread. The monkeys of level 2 in the config are
+     * copied until there are enough. Monkeys load sprites, so the measurement runs in the first frame
+     * of a game window.
+     * Usage: {@code EnemyUpdater [monkeys] [ticks]}
+     *
+     * @param args The number of monkeys and ticks to measure, 16384 and 600 by default.
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 16384;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        WindowHarness.runInFirstFrame(props, "EnemyUpdater", () -> benchmark(props, count, ticks));
+    }
+
+    /**
+     * Runs the measurement described in {@link #main}.
+     *
+     * @param props The game properties containing level 2.
+     * @param count The number of monkeys.
+     * @param ticks The number of ticks to measure.
+     */
+    private static void benchmark(Properties props, int count, int ticks) {
+        Platform[] platforms = ObjectLoader.loadPlatforms(props, 2);
+        // warm up on one thread first so that the first measurement is not mostly compilation
+        measure(props, platforms, count, ticks, 1);
+        long serialNanos = 0;
+        long serialChecksum = 0;
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            long[] result = measure(props, platforms, count, ticks, threads);
+            if (threads == 1) {
+                serialNanos = result[0];
+                serialChecksum = result[1];
+            }
+            System.out.printf("%2d threads: %.1f us per tick, %.2fx, state %s%n", threads, result[0] / 1e3 / ticks,
+                    (double) serialNanos / result[0], result[1] == serialChecksum ? "matches" : "DIFFERS");
+        }
+    }
+
+    /**
+     * Updates a fresh set of monkeys for a number of ticks on a number of threads.
+     *
+     * @param props     The game properties containing level 2.
+     * @param platforms The platforms of level 2.
+     * @param count     The number of monkeys.
+     * @param ticks     The number of ticks.
+     * @param threads   The number of threads, 1 to update on the calling thread.
+     * @return The time taken in nanoseconds and the checksum of the final state.
+     */
+    private static long[] measure(Properties props, Platform[] platforms, int count, int ticks, int threads) {
+        ArrayList<Monkey> monkeys = new ArrayList<>();
+        while (monkeys.size() < count) {
+            monkeys.addAll(ObjectLoader.loadMonkeys(props, platforms, 2));
+        }
+        monkeys.subList(count, monkeys.size()).clear();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        EnemyUpdater updater = new EnemyUpdater(pool, threads == 1 ? Integer.MAX_VALUE : 0);
+        long start = System.nanoTime();
+        for (int tick = 1; tick <= ticks; tick++) {
+            updater.update(monkeys, platforms, tick, 0, NavigationGraph.NO_PLATFORM);
+        }
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+        return new long[] {nanos, checksum(monkeys)};
+    }
+
+    /**
+     * Sums up the snapshot state of every monkey.
+     *
+     * @param monkeys The monkeys.
+     * @return The CRC-32 of the monkeys' state.
+     */
+    private static long checksum(List<Monkey> monkeys) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        CRC32 crc = new CRC32();
+        for (Monkey monkey : monkeys) {
+            buffer.clear();
+            monkey.writeState(buffer);
+            buffer.flip();
+            crc.update(buffer);
+        }
+        return crc.getValue();
+    }
+}
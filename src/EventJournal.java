@@ -0,0 +1,461 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes gameplay events such as jumps, kills, pickups and level changes to a compact binary journal.
+ *
+ * Events are recorded on the game thread into a ring of fixed-size records allocated up front, so
+ * recording one is a few stores and never allocates, locks or waits for the disk. The game thread is the
+ * only one adding records and a background thread is the only one taking them, so each side owns one
+ * counter and publishes it to the other with an ordered store. The background thread writes everything
+ * recorded since it last looked in one batch through a {@link FileChannel}, starting a new file once the
+ * current one is full and deleting the oldest files beyond a limit. If the disk falls so far behind that
+ * the ring fills up, new events are dropped and counted rather than holding up the game, and the writer
+ * notes how many were dropped in the journal where they would have been.
+ *
+ * Each file starts with a header giving the format, followed by records of {@link #RECORD_BYTES} bytes:
+ * the frame, the event type, the level, the position where it happened and a value that depends on the type.
+ */
+public final class EventJournal implements Closeable {
+
+    /** Size of one event record in bytes. */
+    public static final int RECORD_BYTES = 20;
+
+    /** Mario jumped, the value is 0. */
+    public static final short JUMP = 1;
+
+    /** Mario landed a jump over a barrel, the value is the score awarded. */
+    public static final short JUMP_SCORE = 2;
+
+    /** A barrel was destroyed with a hammer, the value is the score awarded. */
+    public static final short BARREL_DESTROYED = 3;
+
+    /** A monkey was destroyed with a hammer or a bullet, the value is the score awarded. */
+    public static final short MONKEY_DESTROYED = 4;
+
+    /** Mario picked up a hammer, the value is 0. */
+    public static final short HAMMER_PICKUP = 5;
+
+    /** Mario picked up a blaster, the value is the number of bullets he has afterwards. */
+    public static final short BLASTER_PICKUP = 6;
+
+    /** Mario fired a bullet, the value is the number of bullets left. */
+    public static final short BULLET_FIRED = 7;
+
+    /** A banana hit Mario, the value is 0. */
+    public static final short BANANA_HIT = 8;
+
+    /** Donkey Kong's health changed, the value is his new health. */
+    public static final short DONKEY_HEALTH = 9;
+
+    /** A level started, the value is the total score carried into it. */
+    public static final short LEVEL_START = 10;
+
+    /** A level was completed, the value is the level score. */
+    public static final short LEVEL_COMPLETE = 11;
+
+    /** The game ended, the value is the level score. */
+    public static final short GAME_OVER = 12;
+
+    /** Events were dropped because the writer fell behind, the value is how many. Written by the writer. */
+    public static final short DROPPED = 13;
+
+    private static final String[] TYPE_NAMES = {"?", "JUMP", "JUMP_SCORE", "BARREL_DESTROYED", "MONKEY_DESTROYED",
+            "HAMMER_PICKUP", "BLASTER_PICKUP", "BULLET_FIRED", "BANANA_HIT", "DONKEY_HEALTH", "LEVEL_START",
+            "LEVEL_COMPLETE", "GAME_OVER", "DROPPED"};
+
+    // file header: magic, version, record size, then the time the file was started
+    private static final int MAGIC = 0x44_4B_45_4A;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final String SUFFIX = ".evj";
+
+    private final ByteBuffer ring;
+    private final int mask;
+    private final Path directory;
+    private final String prefix;
+    private final long fileBytes;
+    private final int maxFiles;
+    private final long flushNanos;
+    private final Thread writer;
+
+    // owned by the game thread
+    private long head = 0;
+    private long cachedTail = 0;
+    private int frame = 0;
+    private short levelId = 0;
+
+    // head is published to the writer, tail back to the game thread
+    private final AtomicLong publishedHead = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed = false;
+
+    // owned by the writer thread
+    private final ByteBuffer view;
+    private final ByteBuffer marker = ByteBuffer.allocate(Math.max(HEADER_BYTES, RECORD_BYTES));
+    private FileChannel channel;
+    private long fileIndex;
+    private long fileSize;
+    private long droppedWritten = 0;
+    private volatile long written = 0;
+
+    /**
+     * Creates a journal and starts its writer thread.
+     *
+     * @param directory   The directory journal files are written to, created if missing.
+     * @param prefix      The name each journal file starts with, followed by its number.
+     * @param capacity    The number of events the ring holds, rounded up to a power of two.
+     * @param fileBytes   The size after which a new journal file is started.
+     * @param maxFiles    The number of journal files kept, older ones are deleted.
+     * @param flushMillis How long the writer waits between batches when there is nothing to write.
+     * @throws IOException If the directory or the first file cannot be created.
+     */
+    public EventJournal(String directory, String prefix, int capacity, long fileBytes, int maxFiles,
+                        int flushMillis) throws IOException {
+        int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = ByteBuffer.allocateDirect(slots * RECORD_BYTES);
+        this.view = ring.duplicate();
+        this.mask = slots - 1;
+        this.directory = Paths.get(directory);
+        this.prefix = prefix;
+        this.fileBytes = fileBytes;
+        this.maxFiles = maxFiles;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+
+        Files.createDirectories(this.directory);
+        List<Path> existing = listFiles(this.directory, prefix);
+        this.fileIndex = existing.isEmpty() ? 0 : indexOf(existing.get(existing.size() - 1), prefix);
+        startFile();
+
+        this.writer = new Thread(this::run, "event-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the journal described in the config.
+     *
+     * @param props The game properties containing the journal settings.
+     * @return The journal.
+     * @throws IOException If the journal directory or file cannot be created.
+     */
+    public static EventJournal open(Properties props) throws IOException {
+        return new EventJournal(props.getProperty("journal.directory"), props.getProperty("journal.prefix"),
+                Integer.parseInt(props.getProperty("journal.capacity")),
+                Long.parseLong(props.getProperty("journal.fileBytes")),
+                Integer.parseInt(props.getProperty("journal.maxFiles")),
+                Integer.parseInt(props.getProperty("journal.flushMillis")));
+    }
+
+    /**
+     * Sets the frame that events recorded from now on happened in. Called by the game thread every tick.
+     *
+     * @param frame The current frame count of the game loop.
+     */
+    public void setFrame(int frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Records that a level started, and sets the level that events recorded from now on happened in.
+     *
+     * @param levelId    The number of the level.
+     * @param totalScore The total score carried into the level.
+     */
+    public void startLevel(int levelId, int totalScore) {
+        this.levelId = (short) levelId;
+        record(LEVEL_START, 0, 0, totalScore);
+    }
+
+    /**
+     * Records an event in the current frame and level. Called only by the game thread.
+     * Drops the event if the ring is full.
+     *
+     * @param type  The event type, such as {@link #JUMP}.
+     * @param x     The x-coordinate where the event happened.
+     * @param y     The y-coordinate where the event happened.
+     * @param value The value of the event, see each type.
+     */
+    public void record(short type, double x, double y, int value) {
+        if (head - cachedTail > mask) {
+            cachedTail = tail.get();
+            if (head - cachedTail > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        int offset = (int) (head & mask) * RECORD_BYTES;
+        ring.putInt(offset, frame);
+        ring.putShort(offset + 4, type);
+        ring.putShort(offset + 6, levelId);
+        ring.putFloat(offset + 8, (float) x);
+        ring.putFloat(offset + 12, (float) y);
+        ring.putInt(offset + 16, value);
+        head++;
+        publishedHead.lazySet(head);
+    }
+
+    /**
+     * Returns the number of events dropped because the ring was full.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of events written to disk so far.
+     *
+     * @return The number of written events.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Writes batches of recorded events until the journal is closed, then writes what is left.
+     */
+    private void run() {
+        try {
+            while (!closed) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(this, flushNanos);
+                }
+            }
+            drain();
+            channel.force(false);
+        } catch (IOException ex) {
+            // the game carries on without a journal, and events are dropped once the ring fills
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes every event recorded since the last call, preceded by a note of any events dropped since then.
+     *
+     * @return The number of events written.
+     * @throws IOException If the journal file cannot be written.
+     */
+    private int drain() throws IOException {
+        long droppedNow = dropped.get();
+        if (droppedNow != droppedWritten) {
+            // frame and level are read without ordering, so this only marks roughly where events went missing
+            marker.clear();
+            marker.putInt(frame).putShort(DROPPED).putShort(levelId).putFloat(0).putFloat(0)
+                    .putInt((int) (droppedNow - droppedWritten));
+            marker.flip();
+            writeRecords(marker);
+            droppedWritten = droppedNow;
+        }
+
+        long from = tail.get();
+        long to = publishedHead.get();
+        if (from == to) {
+            return 0;
+        }
+        int start = (int) (from & mask);
+        int end = (int) (to & mask);
+        if (start < end) {
+            writeRange(start, end);
+        } else {
+            // the batch wraps around the end of the ring
+            writeRange(start, mask + 1);
+            writeRange(0, end);
+        }
+        tail.lazySet(to);
+        written += to - from;
+        return (int) (to - from);
+    }
+
+    /**
+     * Writes the records in a range of ring slots.
+     *
+     * @param from The first slot.
+     * @param to   The slot after the last one.
+     * @throws IOException If the journal file cannot be written.
+     */
+    private void writeRange(int from, int to) throws IOException {
+        if (from == to) {
+            return;
+        }
+        view.limit(to * RECORD_BYTES).position(from * RECORD_BYTES);
+        writeRecords(view);
+    }
+
+    /**
+     * Writes whole records to the journal file, starting a new file whenever the current one is full.
+     *
+     * @param records The buffer holding the records, between its position and limit.
+     * @throws IOException If the journal file cannot be written.
+     */
+    private void writeRecords(ByteBuffer records) throws IOException {
+        int limit = records.limit();
+        while (records.position() < limit) {
+            long room = (fileBytes - fileSize) / RECORD_BYTES;
+            if (room <= 0) {
+                channel.close();
+                startFile();
+                room = Math.max(1, (fileBytes - fileSize) / RECORD_BYTES);
+            }
+            records.limit((int) Math.min(limit, records.position() + room * RECORD_BYTES));
+            while (records.hasRemaining()) {
+                fileSize += channel.write(records);
+            }
+        }
+    }
+
+    /**
+     * Starts the next journal file with a header, and deletes the oldest files beyond the limit.
+     *
+     * @throws IOException If the file cannot be created.
+     */
+    private void startFile() throws IOException {
+        fileIndex++;
+        Path file = directory.resolve(String.format("%s%06d%s", prefix, fileIndex, SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        marker.clear();
+        marker.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_BYTES).putLong(System.currentTimeMillis());
+        marker.flip();
+        fileSize = 0;
+        while (marker.hasRemaining()) {
+            fileSize += channel.write(marker);
+        }
+
+        List<Path> files = listFiles(directory, prefix);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * Stops the writer after it has written every recorded event, and closes the journal file.
+     *
+     * @throws IOException If the journal file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Lists the journal files in a directory, oldest first.
+     *
+     * @param directory The journal directory.
+     * @param prefix    The name each journal file starts with.
+     * @return The journal files in the order they were written.
+     */
+    private static List<Path> listFiles(Path directory, String prefix) {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(SUFFIX));
+        List<Path> paths = new ArrayList<>();
+        if (files != null) {
+            // the numbers are zero-padded, so names sort in the order the files were written
+            Arrays.sort(files);
+            for (File file : files) {
+                paths.add(file.toPath());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the number of a journal file.
+     *
+     * @param file   The journal file.
+     * @param prefix The name each journal file starts with.
+     * @return The number in the file's name.
+     */
+    private static long indexOf(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Returns the name of an event type.
+     *
+     * @param type The event type.
+     * @return The name of the type, or "?" if it is unknown.
+     */
+    public static String getTypeName(int type) {
+        return type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : TYPE_NAMES[0];
+    }
+
+    /**
+     * Prints the events in journal files, one per line, followed by how many there were of each type.
+     * With no files given, prints every file in the journal directory from the config, oldest first.
+     * Usage: {@code EventJournal [file...]}
+     *
+     * @param args The journal files to print.
+     */
+    public static void main(String[] args) {
+        List<Path> files = new ArrayList<>();
+        if (args.length == 0) {
+            Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+            Path directory = Paths.get(props.getProperty("journal.directory"));
+            files.addAll(listFiles(directory, props.getProperty("journal.prefix")));
+        } else {
+            for (String arg : args) {
+                files.add(Paths.get(arg));
+            }
+        }
+
+        long[] counts = new long[TYPE_NAMES.length];
+        try {
+            for (Path file : files) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+                if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                    System.err.println(file + ": not an event journal");
+                    continue;
+                }
+                short version = buffer.getShort();
+                int recordBytes = buffer.getShort();
+                long started = buffer.getLong();
+                System.out.printf("# %s, version %d, started %tF %<tT%n", file, version, started);
+                while (buffer.remaining() >= recordBytes) {
+                    int start = buffer.position();
+                    int eventFrame = buffer.getInt();
+                    short type = buffer.getShort();
+                    short level = buffer.getShort();
+                    float x = buffer.getFloat();
+                    float y = buffer.getFloat();
+                    int value = buffer.getInt();
+                    buffer.position(start + recordBytes);
+                    counts[type > 0 && type < counts.length ? type : 0]++;
+                    System.out.printf("%8d  level %d  %-16s %7.1f %7.1f  %d%n", eventFrame, level, getTypeName(type),
+                            x, y, value);
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+        for (int type = 1; type < counts.length; type++) {
+            if (counts[type] > 0) {
+                System.out.printf("# %-16s %d%n", getTypeName(type), counts[type]);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Keeps the simulation running at a steady rate when frames take longer than they should.
+ *
+ * Each frame runs at least one simulation tick, as the game always has. The time each frame takes
+ * beyond one tick is owed to the simulation, and the time a frame arrives early is taken off what is
+ * owed, so a late frame followed by an early one owes nothing. Time owed is paid back with extra ticks
+ * on the following frames, up to a limit per frame, so that physics, the timer and input keep pace with
+ * real time instead of slowing down together. Time owed beyond the limit is dropped rather than carried
+ * forward forever, and early frames build up at most one tick of credit.
+ *
+ * When frames keep arriving late, work that only affects what is drawn is shed one level at a time:
+ * first effects such as particles, then refreshing the HUD text every frame. Once frames are back on
+ * time for long enough, the shed work is brought back one level at a time.
+ */
+public class FramePacer {
+
+    /** Shed level at which nothing is shed. */
+    public static final int SHED_NONE = 0;
+
+    /** Shed level at which effects such as particles are no longer drawn. */
+    public static final int SHED_EFFECTS = 1;
+
+    /** Shed level at which the HUD text is only refreshed every few frames. */
+    public static final int SHED_HUD = 2;
+
+    private static final int MAX_SHED_LEVEL = SHED_HUD;
+
+    // overruns shorter than this fraction of a tick are vsync jitter rather than a late frame to shed work for
+    private static final double JITTER_FRACTION = 0.25;
+
+    private final long tickNanos;
+    private final long jitterNanos;
+    private final int maxCatchUpTicks;
+    private final int shedAfterFrames;
+    private final int recoverAfterFrames;
+
+    private long lastFrameNanos = -1;
+    private long owedNanos = 0;
+    private int lateStreak = 0;
+    private int onTimeStreak = 0;
+    private int shedLevel = SHED_NONE;
+
+    private long frames = 0;
+    private long lateFrames = 0;
+    private long catchUpTicks = 0;
+    private long droppedTicks = 0;
+    private long shedFrames = 0;
+
+    /**
+     * Creates a frame pacer.
+     *
+     * @param ticksPerSecond     The number of simulation ticks per second of real time.
+     * @param maxCatchUpTicks    The most extra ticks run in one frame to catch up.
+     * @param shedAfterFrames    The number of late frames in a row before another level of work is shed.
+     * @param recoverAfterFrames The number of on-time frames in a row before a level of shed work is restored.
+     */
+    public FramePacer(int ticksPerSecond, int maxCatchUpTicks, int shedAfterFrames, int recoverAfterFrames) {
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        this.jitterNanos = (long) (tickNanos * JITTER_FRACTION);
+        this.maxCatchUpTicks = maxCatchUpTicks;
+        this.shedAfterFrames = shedAfterFrames;
+        this.recoverAfterFrames = recoverAfterFrames;
+    }
+
+    /**
+     * Measures the time since the previous frame and works out how many simulation ticks to run in this one.
+     *
+     * @param nowNanos The current time from {@link System#nanoTime()}.
+     * @return The number of ticks to run, at least one.
+     */
+    public int beginFrame(long nowNanos) {
+        frames++;
+        long elapsed = lastFrameNanos < 0 ? tickNanos : nowNanos - lastFrameNanos;
+        lastFrameNanos = nowNanos;
+
+        long overrun = elapsed - tickNanos;
+        boolean late = overrun > jitterNanos;
+        if (late) {
+            lateFrames++;
+        }
+        // an early frame pays back time owed, but only one tick can be run ahead of real time
+        owedNanos = Math.max(owedNanos + overrun, -tickNanos);
+
+        int extraTicks = owedNanos > 0 ? (int) Math.min(owedNanos / tickNanos, maxCatchUpTicks) : 0;
+        owedNanos -= extraTicks * tickNanos;
+        if (owedNanos >= tickNanos) {
+            // too far behind to catch up, so the rest of the time is skipped
+            droppedTicks += owedNanos / tickNanos;
+            owedNanos %= tickNanos;
+        }
+        catchUpTicks += extraTicks;
+
+        updateShedLevel(late || extraTicks > 0);
+        if (shedLevel > SHED_NONE) {
+            shedFrames++;
+        }
+        return 1 + extraTicks;
+    }
+
+    /**
+     * Raises the shed level after enough late frames in a row, or lowers it after enough on-time frames.
+     *
+     * @param late True if this frame was late or had to catch up.
+     */
+    private void updateShedLevel(boolean late) {
+        if (late) {
+            onTimeStreak = 0;
+            if (++lateStreak >= shedAfterFrames && shedLevel < MAX_SHED_LEVEL) {
+                shedLevel++;
+                lateStreak = 0;
+            }
+        } else {
+            lateStreak = 0;
+            if (++onTimeStreak >= recoverAfterFrames && shedLevel > SHED_NONE) {
+                shedLevel--;
+                onTimeStreak = 0;
+            }
+        }
+    }
+
+    /**
+     * Forgets the time of the previous frame and any time owed, such as after the game was paused on
+     * another screen or rewound, so that the pause is not caught up.
+     */
+    public void reset() {
+        lastFrameNanos = -1;
+        owedNanos = 0;
+        lateStreak = 0;
+    }
+
+    /**
+     * Returns how much rendering work is currently shed.
+     *
+     * @return The shed level, from {@link #SHED_NONE} to {@link #SHED_HUD}.
+     */
+    public int getShedLevel() {
+        return shedLevel;
+    }
+
+    /**
+     * Returns the number of frames paced.
+     *
+     * @return The number of frames.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of frames that arrived late.
+     *
+     * @return The number of late frames.
+     */
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * Returns the number of extra ticks run to catch up.
+     *
+     * @return The number of catch-up ticks.
+     */
+    public long getCatchUpTicks() {
+        return catchUpTicks;
+    }
+
+    /**
+     * Returns the number of ticks skipped because the game fell too far behind to catch up.
+     *
+     * @return The number of dropped ticks.
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /**
+     * Returns the number of frames drawn with some rendering work shed.
+     *
+     * @return The number of shed frames.
+     */
+    public long getShedFrames() {
+        return shedFrames;
+    }
+
+    /**
+     * Describes the counters in one line, for printing when a game ends.
+     *
+     * @return The frame pacing report.
+     */
+    public String getReport() {
+        return String.format("frames %d, late %d, catch-up ticks %d, dropped ticks %d, shed frames %d",
+                frames, lateFrames, catchUpTicks, droppedTicks, shedFrames);
+    }
+}
@@ -1,24 +1,222 @@
 import bagel.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Acts as game manager which manages level progression and total score tracking.
+ * When snapshots are enabled, it also records the game state every frame so that play
+ * can be rewound or restarted from a checkpoint after Mario dies.
+ * When netplay is enabled, levels are played by two players through a {@link RollbackSession},
+ * and when spectating is enabled, every frame is streamed to a {@link SpectatorServer}.
+ * When hot reload is enabled, edits to the config file are applied to the running level.
+ * When journaling is enabled, gameplay events are written to an {@link EventJournal}, and when
+ * tracing is enabled, Mario's state on every tick of a game is recorded by a {@link TraceRecorder}.
  */
-public class Game {
+public class Game implements Snapshottable {
     private Level currentLevel;
     private final Properties props;
     private int totalScore = 0;
+    // the score the last run ended with, kept after the total is reset for the next run
+    private boolean runEnded = false;
+    private int endScore = 0;
+    private byte endOutcome;
+    // kept out of the snapshots, so a run resumed from a checkpoint after it ended is not submitted again
+    private boolean runSubmitted = false;
+    private final SnapshotBuffer snapshots;
+    private final int slotBytes;
+    private final int checkpointFrames;
+    private final RollbackSession session;
+    private final SpectatorServer spectators;
+    private final ConfigWatcher configWatcher;
+    private final AssetManager assets;
+    private final ParticleSystem particles;
+    private final EventJournal journal;
+    private final boolean tracing;
+    private TraceRecorder trace;
+    private Leaderboard leaderboard;
+    private String player;
+    private boolean ownsLeaderboard = false;
+    private int renderFrame = 0;
+    private int shedLevel = FramePacer.SHED_NONE;
+    private final int hudInterval;
+    private int framesSinceHudRefresh = 0;
+    private static final int FRAMES_PER_SECOND = 60;
+
+    /** Path of the game config file. */
+    public static final String CONFIG_FILE = "res/app.properties";
 
     /**
      * Creates a new Game instance with the given game properties.
      * @param props  The game properties loaded from config file.
      */
     public Game(Properties props) {
+        this(props, false);
+    }
+
+    /**
+     * Creates a new Game instance, optionally without anything needed to show it.
+     * A headless game loads no backgrounds and has no snapshots, netplay, spectators, hot reload
+     * or particles, so it can be simulated on any thread once the game window has loaded the sprites.
+     *
+     * @param props    The game properties loaded from config file.
+     * @param headless True to only simulate the game.
+     */
+    public Game(Properties props, boolean headless) {
         this.props = props;
+        String packFile = props.getProperty("levels.packFile", "");
+        if (!packFile.isEmpty()) {
+            props.putAll(IOUtils.readPropertiesFile(packFile));
+        }
+        this.hudInterval = Integer.parseInt(props.getProperty("pacing.hudInterval", "1"));
+        if (headless) {
+            this.assets = null;
+            this.snapshots = null;
+            this.slotBytes = 0;
+            this.checkpointFrames = 0;
+            this.session = null;
+            this.spectators = null;
+            this.configWatcher = null;
+            this.particles = null;
+            this.journal = null;
+            this.tracing = false;
+            return;
+        }
+
+        this.assets = new AssetManager(props, Integer.parseInt(props.getProperty("levels.resident")));
+        this.slotBytes = Integer.parseInt(props.getProperty("snapshot.slotBytes"));
+        if (Boolean.parseBoolean(props.getProperty("snapshot.enabled", "false"))) {
+            int seconds = Integer.parseInt(props.getProperty("snapshot.seconds"));
+            this.snapshots = new SnapshotBuffer(seconds * FRAMES_PER_SECOND, slotBytes);
+            this.checkpointFrames = Integer.parseInt(props.getProperty("snapshot.checkpointSeconds")) * FRAMES_PER_SECOND;
+        } else {
+            this.snapshots = null;
+            this.checkpointFrames = 0;
+        }
+        this.session = Boolean.parseBoolean(props.getProperty("netplay.enabled", "false")) ? openSession(props) : null;
+        this.spectators = Boolean.parseBoolean(props.getProperty("spectator.enabled", "false")) ? openSpectatorServer(props) : null;
+
+        // reloading on one side only would put netplay peers out of sync
+        boolean hotReload = Boolean.parseBoolean(props.getProperty("config.hotReload", "false"));
+        this.configWatcher = hotReload && session == null ? openConfigWatcher(props) : null;
+
+        // particles would be spawned again each time a rollback replays a frame
+        boolean particlesEnabled = Boolean.parseBoolean(props.getProperty("particles.enabled", "false"));
+        this.particles = particlesEnabled && session == null ? createParticles(props) : null;
+
+        // events would be recorded again each time a rollback replays a frame
+        boolean journalEnabled = Boolean.parseBoolean(props.getProperty("journal.enabled", "false"));
+        this.journal = journalEnabled && session == null ? openJournal(props) : null;
+        this.tracing = Boolean.parseBoolean(props.getProperty("trace.enabled", "false"));
+
+        if (Boolean.parseBoolean(props.getProperty("leaderboard.enabled", "false"))) {
+            try {
+                this.leaderboard = Leaderboard.open(props);
+                this.player = props.getProperty("leaderboard.player");
+                this.ownsLeaderboard = true;
+            } catch (IOException ex) {
+                // the game is still playable without a leaderboard, such as in a read-only directory
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Opens the event journal that gameplay events are written to.
+     *
+     * @param props The game properties containing the journal settings.
+     * @return The event journal.
+     */
+    private static EventJournal openJournal(Properties props) {
+        try {
+            return EventJournal.open(props);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
     }
 
     /**
-     * Updates the current game state based on input and frame count.
+     * Creates the particle system for destroyed enemies, drawn with shrunk barrel and banana sprites.
+     *
+     * @param props The game properties containing the particle settings.
+     * @return The particle system.
+     */
+    private static ParticleSystem createParticles(Properties props) {
+        ParticleSystem particles = new ParticleSystem(
+                Integer.parseInt(props.getProperty("particles.capacity")),
+                Integer.parseInt(props.getProperty("particles.spawnBudget")),
+                Integer.parseInt(props.getProperty("particles.drawBudget")));
+        particles.setAppearance(new Image("res/barrel.png"), new Image("res/banana.png"),
+                new Font(props.getProperty("font"), Integer.parseInt(props.getProperty("particles.fontSize"))));
+        return particles;
+    }
+
+    /**
+     * Starts watching the config file for edits.
+     *
+     * @param props The game properties, which are kept up to date with the file.
+     * @return The running config watcher.
+     */
+    private static ConfigWatcher openConfigWatcher(Properties props) {
+        try {
+            ConfigWatcher watcher = new ConfigWatcher(CONFIG_FILE, props);
+            watcher.start();
+            return watcher;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the spectator server and starts its selector thread.
+     *
+     * @param props The game properties containing the spectator settings.
+     * @return The running spectator server.
+     */
+    private static SpectatorServer openSpectatorServer(Properties props) {
+        try {
+            SpectatorServer server = new SpectatorServer(
+                    Integer.parseInt(props.getProperty("spectator.port")),
+                    Integer.parseInt(props.getProperty("snapshot.slotBytes")),
+                    Integer.parseInt(props.getProperty("spectator.outboundBytes")),
+                    Integer.parseInt(props.getProperty("spectator.maxClients")));
+            server.start();
+            return server;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Opens a UDP connection to the other player and creates a rollback session over it.
+     *
+     * @param props The game properties containing the netplay settings.
+     * @return The rollback session.
+     */
+    private static RollbackSession openSession(Properties props) {
+        try {
+            InputTransport transport = new UdpTransport(
+                    Integer.parseInt(props.getProperty("netplay.localPort")),
+                    props.getProperty("netplay.remoteHost"),
+                    Integer.parseInt(props.getProperty("netplay.remotePort")));
+            return new RollbackSession(transport, props.getProperty("netplay.player").equals("mario"),
+                    Integer.parseInt(props.getProperty("snapshot.slotBytes")));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Advances the current game state by one tick based on input and frame count, without drawing it.
      * Handles transitions between levels and game states such as WIN and GAME_OVER.
      *
      * @param input         The current input from the player.
@@ -26,22 +224,239 @@ public class Game {
      * @param currentFrame  The current frame number of the game loop.
      */
     public void update(Input input, GameScreen screen, int currentFrame) {
+        update(PlayerInput.read(input), screen, currentFrame);
+    }
+
+    /**
+     * Advances the current game state by one tick with the given buttons held, without drawing it.
+     * Handles transitions between levels and game states such as WIN and GAME_OVER.
+     *
+     * @param buttons       The buttons held by the player, see {@link PlayerInput}.
+     * @param screen        The current game screen controller.
+     * @param currentFrame  The current frame number of the game loop.
+     */
+    public void update(int buttons, GameScreen screen, int currentFrame) {
+
+        if (configWatcher != null) {
+            Set<String> changedKeys = configWatcher.pollChanges();
+            if (!changedKeys.isEmpty()) {
+                currentLevel.applyConfigChanges(changedKeys);
+                // recorded frames no longer match the level's objects
+                clearSnapshots();
+            }
+        }
 
         if (currentLevel.isLevelCompleted()) {
-            if (currentLevel.getNextLevel(props) == null) {
+            int nextLevelId = currentLevel.getNextLevelId();
+            if (nextLevelId == 0) {
                 totalScore += currentLevel.getTotalScoreWithBonus();
+                endRun(totalScore, currentFrame, TraceRecorder.WIN);
                 screen.setCurrentStatus(GameScreen.WIN);
             } else {
                 totalScore += currentLevel.getGameScore();
-                currentLevel = currentLevel.getNextLevel(props);
+                GameClock previousClock = currentLevel.getClock();
+                currentLevel = createLevel(nextLevelId);
+                currentLevel.continueClock(previousClock);
                 screen.setCurrentStatus(GameScreen.PLAY);
+                clearSnapshots();
+                if (session != null) {
+                    session.reset(currentLevel, session.getFrame());
+                }
             }
         } else if (currentLevel.isGameOver()) {
+            endRun(getRunScore(), currentFrame, TraceRecorder.GAME_OVER);
             totalScore = 0;
             screen.setCurrentStatus(GameScreen.GAME_OVER);
         }
-        currentLevel.update(input, currentFrame);
-        screen.renderGamePlayTexts(props, currentLevel, this);
+
+        if (journal != null) {
+            journal.setFrame(currentFrame);
+        }
+        if (session != null) {
+            session.advance(buttons);
+        } else {
+            currentLevel.update(buttons, 0);
+        }
+        if (trace != null) {
+            trace.record(currentLevel, totalScore + currentLevel.getGameScore());
+        }
+        if (particles != null) {
+            particles.update();
+        }
+        if (snapshots != null) {
+            snapshots.record(currentFrame, this);
+        }
+        if (spectators != null) {
+            spectators.publish(currentFrame, this);
+        }
+        renderFrame = currentFrame;
+    }
+
+    /**
+     * Ends the run being played: keeps the score it ended with, adds it to the leaderboard unless it
+     * already was, and ends its trace. A lost run may still be resumed from a checkpoint on the game over
+     * screen, so its trace goes on until the run is left with {@link #leaveRun()}.
+     *
+     * @param score         The score the run finished with.
+     * @param durationTicks The number of ticks the run lasted.
+     * @param outcome       How the run ended, such as {@link TraceRecorder#WIN}.
+     */
+    private void endRun(int score, int durationTicks, byte outcome) {
+        runEnded = true;
+        endScore = score;
+        endOutcome = outcome;
+        if (!runSubmitted) {
+            runSubmitted = true;
+            recordRun(score, durationTicks);
+        }
+        if (outcome != TraceRecorder.GAME_OVER || !canRewind()) {
+            finishTrace(outcome);
+        }
+    }
+
+    /**
+     * Leaves the run that was played, such as when the player goes back to the home screen from an end
+     * screen, ending its trace with how the run ended, or as unfinished if it had not ended.
+     */
+    public void leaveRun() {
+        finishTrace(runEnded ? endOutcome : TraceRecorder.UNFINISHED);
+    }
+
+    /**
+     * Adds a finished run to the leaderboard, if there is one.
+     *
+     * @param score         The score the run finished with.
+     * @param durationTicks The number of ticks the run lasted.
+     */
+    private void recordRun(int score, int durationTicks) {
+        if (leaderboard == null) {
+            return;
+        }
+        String packFile = props.getProperty("levels.packFile", "");
+        String pack = props.getProperty("leaderboard.pack", packFile.isEmpty() ? "default" : packFile);
+        try {
+            leaderboard.submit(player, pack, score, durationTicks);
+            if (ownsLeaderboard) {
+                leaderboard.flush();
+            }
+        } catch (IOException ex) {
+            // losing one run is better than stopping the game
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Ends the trace of the game being played, if there is one.
+     *
+     * @param outcome How the game ended, such as {@link TraceRecorder#WIN}.
+     */
+    private void finishTrace(byte outcome) {
+        if (trace != null) {
+            trace.finish(outcome);
+            trace = null;
+        }
+    }
+
+    /**
+     * Sets the leaderboard finished runs are added to, such as one shared by many headless games.
+     *
+     * @param leaderboard The leaderboard, or null for none.
+     * @param player      The name runs are recorded under.
+     */
+    public void setLeaderboard(Leaderboard leaderboard, String player) {
+        this.leaderboard = leaderboard;
+        this.player = player;
+        this.ownsLeaderboard = false;
+    }
+
+    /**
+     * Draws the current level and the gameplay texts without advancing the game, leaving out
+     * the rendering work shed by the frame pacer.
+     *
+     * @param screen The current game screen controller.
+     */
+    public void render(GameScreen screen) {
+        currentLevel.draw(renderFrame);
+        boolean refreshHud = shedLevel < FramePacer.SHED_HUD || ++framesSinceHudRefresh >= hudInterval;
+        if (refreshHud) {
+            framesSinceHudRefresh = 0;
+        }
+        screen.renderGamePlayTexts(props, currentLevel, this, refreshHud);
+    }
+
+    /**
+     * Sets how much rendering work to leave out when drawing.
+     *
+     * @param shedLevel The shed level from the frame pacer, such as {@link FramePacer#SHED_EFFECTS}.
+     */
+    public void setShedLevel(int shedLevel) {
+        this.shedLevel = shedLevel;
+        if (particles != null) {
+            particles.setHidden(shedLevel >= FramePacer.SHED_EFFECTS);
+        }
+    }
+
+    /**
+     * Checks whether there is an earlier recorded frame the game can be rewound to.
+     *
+     * @return True if snapshots are enabled and more than one frame is recorded.
+     */
+    public boolean canRewind() {
+        return snapshots != null && snapshots.size() > 1;
+    }
+
+    /**
+     * Rewinds the game by one recorded frame, discarding the newest one.
+     *
+     * @return The frame number of the restored frame.
+     */
+    public int rewind() {
+        renderFrame = snapshots.restore(1, this);
+        return renderFrame;
+    }
+
+    /**
+     * Restores the game to the checkpoint a fixed number of seconds before the newest recorded frame,
+     * or to the oldest recorded frame if fewer frames were recorded.
+     *
+     * @return The frame number of the restored frame.
+     */
+    public int restoreCheckpoint() {
+        renderFrame = snapshots.restore(checkpointFrames, this);
+        return renderFrame;
+    }
+
+    /**
+     * Writes the total score and the state of the current level to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(totalScore);
+        currentLevel.writeState(buffer);
+    }
+
+    /**
+     * Restores the total score and the state of the current level from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        totalScore = buffer.getInt();
+        currentLevel.readState(buffer);
+        // frames are only recorded while the run is being played
+        runEnded = false;
+    }
+
+    /**
+     * Discards all recorded frames, since they belong to a level that is no longer played.
+     */
+    private void clearSnapshots() {
+        if (snapshots != null) {
+            snapshots.clear();
+        }
     }
 
     /**
@@ -51,13 +466,96 @@ public class Game {
      */
 
     public void startLevel(int levelNumber) {
-        if (levelNumber == 1) {
-            currentLevel = new Level1(props, 1 );
-        } else if (levelNumber == 2) {
-            currentLevel = new Level2(props, 2);
+        leaveRun();
+        runEnded = false;
+        runSubmitted = false;
+        if (tracing) {
+            try {
+                trace = TraceRecorder.start(props);
+            } catch (IOException ex) {
+                // the game is still playable without a trace
+                ex.printStackTrace();
+            }
+        }
+        currentLevel = createLevel(levelNumber);
+        clearSnapshots();
+        if (session != null) {
+            session.reset(currentLevel, 0);
+        }
+    }
+
+    /**
+     * Creates a level with its background, and loads the assets of the level after it ahead of time.
+     *
+     * @param levelId The number of the level to create.
+     * @return The new level.
+     * @throws IllegalArgumentException If the level's state with its whole barrel pool thrown would not
+     *                                  fit in a snapshot slot.
+     */
+    private Level createLevel(int levelId) {
+        Level level = Level.create(props, levelId);
+        if (snapshots != null || session != null || spectators != null) {
+            int stateBytes = Integer.BYTES + level.getMaxStateBytes();
+            if (stateBytes > slotBytes) {
+                throw new IllegalArgumentException("Level " + levelId + " needs snapshot.slotBytes of at least "
+                        + stateBytes + " to fit a barrelThrow.poolSize of " + props.getProperty("barrelThrow.poolSize"));
+            }
+        }
+        if (particles != null) {
+            particles.clear();
+            level.setParticles(particles);
+        }
+        if (journal != null) {
+            level.setJournal(journal);
+            journal.startLevel(levelId, totalScore);
+        }
+        if (assets != null) {
+            level.setBackground(assets.getBackground(levelId));
+            assets.preload(level.getNextLevelId());
+        }
+        return level;
+    }
+
+    /**
+     * Prints the netplay counters if asked to, then writes the gameplay events still waiting in the event
+     * journal and the trace of the game being played, and closes them.
+     */
+    public void close() {
+        if (session != null && Boolean.parseBoolean(props.getProperty("netplay.report", "false"))) {
+            System.out.println("Netplay: " + session.getReport());
+        }
+        if (trace != null) {
+            if (runEnded) {
+                trace.finish(endOutcome);
+            }
+            trace.close();
+            trace = null;
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
         }
     }
 
+    /**
+     * Returns the clock of the level being played, which decides how many ticks each frame simulates.
+     *
+     * @return The current level's clock.
+     */
+    public GameClock getClock() {
+        return currentLevel.getClock();
+    }
+
+    /**
+     * @return The level being played.
+     */
+    public Level getCurrentLevel() {
+        return currentLevel;
+    }
+
     /**
      * Gets the total score accumulated across levels.
      *
@@ -67,6 +565,17 @@ public class Game {
         return totalScore;
     }
 
+    /**
+     * Returns the score of the run: while it is played, the scores of the levels finished so far plus
+     * the current level's, and once it has ended, the score it ended with, which is the score added to
+     * the leaderboard.
+     *
+     * @return The score of the run.
+     */
+    public int getRunScore() {
+        return runEnded ? endScore : totalScore + currentLevel.getGameScore();
+    }
+
     /**
      * Sets the total score.
      *
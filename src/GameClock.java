@@ -0,0 +1,236 @@
+import java.nio.ByteBuffer;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * The simulation time of a level, counted in ticks from the moment the level starts.
+ *
+ * Everything in a level that depends on time, such as the countdown, Donkey Kong's throws and the
+ * monkeys' shots, reads this clock rather than the frame count of the game loop, so a level behaves
+ * the same however its ticks are spread over frames. The countdown also counts the ticks played in
+ * earlier levels, since the timer continues across levels.
+ *
+ * The clock can be paused, and slowed down or sped up for debugging: the game loop asks it how many
+ * ticks to simulate for the real time that passed, which is none while paused, one every few frames
+ * in slow motion, and many per frame when fast-forwarding. Each tick is simulated exactly as at normal
+ * speed, so the game plays out the same at any speed.
+ */
+public class GameClock implements Snapshottable {
+
+    /** Number of ticks simulated per second at normal speed. */
+    public static final int TICKS_PER_SECOND = 60;
+
+    /** Slowest speed the clock can be set to. */
+    public static final double MIN_TIME_SCALE = 1.0 / 16;
+
+    /** Fastest speed the clock can be set to. */
+    public static final double MAX_TIME_SCALE = 128;
+
+    private final int startTick;
+    private int ticks = 0;
+    private boolean paused = false;
+    private double timeScale = 1;
+    // ticks owed at speeds that are not whole numbers, carried over to the next frame
+    private double owedTicks = 0;
+
+    /**
+     * Creates a clock for the first level played.
+     */
+    public GameClock() {
+        this(0);
+    }
+
+    /**
+     * Creates a clock for a level that follows others.
+     *
+     * @param startTick The number of ticks played in earlier levels.
+     */
+    public GameClock(int startTick) {
+        this.startTick = startTick;
+    }
+
+    /**
+     * Creates the clock of the level after this one, which carries on the countdown and keeps this
+     * clock's pause and speed.
+     *
+     * @return The clock for the next level.
+     */
+    public GameClock next() {
+        GameClock next = new GameClock(getTotalTicks());
+        next.paused = paused;
+        next.timeScale = timeScale;
+        return next;
+    }
+
+    /**
+     * Advances the clock by one tick. Called by the level at the start of each tick it simulates.
+     */
+    public void tick() {
+        ticks++;
+    }
+
+    /**
+     * Works out how many ticks to simulate for the real time of some ticks at normal speed.
+     *
+     * @param realTicks The number of ticks that would be simulated at normal speed.
+     * @return The number of ticks to simulate at the clock's speed.
+     */
+    public int ticksFor(int realTicks) {
+        if (paused) {
+            return 0;
+        }
+        owedTicks += realTicks * timeScale;
+        int due = (int) owedTicks;
+        owedTicks -= due;
+        return due;
+    }
+
+    /**
+     * Returns the number of ticks simulated in this level.
+     *
+     * @return The ticks since the level started.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of ticks simulated in this level and the levels before it.
+     *
+     * @return The ticks since the first level started.
+     */
+    public int getTotalTicks() {
+        return startTick + ticks;
+    }
+
+    /**
+     * Pauses or resumes the clock.
+     *
+     * @param paused True to pause the clock, false to resume it.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        owedTicks = 0;
+    }
+
+    /**
+     * Checks whether the clock is paused.
+     *
+     * @return True if no ticks are simulated.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Sets how fast the clock runs, clamped between {@link #MIN_TIME_SCALE} and {@link #MAX_TIME_SCALE}.
+     *
+     * @param timeScale The number of ticks simulated per tick of real time, 1 for normal speed.
+     */
+    public void setTimeScale(double timeScale) {
+        this.timeScale = Math.max(MIN_TIME_SCALE, Math.min(MAX_TIME_SCALE, timeScale));
+    }
+
+    /**
+     * Returns how fast the clock runs.
+     *
+     * @return The number of ticks simulated per tick of real time.
+     */
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    /**
+     * Writes the ticks simulated in the level to the snapshot buffer. Pause and speed are not part of
+     * the game's state, so rewinding does not change them.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(ticks);
+    }
+
+    /**
+     * Restores the ticks simulated in the level from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        ticks = buffer.getInt();
+    }
+
+    /**
+     * Checks that fast-forwarding gives the same outcome as playing at normal speed, by playing the
+     * same scripted game headless once per speed and comparing the final state of each. Games load
+     * sprites, so the check runs in the first frame of a game window.
+     * Usage: {@code GameClock [level] [ticks] [speed...]}
+     *
+     * @param args The level, the number of ticks played, and the speeds to compare,
+     *             level 1, 3600 ticks and 1, 0.25 and 100 by default.
+     */
+    public static void main(String[] args) {
+        int levelId = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 3600;
+        double[] scales = {1, 0.25, 100};
+        if (args.length > 2) {
+            scales = new double[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                scales[i - 2] = Double.parseDouble(args[i]);
+            }
+        }
+        double[] speeds = scales;
+        Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        WindowHarness.runInFirstFrame(props, "GameClock", () -> {
+            long expected = 0;
+            for (double speed : speeds) {
+                long[] result = play(props, levelId, ticks, speed);
+                if (speed == speeds[0]) {
+                    expected = result[0];
+                }
+                System.out.printf("speed %6.2f: %d frames, state %08x %s%n", speed, result[1], result[0],
+                        result[0] == expected ? "matches" : "DIFFERS");
+            }
+        });
+    }
+
+    /**
+     * Plays a scripted headless game for a number of ticks, simulating them frame by frame at a speed.
+     *
+     * @param props   The game properties.
+     * @param levelId The level to play.
+     * @param ticks   The number of ticks to play, unless the game ends sooner.
+     * @param speed   The speed of the clock.
+     * @return The CRC-32 of the game's final state, and the number of frames it took.
+     */
+    private static long[] play(Properties props, int levelId, int ticks, double speed) {
+        int[] inputs = MatchServer.parseInputs(props.getProperty("startup.warmUpInputs", ""), ticks);
+        Game game = new Game(props, true);
+        GameScreen screen = new GameScreen(props);
+        game.startLevel(levelId);
+        screen.setCurrentStatus(GameScreen.PLAY);
+        game.getClock().setTimeScale(speed);
+
+        int tick = 0;
+        int frames = 0;
+        while (tick < ticks && screen.getCurrentStatus() == GameScreen.PLAY) {
+            frames++;
+            int due = game.getClock().ticksFor(1);
+            for (int i = 0; i < due && tick < ticks && screen.getCurrentStatus() == GameScreen.PLAY; i++) {
+                int buttons = tick < inputs.length ? inputs[tick] : 0;
+                tick++;
+                game.update(buttons, screen, tick);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        buffer.putInt(tick);
+        buffer.putInt(screen.getCurrentStatus());
+        game.writeState(buffer);
+        buffer.flip();
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return new long[] {crc.getValue(), frames};
+    }
+}
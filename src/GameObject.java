@@ -1,12 +1,17 @@
 import bagel.*;
+import java.nio.ByteBuffer;
 
 /**
  * Abstract base class representing a game object with a position.
  * Provides position getters and setters, and abstract methods for drawing and getting the object's image.
  */
-public abstract class GameObject {
+public abstract class GameObject implements Snapshottable {
     protected double x, y;
 
+    // The animation clip the object plays, as an index into its type's clip table, and when it started
+    protected int clipId = 0;
+    protected int clipStartTick = 0;
+
     /**
      * Constructs a GameObject at the specified (x, y) position.
      *
@@ -54,12 +59,57 @@ public abstract class GameObject {
         this.y = y;
     }
 
+    /**
+     * Writes the position of the object to the snapshot buffer.
+     * Subclasses with further mutable state call this first and then write their own fields.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        buffer.putDouble(x).putDouble(y);
+    }
+
+    /**
+     * Restores the position of the object from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        x = buffer.getDouble();
+        y = buffer.getDouble();
+    }
+
     /**
      * Draws the game object on the screen.
      * Implementation depends on the concrete subclass.
      */
     public abstract void draw();
 
+    /**
+     * Draws the game object as it looks at a tick of the game, so animated objects can show the
+     * right frame. Objects without animation draw as usual.
+     *
+     * @param tick The current tick.
+     */
+    public void draw(int tick) {
+        draw();
+    }
+
+    /**
+     * Starts playing an animation clip from the given tick, unless the object is already playing it.
+     *
+     * @param clipId The index of the clip in the object's clip table.
+     * @param tick   The current tick.
+     */
+    protected void playClip(int clipId, int tick) {
+        if (clipId != this.clipId) {
+            this.clipId = clipId;
+            this.clipStartTick = tick;
+        }
+    }
+
     /**
      * Returns the image representation of the game object.
      * Implementation depends on the concrete subclass.
@@ -67,4 +117,13 @@ public abstract class GameObject {
      * @return the image of the object
      */
     public abstract Image getImage();
+
+    /**
+     * Returns the solid pixels of the object's current image, checked once bounding boxes overlap.
+     *
+     * @return The collision mask, or null if the object is solid across its whole bounding box.
+     */
+    public CollisionMask getMask() {
+        return null;
+    }
 }
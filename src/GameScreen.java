@@ -1,6 +1,8 @@
 import bagel.Font;
 import bagel.Image;
 import bagel.Window;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -10,6 +12,15 @@ public class GameScreen {
 
     private int currentStatus;
 
+    // the gameplay texts as last refreshed
+    private String scoreText;
+    private String remainingTimeText;
+    private String healthText;
+    private String bulletText;
+
+    // fonts by file and size, loaded the first time they are drawn with
+    private final Map<String, Font> fonts = new HashMap<>();
+
     /** Background image for all screens. */
     public static final Image BACKGROUND = new Image("res/background.png");
 
@@ -41,19 +52,33 @@ public class GameScreen {
      * @param messageProps Properties for text content.
      */
     public void renderHomeScreen(Properties gameProps, Properties messageProps) {
+        renderHomeScreen(gameProps, messageProps, 1);
+    }
+
+    /**
+     * Renders the home screen with the title, and the prompt once the game has loaded or how much
+     * has loaded until then.
+     *
+     * @param gameProps    Properties for fonts and layout.
+     * @param messageProps Properties for text content.
+     * @param loaded       The fraction of the game loaded, from 0 to 1.
+     */
+    public void renderHomeScreen(Properties gameProps, Properties messageProps, double loaded) {
         BACKGROUND.draw(Window.getWidth() / 2.0, Window.getHeight() / 2.0);
 
         String title = messageProps.getProperty("home.title");
         int titleFontSize = Integer.parseInt(gameProps.getProperty("home.title.fontSize"));
         int titleY = Integer.parseInt(gameProps.getProperty("home.title.y"));
 
-        String prompt = messageProps.getProperty("home.prompt");
+        String prompt = loaded < 1
+                ? messageProps.getProperty("home.loading") + " " + (int) (loaded * 100) + "%"
+                : messageProps.getProperty("home.prompt");
         int promptFontSize = Integer.parseInt(gameProps.getProperty("home.prompt.fontSize"));
         int promptY = Integer.parseInt(gameProps.getProperty("home.prompt.y"));
 
         String fontPath = gameProps.getProperty("font");
-        Font titleFont = new Font(fontPath, titleFontSize);
-        Font promptFont = new Font(fontPath, promptFontSize);
+        Font titleFont = getFont(fontPath, titleFontSize);
+        Font promptFont = getFont(fontPath, promptFontSize);
 
         double centerX = Window.getWidth() / 2.0;
 
@@ -79,7 +104,7 @@ public class GameScreen {
         int statusY = Integer.parseInt(gameProps.getProperty("gameEnd.status.y"));
         String fontPath = gameProps.getProperty("font");
 
-        Font statusFont = new Font(fontPath, statusFontSize);
+        Font statusFont = getFont(fontPath, statusFontSize);
         double centerX = Window.getWidth() / 2.0;
         statusFont.drawString(statusMessage, centerX - statusFont.getWidth(statusMessage) / 2, statusY);
 
@@ -92,7 +117,7 @@ public class GameScreen {
         int finalScore = game.getTotalScore();
         String scoreMessage = messageProps.getProperty("gameEnd.score");
         int scoreFontSize = Integer.parseInt(gameProps.getProperty("gameEnd.scores.fontSize"));
-        Font scoreFont = new Font(fontPath, scoreFontSize);
+        Font scoreFont = getFont(fontPath, scoreFontSize);
         String finalScoreText = scoreMessage + " " + finalScore;
         scoreFont.drawString(finalScoreText, centerX - scoreFont.getWidth(finalScoreText) / 2, statusY + 60);
     }
@@ -105,40 +130,87 @@ public class GameScreen {
      * @param game      Game instance for score tracking.
      */
     public void renderGamePlayTexts(Properties gameProps, Level level, Game game) {
-        // Display score
-        int gameScore =  game.getTotalScore() + level.getGameScore();
-        String scoreText = "Score " + gameScore;
+        renderGamePlayTexts(gameProps, level, game, true);
+    }
+
+    /**
+     * Renders gameplay elements such as score, timer, Donkey Kong health, and bullet count,
+     * optionally reusing the texts from the last refresh when the frame is short on time.
+     *
+     * @param gameProps Properties for fonts and layout.
+     * @param level     The current level being played.
+     * @param game      Game instance for score tracking.
+     * @param refresh   True to rebuild the texts from the current values, false to draw the last ones.
+     */
+    public void renderGamePlayTexts(Properties gameProps, Level level, Game game, boolean refresh) {
+        if (refresh || scoreText == null) {
+            // Display score
+            int gameScore =  game.getTotalScore() + level.getGameScore();
+            scoreText = "Score " + gameScore;
+
+            // Display timer
+            int remainingTime = level.getRemainingTime();
+            remainingTimeText = "Time Left " + remainingTime;
+
+            // Display donkey health
+            int donkeyHealth = level.getDonkeyKong().getHealth();
+            healthText = "DONKEY HEALTH " + donkeyHealth;
+
+            // Display bullet count
+            if (level instanceof Level2) {
+                Mario mario = level.getMario();
+                int bullets = mario.getBulletCount();
+                bulletText = "BULLET " + bullets;
+            } else {
+                bulletText = null;
+            }
+        }
+
         String fontPath = gameProps.getProperty("font");
         int gamePlayFontSize = Integer.parseInt(gameProps.getProperty("gamePlay.score.fontSize"));
-        Font gamePlayFont = new Font(fontPath, gamePlayFontSize);
+        Font gamePlayFont = getFont(fontPath, gamePlayFontSize);
 
         int scoreX = Integer.parseInt(gameProps.getProperty("gamePlay.score.x"));
         int scoreY = Integer.parseInt(gameProps.getProperty("gamePlay.score.y"));
         gamePlayFont.drawString(scoreText, scoreX, scoreY);
-
-        // Display timer
-        int remainingTime = level.getRemainingTime();
-        String remainingTimeText = "Time Left " + remainingTime;
         gamePlayFont.drawString(remainingTimeText, scoreX, scoreY + 30);
 
-        // Display donkey health
-        int donkeyHealth = level.getDonkeyKong().getHealth();
-        String healthText = "DONKEY HEALTH " + donkeyHealth;
         String[] coords = gameProps.getProperty("gamePlay.donkeyhealth.coords").split(",");
         int healthX = Integer.parseInt(coords[0]);
         int healthY = Integer.parseInt(coords[1]);
         gamePlayFont.drawString(healthText, healthX, healthY);
-
-        // Display bullet count
-        if (level instanceof Level2) {
-            Mario mario = level.getMario();
-            int bullets = mario.getBulletCount();
-            String bulletText = "BULLET " + bullets;
+        if (bulletText != null) {
             int bulletY = healthY + 30;
             gamePlayFont.drawString(bulletText, healthX, bulletY);
         }
     }
 
+    /**
+     * Renders the pause message over the gameplay screen.
+     *
+     * @param gameProps    Properties for fonts and layout.
+     * @param messageProps Properties for text content.
+     */
+    public void renderPauseText(Properties gameProps, Properties messageProps) {
+        String message = messageProps.getProperty("pause.message");
+        int fontSize = Integer.parseInt(gameProps.getProperty("pause.fontSize"));
+        int y = Integer.parseInt(gameProps.getProperty("pause.y"));
+        Font font = getFont(gameProps.getProperty("font"), fontSize);
+        font.drawString(message, Window.getWidth() / 2.0 - font.getWidth(message) / 2, y);
+    }
+
+    /**
+     * Returns a font, loading it the first time it is asked for, so screens drawn every frame
+     * do not load their fonts again each frame.
+     *
+     * @param fontPath The path of the font file.
+     * @param fontSize The size of the font.
+     * @return The font.
+     */
+    private Font getFont(String fontPath, int fontSize) {
+        return fonts.computeIfAbsent(fontPath + ":" + fontSize, key -> new Font(fontPath, fontSize));
+    }
+
     /**
      * Gets the current screen status
      *
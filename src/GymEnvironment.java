@@ -0,0 +1,370 @@
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A vectorised reinforcement learning environment that steps many independent levels at once.
+ * Each call to {@link #step(int[])} advances every level by one frame with the given actions,
+ * then writes the observations, rewards and done flags into preallocated arrays. A level that
+ * ends, whether Mario dies, time runs out or Donkey Kong is defeated, is replaced by a fresh
+ * copy of the same level.
+ *
+ * Levels are stepped in parallel by a reusable tree of fork/join tasks, so stepping allocates
+ * nothing beyond what a level update itself allocates. Levels are not drawn, but they still load
+ * their sprites, so the environment must be created after the game window.
+ */
+public final class GymEnvironment {
+
+    /** The number of values in the observation of one environment. */
+    public static final int OBSERVATION_SIZE = 40;
+
+    private static final int NEAREST_BARRELS = 4;
+    private static final int NEAREST_MONKEYS = 4;
+    private static final int NEAREST_BANANAS = 4;
+    private static final int NEAREST_LADDERS = 2;
+    private static final int MAX_BULLETS = 5;
+    private static final int MAX_DONKEY_HEALTH = 5;
+    private static final int MAX_NEAREST = 4;
+    private static final int ENVIRONMENTS_PER_TASK = 16;
+
+    private final Properties props;
+    private final int[] levelIds;
+    private final Level[] levels;
+    private final int[] frames;
+    private final int[] lastScores;
+    private final int[] actions;
+    private final float[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final double width;
+    private final double height;
+    private final int maxFrames;
+    private final ForkJoinPool pool;
+    private final StepTask root;
+
+    // per-thread scratch space for selecting the nearest objects
+    private static final ThreadLocal<double[]> NEAREST = ThreadLocal.withInitial(() -> new double[MAX_NEAREST * 3]);
+
+    /**
+     * A fork/join task stepping a range of environments, split into a fixed tree once
+     * so that it can be reinitialised and invoked again every step.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private class StepTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final StepTask left;
+        private final StepTask right;
+
+        private StepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+            if (to - from > ENVIRONMENTS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                this.left = new StepTask(from, middle);
+                this.right = new StepTask(middle, to);
+            } else {
+                this.left = null;
+                this.right = null;
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (left == null) {
+                for (int i = from; i < to; i++) {
+                    stepEnvironment(i);
+                }
+            } else {
+                left.reinitialize();
+                right.reinitialize();
+                invokeAll(left, right);
+            }
+        }
+    }
+
+    /**
+     * Creates an environment with one level per entry of {@code levelIds}.
+     *
+     * @param props    The game properties containing the level data.
+     * @param levelIds The level number played by each environment.
+     * @param threads  The number of threads used for stepping.
+     */
+    public GymEnvironment(Properties props, int[] levelIds, int threads) {
+        int count = levelIds.length;
+        this.props = props;
+        this.levelIds = levelIds.clone();
+        this.levels = new Level[count];
+        this.frames = new int[count];
+        this.lastScores = new int[count];
+        this.actions = new int[count];
+        this.observations = new float[count * OBSERVATION_SIZE];
+        this.rewards = new float[count];
+        this.dones = new boolean[count];
+        this.width = Double.parseDouble(props.getProperty("window.width"));
+        this.height = Double.parseDouble(props.getProperty("window.height"));
+        this.maxFrames = Integer.parseInt(props.getProperty("gamePlay.maxFrames"));
+        this.pool = new ForkJoinPool(threads);
+        this.root = new StepTask(0, count);
+        reset();
+    }
+
+    /**
+     * Restarts every environment at the beginning of its level and writes the initial observations.
+     */
+    public void reset() {
+        for (int i = 0; i < levels.length; i++) {
+            resetEnvironment(i);
+            rewards[i] = 0;
+            dones[i] = false;
+        }
+    }
+
+    /**
+     * Advances every environment by one frame.
+     *
+     * @param stepActions The buttons held in each environment, see {@link PlayerInput}.
+     */
+    public void step(int[] stepActions) {
+        System.arraycopy(stepActions, 0, actions, 0, actions.length);
+        root.reinitialize();
+        pool.invoke(root);
+    }
+
+    /**
+     * @return The observations of all environments, {@link #OBSERVATION_SIZE} values each.
+     */
+    public float[] getObservations() {
+        return observations;
+    }
+
+    /**
+     * @return The score gained in each environment during the last step.
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /**
+     * @return Whether each environment ended during the last step and was reset.
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Shuts down the threads used for stepping.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Advances a single environment, records its reward and resets it if its level ended.
+     *
+     * @param i The index of the environment.
+     */
+    private void stepEnvironment(int i) {
+        Level level = levels[i];
+        frames[i]++;
+        level.update(actions[i], 0);
+
+        int score = level.getGameScore();
+        rewards[i] = score - lastScores[i];
+        lastScores[i] = score;
+
+        boolean done = level.isGameOver() || level.isLevelCompleted() || frames[i] >= maxFrames;
+        dones[i] = done;
+        if (done) {
+            resetEnvironment(i);
+        } else {
+            writeObservation(i);
+        }
+    }
+
+    /**
+     * Replaces an environment's level with a fresh copy and writes its first observation.
+     *
+     * @param i The index of the environment.
+     */
+    private void resetEnvironment(int i) {
+        levels[i] = Level.create(props, levelIds[i]);
+        frames[i] = 0;
+        lastScores[i] = 0;
+        writeObservation(i);
+    }
+
+    /**
+     * Writes the observation of an environment: Mario's state, the nearest barrels, monkeys,
+     * bananas and ladders relative to Mario, Donkey Kong relative to Mario and the time left.
+     * Positions are scaled by the window size. Missing nearby objects are written as (1, 1).
+     *
+     * @param i The index of the environment.
+     */
+    private void writeObservation(int i) {
+        Level level = levels[i];
+        Mario mario = level.getMario();
+        double marioX = mario.getX();
+        double marioY = mario.getY();
+        float[] out = observations;
+        int o = i * OBSERVATION_SIZE;
+
+        out[o++] = (float) (marioX / width);
+        out[o++] = (float) (marioY / height);
+        out[o++] = (float) mario.getVerticalVelocity();
+        out[o++] = mario.isOnGround() ? 1 : 0;
+        out[o++] = mario.isClimbing() ? 1 : 0;
+        out[o++] = mario.getCurrentWeapon() instanceof Hammer ? 1 : 0;
+        out[o++] = mario.getCurrentWeapon() instanceof Blaster ? 1 : 0;
+        out[o++] = (float) mario.getBulletCount() / MAX_BULLETS;
+
+        double[] nearest = NEAREST.get();
+        int found = 0;
+        for (Barrel barrel : level.getBarrels()) {
+            if (!barrel.isDestroyed()) {
+                found = offerNearest(nearest, found, NEAREST_BARRELS, barrel.getX() - marioX, barrel.getY() - marioY);
+            }
+        }
+        o = writeNearest(out, o, nearest, found, NEAREST_BARRELS);
+
+        found = 0;
+        if (level instanceof Level2) {
+            for (Monkey monkey : ((Level2) level).getMonkeys()) {
+                if (!monkey.isDestroyed()) {
+                    found = offerNearest(nearest, found, NEAREST_MONKEYS, monkey.getX() - marioX, monkey.getY() - marioY);
+                }
+            }
+        }
+        o = writeNearest(out, o, nearest, found, NEAREST_MONKEYS);
+
+        found = 0;
+        if (level instanceof Level2) {
+            for (Monkey monkey : ((Level2) level).getMonkeys()) {
+                if (monkey.isDestroyed()) continue;
+                for (Banana banana : monkey.getBananas()) {
+                    if (banana.isActive()) {
+                        found = offerNearest(nearest, found, NEAREST_BANANAS, banana.getX() - marioX, banana.getY() - marioY);
+                    }
+                }
+            }
+        }
+        o = writeNearest(out, o, nearest, found, NEAREST_BANANAS);
+
+        found = 0;
+        for (Ladder ladder : level.getLadders()) {
+            found = offerNearest(nearest, found, NEAREST_LADDERS, ladder.getX() - marioX, ladder.getY() - marioY);
+        }
+        o = writeNearest(out, o, nearest, found, NEAREST_LADDERS);
+
+        DonkeyKong donkey = level.getDonkeyKong();
+        out[o++] = (float) ((donkey.getX() - marioX) / width);
+        out[o++] = (float) ((donkey.getY() - marioY) / height);
+        out[o++] = (float) donkey.getHealth() / MAX_DONKEY_HEALTH;
+        out[o] = (float) (maxFrames - frames[i]) / maxFrames;
+    }
+
+    /**
+     * Offers an object's offset from Mario to a small array of the nearest offsets so far,
+     * kept sorted by squared distance.
+     *
+     * @param nearest The sorted entries, three values (distance, dx, dy) each.
+     * @param found   The number of entries so far.
+     * @param limit   The maximum number of entries kept.
+     * @param dx      The horizontal offset of the object from Mario.
+     * @param dy      The vertical offset of the object from Mario.
+     * @return The number of entries after the offer.
+     */
+    private static int offerNearest(double[] nearest, int found, int limit, double dx, double dy) {
+        double distance = dx * dx + dy * dy;
+        int slot = found < limit ? found : limit - 1;
+        if (found == limit && distance >= nearest[slot * 3]) {
+            return found;
+        }
+        while (slot > 0 && nearest[(slot - 1) * 3] > distance) {
+            nearest[slot * 3] = nearest[(slot - 1) * 3];
+            nearest[slot * 3 + 1] = nearest[(slot - 1) * 3 + 1];
+            nearest[slot * 3 + 2] = nearest[(slot - 1) * 3 + 2];
+            slot--;
+        }
+        nearest[slot * 3] = distance;
+        nearest[slot * 3 + 1] = dx;
+        nearest[slot * 3 + 2] = dy;
+        return Math.min(found + 1, limit);
+    }
+
+    /**
+     * Writes the nearest offsets found, scaled by the window size, padding missing ones with (1, 1).
+     *
+     * @param out     The observation array.
+     * @param o       The index to start writing at.
+     * @param nearest The sorted entries.
+     * @param found   The number of entries found.
+     * @param limit   The number of entries to write.
+     * @return The index after the written values.
+     */
+    private int writeNearest(float[] out, int o, double[] nearest, int found, int limit) {
+        for (int k = 0; k < limit; k++) {
+            out[o++] = k < found ? (float) (nearest[k * 3 + 1] / width) : 1;
+            out[o++] = k < found ? (float) (nearest[k * 3 + 2] / height) : 1;
+        }
+        return o;
+    }
+
+    /**
+     * Measures how many environment steps per second are taken with random actions, with the
+     * environments split evenly between levels 1 and 2. Levels load sprites, so the measurement runs in
+     * the first frame of a game window.
+     * Usage: {@code GymEnvironment [environments] [steps] [threads]}
+     *
+     * @param args The number of environments, steps and threads, 1024, 1000 and one per core by default.
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        WindowHarness.runInFirstFrame(props, "GymEnvironment", () -> benchmark(props, count, steps, threads));
+    }
+
+    /**
+     * Runs the measurement described in {@link #main}.
+     *
+     * @param props   The game properties containing the levels.
+     * @param count   The number of environments.
+     * @param steps   The number of steps to measure.
+     * @param threads The number of threads used for stepping.
+     */
+    private static void benchmark(Properties props, int count, int steps, int threads) {
+        int[] levelIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            levelIds[i] = 1 + i % 2;
+        }
+        GymEnvironment environment = new GymEnvironment(props, levelIds, threads);
+        SplittableRandom random = new SplittableRandom(0);
+        int[] stepActions = new int[count];
+        // warm up first so that the measurement is not mostly compilation
+        int warmUpSteps = Math.max(steps / 10, 1);
+        long start = 0;
+        long episodes = 0;
+        for (int step = -warmUpSteps; step < steps; step++) {
+            if (step == 0) {
+                start = System.nanoTime();
+            }
+            for (int i = 0; i < count; i++) {
+                stepActions[i] = random.nextInt(1 << 6);
+            }
+            environment.step(stepActions);
+            if (step >= 0) {
+                for (boolean done : environment.getDones()) {
+                    episodes += done ? 1 : 0;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        environment.close();
+        System.out.printf("%d environments on %d threads: %.0f steps per second, %.1f us per step of all, "
+                + "%d episodes ended%n", count, threads, (double) count * steps / seconds, seconds * 1e6 / steps,
+                episodes);
+    }
+}
@@ -1,3 +1,5 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Properties;
@@ -23,4 +25,23 @@ public class IOUtils {
         return appProps;
     }
 
+    /**
+     * Read the width and height of an image file without loading it as a texture
+     * @param imageFile: the path to the image file
+     * @return: the width and height of the image
+     */
+    public static int[] readImageSize(String imageFile) {
+        int[] size = new int[2];
+        try {
+            BufferedImage image = ImageIO.read(new File(imageFile));
+            size[0] = image.getWidth();
+            size[1] = image.getHeight();
+        } catch(IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+
+        return size;
+    }
+
 }
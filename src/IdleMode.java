@@ -0,0 +1,137 @@
+import bagel.Input;
+import org.lwjgl.glfw.GLFW;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Lets the game loop sleep while the screen shows something that only changes on input, such as the
+ * home and end screens or a paused game.
+ *
+ * Left alone, the game loop redraws such screens at the full frame rate. Instead, after a frame has drawn
+ * a static screen, the next frame starts by waiting for GLFW events. The thread sleeps until a key, mouse
+ * or focus event arrives, or until the timeout passes, then the frame handles the input and draws the
+ * screen once more. Nothing is simulated in between. Waiting at the start of a frame, before the input is
+ * read, means a key pressed while asleep is seen by that frame like any other press.
+ *
+ * The idle mode also measures what idling costs: the time spent idle, and the CPU time the whole process
+ * used meanwhile, which includes the garbage collector and the JIT compiler.
+ */
+public class IdleMode {
+
+    private final double timeoutSeconds;
+    private boolean idle = false;
+    private long idleStartNanos;
+    private long idleStartCpuNanos;
+    private long idleNanos = 0;
+    private long idleCpuNanos = 0;
+    private long wakeUps = 0;
+
+    /**
+     * Creates an idle mode that wakes up at least once per timeout.
+     *
+     * @param timeoutMillis The longest time to sleep without an event.
+     */
+    public IdleMode(long timeoutMillis) {
+        this.timeoutSeconds = timeoutMillis / 1000.0;
+    }
+
+    /**
+     * Sleeps until an event arrives or the timeout passes, starting an idle period if not in one yet.
+     * Events that arrive are handled by their callbacks before this returns.
+     */
+    public void waitForEvents() {
+        if (!idle) {
+            idle = true;
+            idleStartNanos = System.nanoTime();
+            idleStartCpuNanos = getProcessCpuNanos();
+        }
+        GLFW.glfwWaitEventsTimeout(timeoutSeconds);
+        wakeUps++;
+    }
+
+    /**
+     * Ends the idle period, if there is one, adding its time and CPU time to the totals.
+     *
+     * @return True if an idle period ended.
+     */
+    public boolean wake() {
+        if (!idle) {
+            return false;
+        }
+        idle = false;
+        idleNanos += System.nanoTime() - idleStartNanos;
+        idleCpuNanos += getProcessCpuNanos() - idleStartCpuNanos;
+        return true;
+    }
+
+    /**
+     * Returns the CPU time the process has used so far, in all of its threads.
+     *
+     * @return The CPU time in nanoseconds, or 0 if the platform does not report it.
+     */
+    private static long getProcessCpuNanos() {
+        return ProcessHandle.current().info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+    }
+
+    /**
+     * Describes the time spent idle so far and the share of a core the process used meanwhile.
+     *
+     * @return The idle report.
+     */
+    public String getReport() {
+        double share = idleNanos == 0 ? 0 : 100.0 * idleCpuNanos / idleNanos;
+        return String.format("Idle: %.1f s, %d wake-ups, CPU %.0f ms (%.2f%% of a core)",
+                idleNanos / 1e9, wakeUps, idleCpuNanos / 1e6, share);
+    }
+
+    /**
+     * Measures the CPU used while showing the home screen, first redrawn every frame as before and
+     * then in idle mode, for the same length of time each. Run it without touching the window.
+     * Usage: {@code IdleMode [seconds]}
+     *
+     * @param args The number of seconds to measure each way, 10 by default.
+     */
+    public static void main(String[] args) {
+        long measureNanos = (args.length > 0 ? Long.parseLong(args[0]) : 10) * 1_000_000_000L;
+        Properties gameProps = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        Properties messageProps = IOUtils.readPropertiesFile("res/message.properties");
+        IdleMode idleMode = new IdleMode(Long.parseLong(gameProps.getProperty("idle.timeoutMillis")));
+        WindowHarness.run(gameProps, "IdleMode", new WindowHarness.Frame() {
+            private GameScreen screen;
+            private long start = -1;
+            private long startCpu;
+            private long frames;
+            private boolean idling = false;
+
+            @Override
+            public boolean update(Input input) {
+                if (screen == null) {
+                    screen = new GameScreen(gameProps);
+                }
+                if (idling) {
+                    idleMode.waitForEvents();
+                }
+                long now = System.nanoTime();
+                if (start < 0) {
+                    start = now;
+                    startCpu = getProcessCpuNanos();
+                } else if (now - start >= measureNanos) {
+                    double share = 100.0 * (getProcessCpuNanos() - startCpu) / (now - start);
+                    System.out.printf("%s: %d frames, %.2f%% of a core%n", idling ? "idle" : "redrawing",
+                            frames, share);
+                    if (idling) {
+                        idleMode.wake();
+                        System.out.println(idleMode.getReport());
+                        return false;
+                    }
+                    idling = true;
+                    start = -1;
+                    frames = 0;
+                }
+                frames++;
+                screen.renderHomeScreen(gameProps, messageProps);
+                return true;
+            }
+        });
+    }
+}
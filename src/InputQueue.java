@@ -0,0 +1,282 @@
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.glfw.GLFWKeyCallback;
+import org.lwjgl.glfw.GLFWKeyCallbackI;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects key presses and releases as they arrive from GLFW, each with the time it arrived, and hands
+ * them to the simulation one tick at a time.
+ *
+ * Polling the keyboard once a frame loses taps that start and end between two frames, and cannot tell
+ * which of several ticks run in one frame a press belongs to. Instead, a GLFW key callback records every
+ * change to a game button in a ring of preallocated slots. The callback is the only producer and the
+ * game loop the only consumer, so each owns one counter and publishes it to the other with an ordered
+ * store. Each tick takes the changes that arrived before the point in time it stands for, and a button
+ * pressed and released within one tick still counts as held for that tick.
+ *
+ * The queue also measures input latency: from a press arriving to the tick that simulates it, and from
+ * a press arriving to the start of the next frame, which is after the frame showing its effect was
+ * swapped to the screen. Both are kept as histograms.
+ */
+public class InputQueue {
+
+    // upper bounds of the latency histogram buckets in microseconds, the last bucket has no bound
+    private static final long[] LATENCY_BOUNDS_US = {250, 500, 1000, 2000, 4000, 8000, 16_667, 33_333, 50_000,
+            100_000, 250_000};
+    private static final int MAX_PENDING_PRESENT = 64;
+    private static final int BAR_WIDTH = 40;
+
+    private final long[] times;
+    private final int[] changes;
+    private final int mask;
+
+    // the producer's and consumer's positions in the ring
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long cachedTail = 0;
+    private long dropped = 0;
+    private GLFWKeyCallbackI previous;
+
+    // owned by the consumer
+    private int held = 0;
+    private final long[] pendingPresent = new long[MAX_PENDING_PRESENT];
+    private int pendingCount = 0;
+    private final long[] simulateBuckets = new long[LATENCY_BOUNDS_US.length + 1];
+    private final long[] presentBuckets = new long[LATENCY_BOUNDS_US.length + 1];
+    private long simulateCount = 0;
+    private long presentCount = 0;
+    private long simulateMaxNanos = 0;
+    private long presentMaxNanos = 0;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity The number of key changes the queue holds, rounded up to a power of two.
+     */
+    public InputQueue(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.times = new long[slots];
+        this.changes = new int[slots];
+        this.mask = slots - 1;
+    }
+
+    /**
+     * Starts receiving key events for a window. The key callback installed before, such as the one
+     * that feeds bagel's {@link bagel.Input}, is kept and still called for every key.
+     *
+     * @param window The GLFW handle of the window.
+     */
+    public void install(long window) {
+        GLFWKeyCallback callback = GLFWKeyCallback.create(this::onKey);
+        previous = GLFW.glfwSetKeyCallback(window, callback);
+    }
+
+    /**
+     * Records a key event if it changes a game button, then passes it on to the previous callback.
+     *
+     * @param window   The GLFW handle of the window.
+     * @param key      The GLFW key code.
+     * @param scancode The platform scancode of the key.
+     * @param action   {@link GLFW#GLFW_PRESS}, {@link GLFW#GLFW_RELEASE} or {@link GLFW#GLFW_REPEAT}.
+     * @param mods     The modifier keys held.
+     */
+    private void onKey(long window, int key, int scancode, int action, int mods) {
+        int button = toButton(key);
+        if (button != 0 && action != GLFW.GLFW_REPEAT) {
+            offer(System.nanoTime(), action == GLFW.GLFW_PRESS ? button : -button);
+        }
+        if (previous != null) {
+            previous.invoke(window, key, scancode, action, mods);
+        }
+    }
+
+    /**
+     * Returns the game button a key controls, matching {@link PlayerInput#read}.
+     *
+     * @param key The GLFW key code.
+     * @return The button, or 0 if the key is not a game button.
+     */
+    private static int toButton(int key) {
+        switch (key) {
+            case GLFW.GLFW_KEY_LEFT:
+                return PlayerInput.LEFT;
+            case GLFW.GLFW_KEY_RIGHT:
+                return PlayerInput.RIGHT;
+            case GLFW.GLFW_KEY_UP:
+                return PlayerInput.UP;
+            case GLFW.GLFW_KEY_DOWN:
+                return PlayerInput.DOWN;
+            case GLFW.GLFW_KEY_SPACE:
+                return PlayerInput.JUMP;
+            case GLFW.GLFW_KEY_S:
+                return PlayerInput.SHOOT;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Adds a button change to the queue. Called only by the producer. Drops the change if the queue is full.
+     *
+     * @param nanos  The time the change arrived, from {@link System#nanoTime()}.
+     * @param change The button pressed, or the negated button released.
+     */
+    public void offer(long nanos, int change) {
+        long position = head.get();
+        if (position - cachedTail > mask) {
+            cachedTail = tail.get();
+            if (position - cachedTail > mask) {
+                dropped++;
+                return;
+            }
+        }
+        int slot = (int) (position & mask);
+        times[slot] = nanos;
+        changes[slot] = change;
+        head.lazySet(position + 1);
+    }
+
+    /**
+     * Applies the button changes that arrived up to a point in time and returns the buttons held for
+     * one tick. A button pressed since the previous tick counts as held even if it was already released.
+     *
+     * @param deadlineNanos The time the tick stands for; later changes are left for later ticks.
+     * @return The buttons held during the tick, see {@link PlayerInput}.
+     */
+    public int nextTick(long deadlineNanos) {
+        return apply(deadlineNanos, true);
+    }
+
+    /**
+     * Applies the button changes that arrived up to a point in time without simulating them, such as
+     * while rewinding, so that they are neither replayed later nor counted in the latencies.
+     *
+     * @param deadlineNanos The time to skip to.
+     */
+    public void skip(long deadlineNanos) {
+        apply(deadlineNanos, false);
+    }
+
+    /**
+     * Takes the button changes that arrived up to a point in time off the queue.
+     *
+     * @param deadlineNanos The time to take changes up to.
+     * @param measure       Whether the presses taken are simulated and count towards the latencies.
+     * @return The buttons held, including any pressed and released since the previous call.
+     */
+    private int apply(long deadlineNanos, boolean measure) {
+        long now = System.nanoTime();
+        long position = tail.get();
+        long end = head.get();
+        int pressed = 0;
+        while (position < end) {
+            int slot = (int) (position & mask);
+            long time = times[slot];
+            if (time - deadlineNanos > 0) {
+                break;
+            }
+            int change = changes[slot];
+            if (change > 0) {
+                held |= change;
+                pressed |= change;
+                if (measure) {
+                    recordSimulated(now - time);
+                }
+                if (measure && pendingCount < MAX_PENDING_PRESENT) {
+                    pendingPresent[pendingCount++] = time;
+                }
+            } else {
+                held &= ~-change;
+            }
+            position++;
+        }
+        tail.lazySet(position);
+        return held | pressed;
+    }
+
+    /**
+     * Notes that the frames simulated so far have been shown, and measures how long the presses they
+     * simulated took to reach the screen. Called at the start of each frame.
+     *
+     * @param nowNanos The current time from {@link System#nanoTime()}.
+     */
+    public void framePresented(long nowNanos) {
+        for (int i = 0; i < pendingCount; i++) {
+            long nanos = nowNanos - pendingPresent[i];
+            presentBuckets[bucket(nanos)]++;
+            presentCount++;
+            presentMaxNanos = Math.max(presentMaxNanos, nanos);
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Adds the time from a press arriving to the tick that simulated it to its histogram.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    private void recordSimulated(long nanos) {
+        simulateBuckets[bucket(nanos)]++;
+        simulateCount++;
+        simulateMaxNanos = Math.max(simulateMaxNanos, nanos);
+    }
+
+    /**
+     * Returns the histogram bucket a latency falls in.
+     *
+     * @param nanos The latency in nanoseconds.
+     * @return The index of the bucket.
+     */
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS_US.length && micros >= LATENCY_BOUNDS_US[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the number of button changes dropped because the queue was full.
+     *
+     * @return The number of dropped changes.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Describes both latency histograms, for printing when a game ends.
+     *
+     * @return The input latency report.
+     */
+    public String getReport() {
+        return describe("Input to simulation", simulateBuckets, simulateCount, simulateMaxNanos)
+                + describe("Input to present", presentBuckets, presentCount, presentMaxNanos)
+                + "Dropped input changes: " + dropped + "\n";
+    }
+
+    /**
+     * Describes one latency histogram, with a bar for each bucket.
+     *
+     * @param name     The name of the latency.
+     * @param buckets  The number of presses in each bucket.
+     * @param count    The number of presses.
+     * @param maxNanos The longest latency.
+     * @return The description, one line per bucket.
+     */
+    private static String describe(String name, long[] buckets, long count, long maxNanos) {
+        StringBuilder text = new StringBuilder(String.format("%s: %d presses, max %.2f ms%n", name, count,
+                maxNanos / 1e6));
+        long most = Math.max(1, Arrays.stream(buckets).max().orElse(1));
+        for (int i = 0; i < buckets.length; i++) {
+            String bound = i < LATENCY_BOUNDS_US.length
+                    ? String.format("< %.2f ms", LATENCY_BOUNDS_US[i] / 1e3)
+                    : String.format(">= %.2f ms", LATENCY_BOUNDS_US[i - 1] / 1e3);
+            String bar = "#".repeat((int) (buckets[i] * BAR_WIDTH / most));
+            text.append(String.format("  %-12s %6d %s%n", bound, buckets[i], bar));
+        }
+        return text.toString();
+    }
+}
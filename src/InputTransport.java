@@ -0,0 +1,23 @@
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A connection to the other player of a two-player session over which input packets are exchanged.
+ * Delivery is unreliable: packets may arrive late, out of order or not at all.
+ */
+public interface InputTransport extends Closeable {
+    /**
+     * Sends a packet to the other player without blocking.
+     *
+     * @param packet The packet to send, from its position to its limit.
+     */
+    void send(ByteBuffer packet);
+
+    /**
+     * Receives the next available packet without blocking.
+     *
+     * @param packet The buffer to receive into; it is cleared first and flipped for reading afterwards.
+     * @return True if a packet was received, false if none was available.
+     */
+    boolean receive(ByteBuffer packet);
+}
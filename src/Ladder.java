@@ -1,4 +1,6 @@
 import bagel.Image;
+import java.nio.ByteBuffer;
+
 /**
  * Represents a ladder in the game, which is a static visual object but implements AffectedByGravity
  */
@@ -45,4 +47,26 @@ public class Ladder extends GameObject implements AffectedByGravity{
     public Image getImage() {
         return LADDER;
     }
+
+    /**
+     * Writes the ladder's position and velocity to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        motion.writeState(buffer);
+    }
+
+    /**
+     * Restores the ladder's position and velocity from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        motion.readState(buffer);
+    }
 }
@@ -0,0 +1,656 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps every finished run on disk and answers which runs scored highest, overall and per player.
+ *
+ * Runs are appended to a log of fixed-size records, each with a CRC-32 of its contents. Since every
+ * record has the same size, a run's record number gives its position in the log, so threads submitting
+ * runs at the same time each write their own record without waiting for one another.
+ *
+ * A memory-mapped index file holds the best runs overall and each player's best run. Players are kept
+ * in an open-addressing table split into stripes, each guarded by its own lock, so players in different
+ * stripes are updated at the same time. The best runs overall are an immutable sorted array that is
+ * replaced with a compare-and-set, so submitting never locks and runs that do not make the list are
+ * turned away after one comparison.
+ *
+ * The index records how many log records it covers. Opening the leaderboard maps the index and only
+ * reads the log records written after the index was last flushed, so starting up does not depend on
+ * the length of the log. Applying a record twice changes nothing, so records applied to the index just
+ * before a crash are simply applied again. A record that fails its checksum, such as one torn by a
+ * crash, is skipped. Records are fixed-size, so the runs after it are still found where they belong.
+ * Only failed records at the end of the log are cut off.
+ *
+ * A run's key packs its score and record number into one long, so the log holds at most 2^32 runs.
+ * Submitting to a full log fails rather than giving runs keys that clash with older ones.
+ */
+public final class Leaderboard implements Closeable {
+
+    /** Longest player or level pack name kept, in UTF-8 bytes. Longer names are cut short. */
+    public static final int MAX_NAME_BYTES = 23;
+
+    // log record: crc, time, score, duration, then the player and pack names each with a length byte
+    private static final int RECORD_BYTES = 64;
+    private static final int CRC_OFFSET = 0;
+    private static final int TIME_OFFSET = 4;
+    private static final int SCORE_OFFSET = 12;
+    private static final int DURATION_OFFSET = 16;
+    private static final int PLAYER_OFFSET = 20;
+    private static final int PACK_OFFSET = 44;
+    private static final int REPLAY_BATCH = 4096;
+
+    // keys keep the record number in 32 bits, so the log holds at most this many runs, 256 GiB of records
+    private static final long MAX_RECORDS = 1L << 32;
+
+    // index: header, the number of players in each stripe, best runs overall, then the player table
+    private static final int INDEX_MAGIC = 0x44_4B_4C_42;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int STRIPES_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 12;
+    private static final int TOP_SIZE_OFFSET = 16;
+    private static final int TOP_COUNT_OFFSET = 20;
+    private static final int INDEXED_OFFSET = 24;
+    private static final int SLOT_BYTES = 16;
+    private static final double MAX_STRIPE_LOAD = 0.9;
+
+    // records submitted but maybe not yet applied, at most this many at once
+    private static final int APPLIED_RING = 1 << 16;
+
+    // the index is flushed this often, which bounds how much of the log is replayed after a crash
+    private static final int FLUSH_INTERVAL = 1 << 16;
+
+    private final FileChannel log;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer index;
+    private final int stripes;
+    private final int slotsPerStripe;
+    private final int topSize;
+    private final int topOffset;
+    private final long tableOffset;
+    private final Object[] stripeLocks;
+
+    // best runs overall as keys from highest to lowest, see key()
+    private final AtomicReference<long[]> top;
+    private final AtomicLong nextRecord;
+    private final AtomicLong watermark;
+    private final AtomicLongArray applied = new AtomicLongArray(APPLIED_RING);
+
+    /**
+     * A finished run read back from the log.
+     */
+    public static class Entry {
+        private final String player;
+        private final String pack;
+        private final int score;
+        private final int durationTicks;
+        private final long timeMillis;
+
+        private Entry(String player, String pack, int score, int durationTicks, long timeMillis) {
+            this.player = player;
+            this.pack = pack;
+            this.score = score;
+            this.durationTicks = durationTicks;
+            this.timeMillis = timeMillis;
+        }
+
+        /**
+         * @return The name of the player.
+         */
+        public String getPlayer() {
+            return player;
+        }
+
+        /**
+         * @return The name of the level pack played.
+         */
+        public String getPack() {
+            return pack;
+        }
+
+        /**
+         * @return The final score of the run.
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * @return The number of ticks the run lasted.
+         */
+        public int getDurationTicks() {
+            return durationTicks;
+        }
+
+        /**
+         * @return When the run finished, in milliseconds since the epoch.
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return player + " " + score + " (" + pack + ", " + durationTicks + " ticks)";
+        }
+    }
+
+    /**
+     * Opens a leaderboard, creating its files if needed, and recovers anything logged since the index
+     * was last flushed. If the index is missing or was made with a different size, it is rebuilt from
+     * the whole log.
+     *
+     * @param logFile     The path of the log file.
+     * @param indexFile   The path of the index file.
+     * @param topSize     The number of best runs overall kept in the index.
+     * @param playerSlots The number of players the index can hold.
+     * @param stripes     The number of lock stripes the players are split into, a power of two.
+     * @throws IOException If the files cannot be read or written.
+     */
+    public Leaderboard(String logFile, String indexFile, int topSize, int playerSlots, int stripes) throws IOException {
+        this.topSize = topSize;
+        this.stripes = stripes;
+        this.slotsPerStripe = playerSlots / stripes;
+        this.topOffset = HEADER_BYTES + stripes * Integer.BYTES;
+        this.tableOffset = topOffset + (long) topSize * Long.BYTES;
+        this.stripeLocks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            stripeLocks[i] = new Object();
+        }
+
+        this.log = FileChannel.open(Paths.get(logFile), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(Paths.get(indexFile), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long indexBytes = tableOffset + (long) stripes * slotsPerStripe * SLOT_BYTES;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        indexChannel.read(header, 0);
+        boolean reusable = indexChannel.size() == indexBytes && header.getInt(0) == INDEX_MAGIC
+                && header.getInt(4) == INDEX_VERSION && header.getInt(STRIPES_OFFSET) == stripes
+                && header.getInt(SLOTS_OFFSET) == slotsPerStripe && header.getInt(TOP_SIZE_OFFSET) == topSize;
+        if (!reusable) {
+            // the index is rebuilt from the whole log, starting from a file of zeros
+            indexChannel.truncate(0);
+        }
+        this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexBytes);
+
+        long logRecords = Math.min(log.size() / RECORD_BYTES, MAX_RECORDS);
+        long indexed = 0;
+        long[] best = new long[0];
+        if (reusable) {
+            indexed = Math.min(index.getLong(INDEXED_OFFSET), logRecords);
+            best = new long[index.getInt(TOP_COUNT_OFFSET)];
+            for (int i = 0; i < best.length; i++) {
+                best[i] = index.getLong(topOffset + i * Long.BYTES);
+            }
+        } else {
+            index.putInt(0, INDEX_MAGIC).putInt(4, INDEX_VERSION).putInt(STRIPES_OFFSET, stripes)
+                    .putInt(SLOTS_OFFSET, slotsPerStripe).putInt(TOP_SIZE_OFFSET, topSize);
+        }
+        this.top = new AtomicReference<>(best);
+
+        long valid = replay(indexed);
+        log.truncate(valid * RECORD_BYTES);
+        if (valid < logRecords) {
+            // runs cut off with the failed records at the end can no longer be listed
+            top.set(Arrays.stream(top.get()).filter(key -> recordOf(key) < valid).toArray());
+        }
+        this.nextRecord = new AtomicLong(valid);
+        this.watermark = new AtomicLong(valid);
+        flush();
+    }
+
+    /**
+     * Applies the log records from a record onwards to the index, skipping records that fail their
+     * checksum.
+     *
+     * @param from The first record to apply.
+     * @return The number of records up to and including the last valid one, or {@code from} if there is none.
+     * @throws IOException If the log cannot be read.
+     */
+    private long replay(long from) throws IOException {
+        ByteBuffer batch = ByteBuffer.allocateDirect(REPLAY_BATCH * RECORD_BYTES);
+        long record = from;
+        long end = from;
+        while (record < MAX_RECORDS) {
+            batch.clear();
+            batch.limit((int) Math.min(batch.capacity(), (MAX_RECORDS - record) * RECORD_BYTES));
+            int read = log.read(batch, record * RECORD_BYTES);
+            if (read < RECORD_BYTES) {
+                return end;
+            }
+            for (int offset = 0; offset + RECORD_BYTES <= read; offset += RECORD_BYTES) {
+                ByteBuffer slice = batch.slice(offset, RECORD_BYTES);
+                if (isIntact(slice)) {
+                    apply(slice, record);
+                    end = record + 1;
+                }
+                record++;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Records a finished run.
+     *
+     * @param player        The name of the player.
+     * @param pack          The name of the level pack played.
+     * @param score         The final score, scores below zero are kept as zero.
+     * @param durationTicks The number of ticks the run lasted.
+     * @throws IOException If the run cannot be written to the log, or the log is full.
+     */
+    public void submit(String player, String pack, int score, int durationTicks) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(TIME_OFFSET, System.currentTimeMillis());
+        record.putInt(SCORE_OFFSET, Math.max(score, 0));
+        record.putInt(DURATION_OFFSET, durationTicks);
+        putName(record, PLAYER_OFFSET, player);
+        putName(record, PACK_OFFSET, pack);
+        record.putInt(CRC_OFFSET, checksum(record));
+
+        long number = nextRecord.getAndUpdate(next -> Math.min(next + 1, MAX_RECORDS));
+        if (number == MAX_RECORDS) {
+            throw new IOException("leaderboard log full at " + MAX_RECORDS + " runs");
+        }
+        while (number - watermark.get() >= APPLIED_RING) {
+            // far more runs in flight than expected, wait for older ones to be applied
+            Thread.yield();
+        }
+        try {
+            while (record.hasRemaining()) {
+                log.write(record, number * RECORD_BYTES + record.position());
+            }
+            apply(record, number);
+        } finally {
+            // a record that failed to be written is skipped when the log is next opened
+            markApplied(number);
+        }
+        if ((number + 1) % FLUSH_INTERVAL == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies a log record to the best runs overall and to its player's best run.
+     *
+     * @param record The record.
+     * @param number The record number.
+     */
+    private void apply(ByteBuffer record, long number) {
+        int score = record.getInt(SCORE_OFFSET);
+        offerTop(key(score, number));
+
+        long hash = hashName(record, PLAYER_OFFSET);
+        int stripe = (int) (hash >>> 32) & (stripes - 1);
+        synchronized (stripeLocks[stripe]) {
+            int slot = findSlot(stripe, hash);
+            int offset = slotOffset(stripe, slot);
+            if (index.getLong(offset) == 0) {
+                int countOffset = HEADER_BYTES + stripe * Integer.BYTES;
+                int players = index.getInt(countOffset);
+                if (players >= slotsPerStripe * MAX_STRIPE_LOAD) {
+                    throw new IllegalStateException("leaderboard index full, raise leaderboard.playerSlots");
+                }
+                index.putInt(countOffset, players + 1);
+                index.putLong(offset, hash);
+                index.putLong(offset + 8, key(score, number));
+            } else if (key(score, number) > index.getLong(offset + 8)) {
+                index.putLong(offset + 8, key(score, number));
+            }
+        }
+    }
+
+    /**
+     * Adds a run to the best runs overall if it is good enough, without locking.
+     *
+     * @param key The key of the run.
+     */
+    private void offerTop(long key) {
+        while (true) {
+            long[] current = top.get();
+            if (current.length == topSize && key <= current[topSize - 1]) {
+                return;
+            }
+            int position = 0;
+            while (position < current.length && current[position] > key) {
+                position++;
+            }
+            if (position < current.length && current[position] == key) {
+                // the run is already listed, such as when a record is replayed
+                return;
+            }
+            long[] next = new long[Math.min(current.length + 1, topSize)];
+            System.arraycopy(current, 0, next, 0, position);
+            next[position] = key;
+            System.arraycopy(current, position, next, position + 1, next.length - position - 1);
+            if (top.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notes that a record was applied and moves the watermark past every record applied so far
+     * without a gap, which is where the next flush says the index is up to.
+     *
+     * @param number The record number.
+     */
+    private void markApplied(long number) {
+        applied.set((int) (number & (APPLIED_RING - 1)), number + 1);
+        long mark = watermark.get();
+        while (applied.get((int) (mark & (APPLIED_RING - 1))) == mark + 1) {
+            watermark.compareAndSet(mark, mark + 1);
+            mark = watermark.get();
+        }
+    }
+
+    /**
+     * Returns the best runs overall, highest score first. Equal scores are listed oldest first.
+     *
+     * @param count The most runs to return.
+     * @return The best runs.
+     * @throws IOException If the runs cannot be read from the log.
+     */
+    public List<Entry> getTopScores(int count) throws IOException {
+        long[] best = top.get();
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, best.length); i++) {
+            entries.add(readEntry(recordOf(best[i])));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns a player's best run.
+     *
+     * @param player The name of the player.
+     * @return The player's best run, or null if the player has no runs.
+     * @throws IOException If the run cannot be read from the log.
+     */
+    public Entry getPlayerBest(String player) throws IOException {
+        ByteBuffer name = ByteBuffer.allocate(RECORD_BYTES);
+        putName(name, PLAYER_OFFSET, player);
+        long hash = hashName(name, PLAYER_OFFSET);
+        int stripe = (int) (hash >>> 32) & (stripes - 1);
+        long key;
+        synchronized (stripeLocks[stripe]) {
+            int offset = slotOffset(stripe, findSlot(stripe, hash));
+            if (index.getLong(offset) == 0) {
+                return null;
+            }
+            key = index.getLong(offset + 8);
+        }
+        return readEntry(recordOf(key));
+    }
+
+    /**
+     * Returns the number of runs recorded.
+     *
+     * @return The number of runs.
+     */
+    public long size() {
+        return nextRecord.get();
+    }
+
+    /**
+     * Writes the best runs overall and how far the index is up to into the index, then forces the
+     * log and the index to disk.
+     *
+     * @throws IOException If the files cannot be forced to disk.
+     */
+    public synchronized void flush() throws IOException {
+        long indexed = watermark.get();
+        long[] best = top.get();
+        for (int i = 0; i < best.length; i++) {
+            index.putLong(topOffset + i * Long.BYTES, best[i]);
+        }
+        index.putInt(TOP_COUNT_OFFSET, best.length);
+        log.force(false);
+        // the index may only claim records that are safely in the log
+        index.putLong(INDEXED_OFFSET, indexed);
+        index.force();
+    }
+
+    /**
+     * Flushes the index and closes the files.
+     *
+     * @throws IOException If the files cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        log.close();
+        indexChannel.close();
+    }
+
+    /**
+     * Reads a run from the log.
+     *
+     * @param record The record number.
+     * @return The run.
+     * @throws IOException If the record cannot be read.
+     */
+    private Entry readEntry(long record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+        while (buffer.hasRemaining() && log.read(buffer, record * RECORD_BYTES + buffer.position()) >= 0) {
+            // keep reading until the whole record is in
+        }
+        return new Entry(getName(buffer, PLAYER_OFFSET), getName(buffer, PACK_OFFSET), buffer.getInt(SCORE_OFFSET),
+                buffer.getInt(DURATION_OFFSET), buffer.getLong(TIME_OFFSET));
+    }
+
+    /**
+     * Finds the slot of a player in a stripe, or the empty slot where the player would go.
+     *
+     * @param stripe The stripe.
+     * @param hash   The hash of the player's name.
+     * @return The slot.
+     */
+    private int findSlot(int stripe, long hash) {
+        int slot = (int) (hash & Integer.MAX_VALUE) % slotsPerStripe;
+        while (true) {
+            long stored = index.getLong(slotOffset(stripe, slot));
+            if (stored == 0 || stored == hash) {
+                return slot;
+            }
+            slot = slot + 1 == slotsPerStripe ? 0 : slot + 1;
+        }
+    }
+
+    /**
+     * @param stripe The stripe.
+     * @param slot   The slot within the stripe.
+     * @return The position of the slot in the index.
+     */
+    private int slotOffset(int stripe, int slot) {
+        return (int) (tableOffset + ((long) stripe * slotsPerStripe + slot) * SLOT_BYTES);
+    }
+
+    /**
+     * Packs a score and record number into one long, so that better runs have larger keys.
+     * Higher scores come first, and of equal scores the older run comes first.
+     *
+     * @param score  The score.
+     * @param record The record number.
+     * @return The key.
+     */
+    private static long key(int score, long record) {
+        return ((long) score << 32) | (~record & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key A key made by {@link #key}.
+     * @return The record number in the key.
+     */
+    private static long recordOf(long key) {
+        return ~key & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Checks a record against its checksum. An all-zero record, such as one that was never fully
+     * written, does not pass.
+     *
+     * @param record The record.
+     * @return True if the record is intact.
+     */
+    private static boolean isIntact(ByteBuffer record) {
+        return record.getLong(TIME_OFFSET) != 0 && record.getInt(CRC_OFFSET) == checksum(record);
+    }
+
+    /**
+     * @param record The record.
+     * @return The CRC-32 of everything in the record after the checksum itself.
+     */
+    private static int checksum(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.slice(CRC_OFFSET + 4, RECORD_BYTES - 4));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes a name into a record as a length byte followed by its UTF-8 bytes, cut short if needed.
+     *
+     * @param record The record.
+     * @param offset The position of the length byte.
+     * @param name   The name.
+     */
+    private static void putName(ByteBuffer record, int offset, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_BYTES);
+        record.put(offset, (byte) length);
+        record.put(offset + 1, bytes, 0, length);
+    }
+
+    /**
+     * @param record The record.
+     * @param offset The position of the name's length byte.
+     * @return The name.
+     */
+    private static String getName(ByteBuffer record, int offset) {
+        byte[] bytes = new byte[record.get(offset)];
+        record.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hashes a name stored in a record with 64-bit FNV-1a. Players are told apart by this hash alone,
+     * which two names share with negligible chance.
+     *
+     * @param record The record.
+     * @param offset The position of the name's length byte.
+     * @return The hash, never zero since zero marks an empty slot.
+     */
+    private static long hashName(ByteBuffer record, int offset) {
+        long hash = 0xCBF29CE484222325L;
+        int length = record.get(offset);
+        for (int i = 0; i <= length; i++) {
+            hash ^= record.get(offset + i) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Prints the leaderboard, or measures it.
+     * Usage: {@code Leaderboard top [count]}, {@code Leaderboard player <name>}, or
+     * {@code Leaderboard bench <runs> <threads>} to submit random runs from many threads, then time
+     * reopening the files.
+     *
+     * @param args The command and its arguments.
+     */
+    public static void main(String[] args) {
+        java.util.Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        try {
+            if (args.length > 0 && args[0].equals("bench")) {
+                bench(props, Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+                return;
+            }
+            try (Leaderboard leaderboard = open(props)) {
+                if (args.length > 1 && args[0].equals("player")) {
+                    System.out.println(leaderboard.getPlayerBest(args[1]));
+                } else {
+                    int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+                    List<Entry> best = leaderboard.getTopScores(count);
+                    for (int i = 0; i < best.size(); i++) {
+                        System.out.println((i + 1) + ". " + best.get(i));
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Opens the leaderboard files named in the config.
+     *
+     * @param props The game properties containing the leaderboard settings.
+     * @return The leaderboard.
+     * @throws IOException If the files cannot be opened.
+     */
+    public static Leaderboard open(java.util.Properties props) throws IOException {
+        return new Leaderboard(props.getProperty("leaderboard.logFile"), props.getProperty("leaderboard.indexFile"),
+                Integer.parseInt(props.getProperty("leaderboard.topSize")),
+                Integer.parseInt(props.getProperty("leaderboard.playerSlots")),
+                Integer.parseInt(props.getProperty("leaderboard.stripes")));
+    }
+
+    /**
+     * Submits random runs from many threads and times how long reopening the leaderboard takes.
+     *
+     * @param props   The game properties containing the leaderboard settings.
+     * @param runs    The number of runs to submit.
+     * @param threads The number of threads submitting.
+     * @throws IOException          If the files cannot be written.
+     * @throws InterruptedException If interrupted while waiting for the threads.
+     */
+    private static void bench(java.util.Properties props, int runs, int threads) throws IOException, InterruptedException {
+        Leaderboard leaderboard = open(props);
+        long before = leaderboard.size();
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = first; i < runs; i += threads) {
+                        int mixed = i * 0x9E3779B9;
+                        leaderboard.submit("player" + (mixed >>> 16) % 100000, "bench", (mixed >>> 8) % 100000, i % 3600);
+                    }
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        leaderboard.close();
+        System.out.printf("%d runs submitted on %d threads in %.2f s, %.0f runs per second%n",
+                leaderboard.size() - before, threads, seconds, runs / seconds);
+
+        start = System.nanoTime();
+        try (Leaderboard reopened = open(props)) {
+            double millis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("reopened %d runs in %.1f ms, best %s%n", reopened.size(), millis,
+                    reopened.getTopScores(1));
+        }
+    }
+}
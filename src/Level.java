@@ -3,24 +3,38 @@ import bagel.*;
 import bagel.util.Point;
 import bagel.util.Rectangle;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.IntFunction;
 
 /**
  * Abstract base class representing a level in the game.
  * Handles loading, updating, and rendering of game components
  */
-public abstract class Level {
-    private final Image background;
+public abstract class Level implements Snapshottable {
+    private Image background;
+    private ParticleSystem particles;
+    private EventJournal journal;
     private final Mario mario;
     private final ArrayList<Weapon> weapons;
     private final DonkeyKong donkey;
     private final Platform[] platforms;
-    private final Ladder[] ladders;
-    private final Barrel[] barrels;
+    private Ladder[] ladders;
+    private Barrel[] barrels;
+    private final Barrel[] barrelPool;
+    private final int throwInterval;
+    private int poolCursor = 0;
+    private BarrelPaths barrelPaths;
+    private NavigationGraph navigation;
     private final Properties gameProps;
+    private final int levelId;
     private GameObject[] objects;
+    private int maxTicks;
     private int remainingTime;
+    private GameClock clock = new GameClock();
     private boolean levelCompleted;
     private int gameScore = 0;
     private boolean isGameOver = false;
@@ -38,6 +52,27 @@ public abstract class Level {
     /** Multiplier used to convert remaining time into bonus score. */
     public static final int TIME_BONUS_MULTIPLIER = 3;
 
+    /** Number of particles spawned when an enemy is destroyed. */
+    public static final int DESTROY_PARTICLES = 24;
+
+    /** Rules of a level with barrels and hammers, as in {@link Level1}. */
+    public static final int BARREL_RULES = 1;
+
+    /** Rules of a level with monkeys and blasters, as in {@link Level2}. */
+    public static final int MONKEY_RULES = 2;
+
+    /**
+     * Creates the level with the given number, using the rules the config declares for it.
+     *
+     * @param gameProps The properties file containing level data.
+     * @param levelId   The level number to load.
+     * @return The new level.
+     */
+    public static Level create(Properties gameProps, int levelId) {
+        int rules = Integer.parseInt(gameProps.getProperty("rules.level" + levelId, String.valueOf(BARREL_RULES)));
+        return rules == MONKEY_RULES ? new Level2(gameProps, levelId) : new Level1(gameProps, levelId);
+    }
+
     /**
      * Constructs a new Level by loading all required game objects from the given properties.
      *
@@ -46,52 +81,237 @@ public abstract class Level {
      */
     public Level(Properties gameProps, int levelId) {
         this.gameProps = gameProps;
-        this.background = new Image("res/background.png");
+        this.levelId = levelId;
 
         // Load components for the given level
         this.platforms = ObjectLoader.loadPlatforms(gameProps, levelId);
         this.ladders = ObjectLoader.loadLadders(gameProps, platforms, levelId);
-        this.barrels = ObjectLoader.loadBarrels(gameProps, platforms, levelId);
+        // Barrels Donkey Kong throws come from a pool kept after the fixed barrels, destroyed until thrown
+        this.maxTicks = Integer.parseInt(gameProps.getProperty("gamePlay.maxFrames"));
+        this.throwInterval = Integer.parseInt(gameProps.getProperty("barrelThrow.interval", "0"));
+        this.barrelPool = new Barrel[Integer.parseInt(gameProps.getProperty("barrelThrow.poolSize", "0"))];
+        for (int i = 0; i < barrelPool.length; i++) {
+            barrelPool[i] = new Barrel(0, 0);
+            barrelPool[i].destroy();
+        }
+        this.barrels = withPool(ObjectLoader.loadBarrels(gameProps, platforms, levelId));
         this.mario = ObjectLoader.loadMario(gameProps, platforms, levelId);
         this.donkey = ObjectLoader.loadDonkeyKong(gameProps, platforms, levelId);
         this.weapons = new ArrayList<>();
+        this.navigation = new NavigationGraph(platforms, ladders);
+        this.barrelPaths = new BarrelPaths(platforms, ladders, Barrel.getSpriteHeight());
     }
 
     /**
-     * Abstract method for updating the level.
+     * Abstract method for updating the level simulation by one tick of its clock.
+     * Rendering is done separately in {@link #draw(int)}. The update depends only on the level state
+     * and the arguments, so replaying the same inputs from a snapshot gives the same result.
      *
-     * @param input        The current keyboard input.
-     * @param currentFrame The current game frame.
+     * @param marioButtons  The buttons held by the player controlling Mario, see {@link PlayerInput}.
+     * @param donkeyButtons The buttons held by the player controlling Donkey Kong, 0 if there is none.
      */
-    public abstract void update(Input input, int currentFrame);
+    public abstract void update(int marioButtons, int donkeyButtons);
 
     /**
-     * Abstract method for retrieving the next level.
+     * Rolls thrown barrels along the level's paths and has Donkey Kong throw another one towards
+     * Mario every throw interval.
+     * Thrown barrels come from the pool, and barrels that are destroyed or leave the screen go back
+     * to it, so throwing never creates objects. A throw is skipped if every pooled barrel is in play.
+     */
+    protected void updateBarrels() {
+        int tick = clock.getTicks();
+        for (Barrel barrel : barrels) {
+            barrel.roll(barrelPaths);
+        }
+        if (throwInterval <= 0 || barrelPool.length == 0 || tick % throwInterval != 0
+                || donkey.isDestroyed()) {
+            return;
+        }
+
+        // look for a barrel back in the pool, starting after the last one thrown
+        for (int n = 0; n < barrelPool.length; n++) {
+            int i = (poolCursor + n) % barrelPool.length;
+            if (barrelPool[i].isDestroyed()) {
+                barrelPool[i].respawn(donkey.getX(), donkey.getY(), mario.getX() >= donkey.getX(),
+                        tick, barrelPaths);
+                poolCursor = (i + 1) % barrelPool.length;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends the barrel pool to the barrels loaded from the config.
      *
-     * @param props The properties object.
-     * @return The next Level instance.
+     * @param loaded The barrels loaded from the config.
+     * @return All barrels of the level.
      */
-    public abstract Level getNextLevel(Properties props);
+    private Barrel[] withPool(Barrel[] loaded) {
+        Barrel[] all = Arrays.copyOf(loaded, loaded.length + barrelPool.length);
+        System.arraycopy(barrelPool, 0, all, loaded.length, barrelPool.length);
+        return all;
+    }
 
     /**
-     * Updates the remaining time based on the current frame.
+     * Draws the background, all level objects, weapons, enemies and Mario as they look at a tick.
+     * The background is left out until one has been set.
      *
-     * @param currentFrame The current frame of the game.
+     * @param tick The tick drawn, which picks the frame of each animation.
      */
-    public void updateRemainingTime(int currentFrame) {
-        int maxFrames = Integer.parseInt(gameProps.getProperty("gamePlay.maxFrames"));
-        remainingTime = (maxFrames - currentFrame) / 60;
+    public void draw(int tick) {
+        if (background != null) {
+            background.draw(Window.getWidth() / 2.0, Window.getHeight() / 2.0);
+        }
+        for (GameObject obj : objects) {
+            obj.draw(tick);
+        }
+        drawWeapons();
+        drawEnemies(tick);
+        if (particles != null) {
+            particles.draw();
+        }
+        mario.draw(tick);
     }
 
     /**
-     * Applies gravity to objects and renders them.
+     * Draws enemies that are specific to a level, on top of weapons and below Mario.
+     * Levels without such enemies draw nothing.
+     *
+     * @param tick The tick drawn, which picks the frame of each animation.
      */
-    public void applyGravityAndRenderObjects() {
+    protected void drawEnemies(int tick) {
+    }
+
+    /**
+     * Applies edited config values to the running level. Ladders and barrels whose entries changed
+     * are moved, entries beyond the old count are added and objects beyond the new count are removed,
+     * while every other object keeps its state. The navigation graph and the barrel paths are rebuilt
+     * if the ladders changed, and rolling barrels look for the next ladder ahead on the new paths.
+     * A new time limit counts from the ticks already played.
+     *
+     * @param changedKeys The config keys whose values changed.
+     */
+    public void applyConfigChanges(Set<String> changedKeys) {
+        if (changedKeys.contains("gamePlay.maxFrames")) {
+            maxTicks = Integer.parseInt(gameProps.getProperty("gamePlay.maxFrames"));
+        }
+        String ladderKey = "ladder.level" + levelId;
+        if (hasChanges(changedKeys, ladderKey)) {
+            ladders = reloadObjects(ladders, changedKeys, ladderKey,
+                    i -> ObjectLoader.loadLadder(gameProps, platforms, levelId, i));
+            navigation = new NavigationGraph(platforms, ladders);
+            barrelPaths = new BarrelPaths(platforms, ladders, Barrel.getSpriteHeight());
+            for (Barrel barrel : barrels) {
+                barrel.followPaths(barrelPaths);
+            }
+        }
+        String barrelKey = "barrel.level" + levelId;
+        if (hasChanges(changedKeys, barrelKey)) {
+            Barrel[] loaded = Arrays.copyOf(barrels, barrels.length - barrelPool.length);
+            barrels = withPool(reloadObjects(loaded, changedKeys, barrelKey,
+                    i -> ObjectLoader.loadBarrel(gameProps, platforms, levelId, i)));
+        }
+        combineLevelObjects();
+    }
+
+    /**
+     * Checks whether any of the changed keys belong to a group of config entries.
+     *
+     * @param changedKeys The config keys whose values changed.
+     * @param key         The key prefix of the group, such as {@code barrel.level1}.
+     * @return True if the count or any entry of the group changed.
+     */
+    protected static boolean hasChanges(Set<String> changedKeys, String key) {
+        for (String changedKey : changedKeys) {
+            if (changedKey.startsWith(key + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Brings an array of objects in line with its config entries, moving changed objects in place,
+     * loading new ones and dropping those beyond the new count.
+     *
+     * @param current     The objects currently in the level.
+     * @param changedKeys The config keys whose values changed.
+     * @param key         The key prefix of the objects' entries.
+     * @param loader      Loads the object at an index, starting from 0.
+     * @param <T>         The type of object.
+     * @return The updated array of objects.
+     */
+    private <T extends GameObject> T[] reloadObjects(T[] current, Set<String> changedKeys, String key,
+                                                     IntFunction<T> loader) {
+        int count = Integer.parseInt(gameProps.getProperty(key + ".count", "0"));
+        T[] reloaded = Arrays.copyOf(current, count);
+        for (int i = 0; i < count; i++) {
+            String entryKey = key + "." + (i + 1);
+            if (i >= current.length) {
+                reloaded[i] = loader.apply(i);
+            } else if (changedKeys.contains(entryKey)) {
+                ObjectLoader.moveTo(reloaded[i], gameProps, entryKey, platforms);
+            }
+        }
+        return reloaded;
+    }
+
+    /**
+     * Collects the platforms, ladders, barrels and Donkey Kong into the array of objects that are
+     * drawn and affected by gravity.
+     */
+    protected void combineLevelObjects() {
+        setObjects(ObjectLoader.combineObjects(new GameObject[][]{
+                platforms, ladders, barrels, new GameObject[]{donkey}
+        }));
+    }
+
+    /**
+     * Returns the number of the level played after this one, following the level sequence in the config.
+     *
+     * @return The next level number, or 0 if this is the last level.
+     */
+    public int getNextLevelId() {
+        int levelCount = Integer.parseInt(gameProps.getProperty("levels.count"));
+        return levelId < levelCount ? levelId + 1 : 0;
+    }
+
+    /**
+     * Advances the level's clock by one tick and updates the remaining time. The time limit is
+     * shared by every level played, so the ticks of earlier levels count against it too.
+     */
+    public void updateRemainingTime() {
+        clock.tick();
+        remainingTime = (maxTicks - clock.getTotalTicks()) / GameClock.TICKS_PER_SECOND;
+    }
+
+    /**
+     * Returns the clock counting the ticks simulated in this level.
+     *
+     * @return The level's clock.
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Continues the clock of the level played before this one, so that the countdown carries on
+     * where it left off while this level's own ticks start from zero.
+     *
+     * @param previous The clock of the previous level.
+     */
+    public void continueClock(GameClock previous) {
+        clock = previous.next();
+    }
+
+    /**
+     * Applies gravity to objects.
+     */
+    public void applyGravityToObjects() {
         for (GameObject obj : objects) {
             if (obj instanceof AffectedByGravity) {
                 ((AffectedByGravity) obj).applyGravity(platforms);
             }
-            obj.draw();
         }
     }
 
@@ -115,12 +335,14 @@ public abstract class Level {
                         mario.setCurrentWeapon(newBlaster);
                         mario.setBulletCount(newBlaster.getBulletCount());
                     }
+                    recordEvent(EventJournal.BLASTER_PICKUP, weapon, mario.getBulletCount());
                 }
 
                 // If it's a Hammer, set current weapon as hammer and bullet count to 0
                 else if (weapon instanceof Hammer) {
                     mario.setCurrentWeapon(weapon);
                     mario.setBulletCount(0);
+                    recordEvent(EventJournal.HAMMER_PICKUP, weapon, 0);
                 }
                 weapon.collect();
             }
@@ -137,10 +359,13 @@ public abstract class Level {
 
         // Check barrel collisions
         for (Barrel barrel : barrels) {
-            if (!barrel.isDestroyed() && marioBox.intersects(barrel.getImage().getBoundingBoxAt(new Point(barrel.getX(), barrel.getY())))) {
+            if (!barrel.isDestroyed() && touches(mario, marioBox, barrel,
+                    barrel.getImage().getBoundingBoxAt(new Point(barrel.getX(), barrel.getY())))) {
                 if (currentWeapon instanceof Hammer) {
                     barrel.destroy();
                     gameScore += DESTROY_BARREL_SCORE;
+                    spawnDestroyEffect(barrel, ParticleSystem.DEBRIS, DESTROY_BARREL_SCORE);
+                    recordEvent(EventJournal.BARREL_DESTROYED, barrel, DESTROY_BARREL_SCORE);
                 } else {
                     setGameOver(true);
                     return;
@@ -150,16 +375,59 @@ public abstract class Level {
 
         // Check Donkey Kong collision
         Rectangle donkeyBox = donkey.getImage().getBoundingBoxAt(new Point(donkey.getX(), donkey.getY()));
-        if (marioBox.intersects(donkeyBox)) {
+        if (touches(mario, marioBox, donkey, donkeyBox)) {
             if (currentWeapon instanceof Hammer) {
                 donkey.setHealth(0);
-                levelCompleted = true;
+                recordEvent(EventJournal.DONKEY_HEALTH, donkey, 0);
+                setLevelCompleted(true);
             } else {
                 setGameOver(true);
             }
         }
     }
 
+    /**
+     * Checks whether two objects touch: first whether their bounding boxes overlap, and only if they
+     * do, whether any of their solid pixels overlap.
+     *
+     * @param a    The first object.
+     * @param boxA The bounding box of the first object.
+     * @param b    The second object.
+     * @param boxB The bounding box of the second object.
+     * @return True if the objects touch.
+     */
+    protected static boolean touches(GameObject a, Rectangle boxA, GameObject b, Rectangle boxB) {
+        return boxA.intersects(boxB) && CollisionMask.overlaps(a.getMask(), boxA, b.getMask(), boxB);
+    }
+
+    /**
+     * Spawns particles where an enemy was destroyed, along with the score it was worth.
+     * Does nothing if the level has no particle system.
+     *
+     * @param enemy        The destroyed enemy.
+     * @param particleKind The kind of particle to spawn, such as {@link ParticleSystem#DEBRIS}.
+     * @param score        The score awarded for destroying the enemy.
+     */
+    protected void spawnDestroyEffect(GameObject enemy, int particleKind, int score) {
+        if (particles != null) {
+            particles.spawnBurst(particleKind, enemy.getX(), enemy.getY(), DESTROY_PARTICLES, 0);
+            particles.spawnBurst(ParticleSystem.SCORE, enemy.getX(), enemy.getY(), 1, score);
+        }
+    }
+
+    /**
+     * Records a gameplay event where an object is. Does nothing if the level has no event journal.
+     *
+     * @param type  The event type, such as {@link EventJournal#BARREL_DESTROYED}.
+     * @param at    The object the event happened to.
+     * @param value The value of the event, see each type.
+     */
+    protected void recordEvent(short type, GameObject at, int value) {
+        if (journal != null) {
+            journal.record(type, at.getX(), at.getY(), value);
+        }
+    }
+
     /**
      * Checks if Mario performed a valid jump over a barrel and is eligible for points.
      *
@@ -221,9 +489,35 @@ public abstract class Level {
         if (mario.isOnGround() && mario.hasScoredThisJump()) {
             gameScore += JUMP_SCORE;
             mario.setHasScoredThisJump(false);
+            recordEvent(EventJournal.JUMP_SCORE, mario, JUMP_SCORE);
         }
     }
 
+    /**
+     * Returns how far Mario is from the nearest enemy that can end the game, measured between their centres.
+     *
+     * @return The distance in pixels to the nearest barrel or Donkey Kong.
+     */
+    public double getNearestEnemyDistance() {
+        double nearest = distanceToMario(donkey);
+        for (Barrel barrel : barrels) {
+            if (!barrel.isDestroyed()) {
+                nearest = Math.min(nearest, distanceToMario(barrel));
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Returns how far an object is from Mario.
+     *
+     * @param object The object.
+     * @return The distance in pixels between the object and Mario.
+     */
+    protected double distanceToMario(GameObject object) {
+        return Math.hypot(object.getX() - mario.getX(), object.getY() - mario.getY());
+    }
+
     /**
      * Draws all uncollected weapons in the level.
      */
@@ -233,6 +527,20 @@ public abstract class Level {
         }
     }
 
+    /**
+     * @return The level number used to look up this level's config entries.
+     */
+    public int getLevelId() {
+        return levelId;
+    }
+
+    /**
+     * @return The game properties the level was loaded from.
+     */
+    public Properties getGameProps() {
+        return gameProps;
+    }
+
     /**
      * @return The Mario instance for this level.
      */
@@ -270,6 +578,13 @@ public abstract class Level {
         return ladders;
     }
 
+    /**
+     * @return The navigation graph of the platforms and ladders in the level.
+     */
+    public NavigationGraph getNavigationGraph() {
+        return navigation;
+    }
+
     /**
      * @return Array of barrels in the level.
      */
@@ -291,6 +606,34 @@ public abstract class Level {
         return background;
     }
 
+    /**
+     * Sets the background image drawn behind this level.
+     *
+     * @param background The background image.
+     */
+    public void setBackground(Image background) {
+        this.background = background;
+    }
+
+    /**
+     * Sets the particle system that shows enemies being destroyed.
+     *
+     * @param particles The particle system, or null for none.
+     */
+    public void setParticles(ParticleSystem particles) {
+        this.particles = particles;
+    }
+
+    /**
+     * Sets the event journal that gameplay events in this level are recorded in, by the level and by Mario.
+     *
+     * @param journal The event journal, or null for none.
+     */
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+        mario.setJournal(journal);
+    }
+
     /**
      * @return Current score of the level.
      */
@@ -334,6 +677,9 @@ public abstract class Level {
      * @param gameOver True if the game is over.
      */
     public void setGameOver(boolean gameOver) {
+        if (gameOver && !isGameOver) {
+            recordEvent(EventJournal.GAME_OVER, mario, gameScore);
+        }
         isGameOver = gameOver;
     }
 
@@ -350,8 +696,118 @@ public abstract class Level {
      * @param levelCompleted True if level is completed.
      */
     public void setLevelCompleted(boolean levelCompleted) {
+        if (levelCompleted && !this.levelCompleted) {
+            recordEvent(EventJournal.LEVEL_COMPLETE, mario, gameScore);
+        }
         this.levelCompleted = levelCompleted;
     }
+
+    /**
+     * Writes the full state of the level to the snapshot buffer: score, timer, flags, Mario and
+     * the weapon he holds, weapons, ladders, the loaded barrels, the pooled barrels in play with the
+     * pool position, and Donkey Kong.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(gameScore);
+        buffer.putInt(remainingTime);
+        buffer.put((byte) ((levelCompleted ? 1 : 0) | (isGameOver ? 2 : 0)));
+        clock.writeState(buffer);
+
+        mario.writeState(buffer);
+        buffer.putInt(weapons.indexOf(mario.getCurrentWeapon()));
+        for (Weapon weapon : weapons) {
+            weapon.writeState(buffer);
+        }
+        for (Ladder ladder : ladders) {
+            ladder.writeState(buffer);
+        }
+        int loadedCount = barrels.length - barrelPool.length;
+        for (int i = 0; i < loadedCount; i++) {
+            barrels[i].writeState(buffer);
+        }
+        // only the pooled barrels in play are written, so a large pool costs nothing until it is thrown
+        int liveCount = 0;
+        for (Barrel barrel : barrelPool) {
+            if (!barrel.isDestroyed()) {
+                liveCount++;
+            }
+        }
+        buffer.putInt(liveCount);
+        for (int i = 0; i < barrelPool.length; i++) {
+            if (!barrelPool[i].isDestroyed()) {
+                buffer.putInt(i);
+                barrelPool[i].writeState(buffer);
+            }
+        }
+        buffer.putInt(poolCursor);
+        donkey.writeState(buffer);
+    }
+
+    /**
+     * Works out the largest snapshot the level can write: its current state with every pooled barrel
+     * in play. Other objects in the level, such as projectiles, can still add to it.
+     *
+     * @return The size in bytes of the level's state with the whole barrel pool thrown.
+     */
+    public int getMaxStateBytes() {
+        ByteBuffer scratch = ByteBuffer.allocate(1 << 20);
+        writeState(scratch);
+        int stateBytes = scratch.position();
+        if (barrelPool.length == 0) {
+            return stateBytes;
+        }
+        scratch.clear();
+        barrelPool[0].writeState(scratch);
+        int barrelBytes = Integer.BYTES + scratch.position();
+        int thrownCount = 0;
+        for (Barrel barrel : barrelPool) {
+            if (!barrel.isDestroyed()) {
+                thrownCount++;
+            }
+        }
+        return stateBytes + (barrelPool.length - thrownCount) * barrelBytes;
+    }
+
+    /**
+     * Restores the full state of the level from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        gameScore = buffer.getInt();
+        remainingTime = buffer.getInt();
+        byte flags = buffer.get();
+        levelCompleted = (flags & 1) != 0;
+        isGameOver = (flags & 2) != 0;
+        clock.readState(buffer);
+
+        mario.readState(buffer);
+        int weaponIndex = buffer.getInt();
+        mario.setCurrentWeapon(weaponIndex >= 0 ? weapons.get(weaponIndex) : null);
+        for (Weapon weapon : weapons) {
+            weapon.readState(buffer);
+        }
+        for (Ladder ladder : ladders) {
+            ladder.readState(buffer);
+        }
+        int loadedCount = barrels.length - barrelPool.length;
+        for (int i = 0; i < loadedCount; i++) {
+            barrels[i].readState(buffer);
+        }
+        for (Barrel barrel : barrelPool) {
+            barrel.destroy();
+        }
+        int liveCount = buffer.getInt();
+        for (int i = 0; i < liveCount; i++) {
+            barrelPool[buffer.getInt()].readState(buffer);
+        }
+        poolCursor = buffer.getInt();
+        donkey.readState(buffer);
+    }
 }
 
 
@@ -9,7 +9,7 @@ import java.util.Properties;
  * objects such as platforms, ladders, barrels, weapons (hammers), and DonkeyKong
  * for level 1. It handles the game loop updates specific to level 1.
  */
-public class Level1 extends Level{
+public final class Level1 extends Level{
 
     /**
      * Constructs a new Level1 instance.
@@ -21,43 +21,35 @@ public class Level1 extends Level{
      */
     public Level1(Properties gameProps, int levelId) {
 
-        super(gameProps, 1);
-        getWeapons().addAll(ObjectLoader.loadHammer(gameProps, getPlatforms(), 1));
+        super(gameProps, levelId);
+        getWeapons().addAll(ObjectLoader.loadHammer(gameProps, getPlatforms(), levelId));
         // Set combined objects (platforms, ladders, barrels, donkey)
-        setObjects(ObjectLoader.combineObjects(new GameObject[][]{
-                getPlatforms(),
-                getLadders(),
-                getBarrels(),
-                new GameObject[]{getDonkeyKong()}
-        }));
+        combineLevelObjects();
     }
 
     /**
      * Updates the game state for Level 1.
-     * This includes rendering the background, updating the remaining time,
-     * applying gravity to objects, drawing weapons, updating and drawing Mario,
-     * and performing various collision and scoring checks.
+     * This includes updating the remaining time, applying gravity to objects,
+     * updating Mario, and performing various collision and scoring checks.
      * If the time runs out, the game over state is set.
      *
-     * @param input        The current user input.
-     * @param currentFrame The current frame count of the game loop.
+     * @param marioButtons  The buttons held by the player controlling Mario.
+     * @param donkeyButtons The buttons held by the player controlling Donkey Kong.
      */
     @Override
-    public void update(Input input, int currentFrame) {
-        getBackground().draw(Window.getWidth() / 2.0, Window.getHeight() / 2.0);
-
+    public void update(int marioButtons, int donkeyButtons) {
         // update time and end game if time reaches 0
-        updateRemainingTime(currentFrame);
+        updateRemainingTime();
         if (getRemainingTime() <= 0) {
             setGameOver(true);
             return;
         }
 
-        // draw objects
-        applyGravityAndRenderObjects();
-        drawWeapons();
-        getMario().update(input, getPlatforms(), getLadders());
-        getMario().draw();
+        // move objects
+        applyGravityToObjects();
+        updateBarrels();
+        getDonkeyKong().control(donkeyButtons);
+        getMario().update(marioButtons, getPlatforms(), getLadders());
 
         // check for collisions
         Rectangle marioBox = getMario().getImage().getBoundingBoxAt(new Point(getMario().getX(), getMario().getY()));
@@ -66,15 +58,4 @@ public class Level1 extends Level{
         checkMarioJumpScore(marioBox);
         addJumpScoreAfterLanding();
     }
-
-    /**
-     * Returns the next level in the game sequence after Level 1.
-     *
-     * @param props The game properties.
-     * @return A new Level2 instance representing the next level.
-     */
-    @Override
-    public Level getNextLevel(Properties props) {
-        return new Level2(props, 2);
-    }
 }
@@ -1,7 +1,11 @@
 import bagel.*;
 import bagel.util.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 /**
  * Represents the second level of the game.
@@ -9,9 +13,11 @@ import java.util.Properties;
  * It handles movement, gravity, collision detection with Mario's weapons and bullets,
  * banana projectiles, scoring, and level completion.
  */
-public class Level2 extends Level {
+public final class Level2 extends Level {
 
     private final ArrayList<Monkey> monkeys;
+    private final EnemyUpdater enemyUpdater;
+    private BehaviourTable behaviours;
     private static final int DESTROY_MONKEY_SCORE = 100;
 
     /**
@@ -21,52 +27,113 @@ public class Level2 extends Level {
      * @param levelId   The identifier for this level.
      */
     public Level2(Properties gameProps, int levelId) {
-        super(gameProps, 2);
-        this.monkeys = ObjectLoader.loadMonkeys(gameProps, getPlatforms(), 2);
-        getWeapons().addAll(ObjectLoader.loadHammer(gameProps, getPlatforms(), 2));
-        getWeapons().addAll(ObjectLoader.loadBlaster(gameProps, getPlatforms(), 2));
-        setObjects(ObjectLoader.combineObjects(new GameObject[][]{
-                getPlatforms(), getLadders(), getBarrels(), new GameObject[]{getDonkeyKong()}
-        }));
+        super(gameProps, levelId);
+        this.monkeys = ObjectLoader.loadMonkeys(gameProps, getPlatforms(), levelId);
+        monkeys.addAll(ObjectLoader.loadPursuingMonkeys(gameProps, getPlatforms(), getNavigationGraph(), levelId));
+        this.behaviours = BehaviourTable.compile(gameProps);
+        monkeys.addAll(ObjectLoader.loadScriptedMonkeys(gameProps, getPlatforms(), getLadders(), behaviours, levelId));
+        getWeapons().addAll(ObjectLoader.loadHammer(gameProps, getPlatforms(), levelId));
+        getWeapons().addAll(ObjectLoader.loadBlaster(gameProps, getPlatforms(), levelId));
+        combineLevelObjects();
+        int parallelThreshold = Integer.parseInt(gameProps.getProperty("monkeys.parallelThreshold", "512"));
+        this.enemyUpdater = new EnemyUpdater(ForkJoinPool.commonPool(), parallelThreshold);
+    }
+
+    /**
+     * Applies edited config values to the running level, as {@link Level#applyConfigChanges} does,
+     * and also to its monkeys. Monkeys whose entries changed are replaced, since their route and
+     * direction may have changed too. Pursuing monkeys are all replaced if the ladders changed, so
+     * that they follow the new navigation graph. Scripted monkeys are all replaced if any behaviour
+     * or the ladders changed, so that they follow the newly compiled behaviours.
+     *
+     * @param changedKeys The config keys whose values changed.
+     */
+    @Override
+    public void applyConfigChanges(Set<String> changedKeys) {
+        NavigationGraph previousGraph = getNavigationGraph();
+        super.applyConfigChanges(changedKeys);
+        Properties props = getGameProps();
+        int level = getLevelId();
+
+        ArrayList<Monkey> reloaded = new ArrayList<>();
+        reloadMonkeys(reloaded, changedKeys, "normalMonkey", NormalMonkey.class, false,
+                i -> ObjectLoader.loadMonkey(props, getPlatforms(), level, i, false));
+        reloadMonkeys(reloaded, changedKeys, "intelligentMonkey", SmartMonkey.class, false,
+                i -> ObjectLoader.loadMonkey(props, getPlatforms(), level, i, true));
+        reloadMonkeys(reloaded, changedKeys, "pursuingMonkey", PursuingMonkey.class,
+                getNavigationGraph() != previousGraph,
+                i -> ObjectLoader.loadPursuingMonkey(props, getPlatforms(), getNavigationGraph(), level, i));
+        boolean behavioursChanged = getNavigationGraph() != previousGraph;
+        for (String key : changedKeys) {
+            behavioursChanged |= key.startsWith("behaviour.");
+        }
+        if (behavioursChanged) {
+            behaviours = BehaviourTable.compile(props);
+        }
+        reloadMonkeys(reloaded, changedKeys, "scriptedMonkey", ScriptedMonkey.class, behavioursChanged,
+                i -> ObjectLoader.loadScriptedMonkey(props, getPlatforms(), getLadders(), behaviours, level, i));
+        monkeys.clear();
+        monkeys.addAll(reloaded);
+    }
+
+    /**
+     * Adds the monkeys of one kind to the reloaded list, keeping those whose entries did not change.
+     *
+     * @param reloaded    The list the monkeys are added to.
+     * @param changedKeys The config keys whose values changed.
+     * @param kind        The config key prefix of this kind of monkey.
+     * @param type        The class of this kind of monkey.
+     * @param reloadAll   True to replace every monkey of this kind.
+     * @param loader      Loads the monkey at an index, starting from 0.
+     */
+    private void reloadMonkeys(ArrayList<Monkey> reloaded, Set<String> changedKeys, String kind,
+                               Class<? extends Monkey> type, boolean reloadAll, IntFunction<Monkey> loader) {
+        String key = kind + ".level" + getLevelId();
+        ArrayList<Monkey> current = new ArrayList<>();
+        for (Monkey monkey : monkeys) {
+            if (monkey.getClass() == type) {
+                current.add(monkey);
+            }
+        }
+        int count = Integer.parseInt(getGameProps().getProperty(key + ".count", "0"));
+        for (int i = 0; i < count; i++) {
+            boolean unchanged = !reloadAll && i < current.size() && !changedKeys.contains(key + "." + (i + 1));
+            reloaded.add(unchanged ? current.get(i) : loader.apply(i));
+        }
     }
 
     /**
      * Updates the game state for Level 2.
-     * This method draws the background, updates remaining time, applies gravity,
+     * This method updates remaining time, applies gravity,
      * moves monkeys, updates Mario, checks collisions with weapons, bananas,
      * bullets, handles scoring, and checks win conditions.
      *
-     * @param input        The current user input.
-     * @param currentFrame The current frame count of the game loop.
+     * @param marioButtons  The buttons held by the player controlling Mario.
+     * @param donkeyButtons The buttons held by the player controlling Donkey Kong.
      */
     @Override
-    public void update(Input input, int currentFrame) {
-
-        getBackground().draw(Window.getWidth() / 2.0, Window.getHeight() / 2.0);
+    public void update(int marioButtons, int donkeyButtons) {
 
         // update time and end game if time reaches 0
-        updateRemainingTime(currentFrame);
+        updateRemainingTime();
         if (getRemainingTime() <= 0) {
             setGameOver(true);
             return;
         }
 
-        // draw objects and apply gravity
-        applyGravityAndRenderObjects();
-        drawWeapons();
+        // apply gravity
+        applyGravityToObjects();
+        updateBarrels();
 
-        for (Monkey monkey : monkeys) {
-            monkey.applyGravity(getPlatforms());
-            if (monkey instanceof SmartMonkey) {
-                ((SmartMonkey) monkey).update(currentFrame);
-            } else {
-                monkey.move();
-            }
-            monkey.draw();
-        }
+        // find Mario's platform once for all pursuing monkeys
+        Mario mario = getMario();
+        double marioFootY = mario.getY() + mario.getImage().getHeight() / 2.0;
+        int marioPlatform = getNavigationGraph().findPlatform(mario.getX(), marioFootY);
+
+        enemyUpdater.update(monkeys, getPlatforms(), getClock().getTicks(), mario.getX(), marioPlatform);
 
-        getMario().update(input, getPlatforms(), getLadders());
-        getMario().draw();
+        getDonkeyKong().control(donkeyButtons);
+        getMario().update(marioButtons, getPlatforms(), getLadders());
 
         // check for collisions
         Rectangle marioBox = getMario().getImage().getBoundingBoxAt(new Point(getMario().getX(), getMario().getY()));
@@ -83,6 +150,45 @@ public class Level2 extends Level {
         }
     }
 
+    /**
+     * @return List of monkeys in the level.
+     */
+    public ArrayList<Monkey> getMonkeys() {
+        return monkeys;
+    }
+
+    /**
+     * Returns how far Mario is from the nearest enemy, including monkeys and the bananas they have thrown.
+     *
+     * @return The distance in pixels to the nearest enemy.
+     */
+    @Override
+    public double getNearestEnemyDistance() {
+        double nearest = super.getNearestEnemyDistance();
+        for (Monkey monkey : monkeys) {
+            if (monkey.isDestroyed()) continue;
+            nearest = Math.min(nearest, distanceToMario(monkey));
+            for (Banana banana : monkey.getBananas()) {
+                if (banana.isActive()) {
+                    nearest = Math.min(nearest, distanceToMario(banana));
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Draws all monkeys and the bananas they have thrown.
+     *
+     * @param tick The tick drawn, which picks the frame of each animation.
+     */
+    @Override
+    protected void drawEnemies(int tick) {
+        for (Monkey monkey : monkeys) {
+            monkey.draw(tick);
+        }
+    }
+
     /**
      * Checks for collisions between Mario (with hammer) and enemies including monkeys.
      * If Mario hits a monkey with the hammer, the monkey is destroyed and score is increased.
@@ -96,10 +202,13 @@ public class Level2 extends Level {
 
         // handle monkey collisions
         for (Monkey monkey : monkeys) {
-            if (!monkey.isDestroyed() && marioBox.intersects(monkey.getImage().getBoundingBoxAt(new Point(monkey.getX(), monkey.getY())))) {
+            if (!monkey.isDestroyed() && touches(getMario(), marioBox, monkey,
+                    monkey.getImage().getBoundingBoxAt(new Point(monkey.getX(), monkey.getY())))) {
                 if (getMario().getCurrentWeapon() instanceof Hammer) {
                     monkey.destroy();
                     setGameScore(getGameScore() + DESTROY_MONKEY_SCORE);
+                    spawnDestroyEffect(monkey, ParticleSystem.SPARK, DESTROY_MONKEY_SCORE);
+                    recordEvent(EventJournal.MONKEY_DESTROYED, monkey, DESTROY_MONKEY_SCORE);
                 } else {
                     setGameOver(true);
                     return;
@@ -109,7 +218,7 @@ public class Level2 extends Level {
     }
 
     /**
-     * Checks collisions between Mario and bananas thrown by SmartMonkeys.
+     * Checks collisions between Mario and bananas thrown by monkeys.
      * If Mario intersects with an active banana, the game is set to over.
      *
      * @param marioBox The bounding box of Mario.
@@ -118,13 +227,12 @@ public class Level2 extends Level {
         for (Monkey monkey : monkeys) {
             if (monkey.isDestroyed()) continue;
 
-            if (monkey instanceof SmartMonkey) {
-                for (Banana banana : ((SmartMonkey) monkey).getBananas()) {
-                    if (banana.isActive() && marioBox.intersects(
-                            banana.getImage().getBoundingBoxAt(new Point(banana.getX(), banana.getY())))) {
-                        setGameOver(true);
-                        return;
-                    }
+            for (Banana banana : monkey.getBananas()) {
+                if (banana.isActive() && touches(getMario(), marioBox, banana,
+                        banana.getImage().getBoundingBoxAt(new Point(banana.getX(), banana.getY())))) {
+                    recordEvent(EventJournal.BANANA_HIT, banana, 0);
+                    setGameOver(true);
+                    return;
                 }
             }
         }
@@ -143,7 +251,7 @@ public class Level2 extends Level {
             // Check platform collisions first
             for (Platform platform : getPlatforms()) {
                 Rectangle platformBox = platform.getImage().getBoundingBoxAt(new Point(platform.getX(), platform.getY()));
-                if (platformBox.intersects(bulletBox)) {
+                if (touches(platform, platformBox, bullet, bulletBox)) {
                     bullet.setActive(false);
                     break;
                 }
@@ -156,10 +264,12 @@ public class Level2 extends Level {
                 if (monkey.isDestroyed()) continue;
                 Rectangle monkeyBox = monkey.getImage().getBoundingBoxAt(new Point(monkey.getX(), monkey.getY()));
 
-                if (monkeyBox.intersects(bulletBox)) {
+                if (touches(monkey, monkeyBox, bullet, bulletBox)) {
                     monkey.destroy();
                     bullet.setActive(false);
                     setGameScore(getGameScore() + DESTROY_MONKEY_SCORE);
+                    spawnDestroyEffect(monkey, ParticleSystem.SPARK, DESTROY_MONKEY_SCORE);
+                    recordEvent(EventJournal.MONKEY_DESTROYED, monkey, DESTROY_MONKEY_SCORE);
                     break;
                 }
             }
@@ -168,10 +278,11 @@ public class Level2 extends Level {
             if (bullet.isActive()) {
                 Rectangle donkeyBox = getDonkeyKong().getImage().getBoundingBoxAt(new Point(getDonkeyKong().getX(), getDonkeyKong().getY()));
 
-                if (donkeyBox.intersects(bulletBox)) {
+                if (touches(getDonkeyKong(), donkeyBox, bullet, bulletBox)) {
                     if (!getDonkeyKong().isDestroyed()) {
                         getDonkeyKong().reduceHealth();
                         bullet.setActive(false);
+                        recordEvent(EventJournal.DONKEY_HEALTH, getDonkeyKong(), getDonkeyKong().getHealth());
                     }
                 }
             }
@@ -180,14 +291,28 @@ public class Level2 extends Level {
     }
 
     /**
-     * Returns the next level after Level 2.
-     * Since Level 2 is the last level, this returns null to indicate the end of the game.
+     * Writes the level state followed by the state of every monkey to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        for (Monkey monkey : monkeys) {
+            monkey.writeState(buffer);
+        }
+    }
+
+    /**
+     * Restores the level state followed by the state of every monkey from the snapshot buffer.
      *
-     * @param props The game properties.
-     * @return null as there is no next level.
+     * @param buffer The buffer to read the state from.
      */
     @Override
-    public Level getNextLevel(Properties props) {
-        return null;
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        for (Monkey monkey : monkeys) {
+            monkey.readState(buffer);
+        }
     }
 }
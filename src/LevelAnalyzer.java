@@ -0,0 +1,622 @@
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Works out what Mario can reach in a level from its config, without opening a window.
+ * It answers which platforms Mario can stand on, whether he can pick up a weapon and then beat
+ * Donkey Kong with it, and the fewest ticks needed for each.
+ *
+ * The search runs over Mario's states standing on a platform or holding onto a ladder, moving him
+ * with the same constants and rules as {@link Mario} and {@link Motion}. Every jump and fall follows
+ * one of a few arcs worked out once up front, with the direction held for the whole arc. Barrels,
+ * monkeys and bananas are left out, since Mario can jump over or destroy them. States are searched
+ * cheapest first and visited states are kept in a hash set of packed longs, so a level takes well
+ * under a second and can be checked whenever the config changes.
+ */
+public class LevelAnalyzer {
+
+    /** Value returned when something cannot be reached. */
+    public static final int UNREACHABLE = -1;
+
+    private static final double WINDOW_WIDTH = 1024;
+    private static final double WINDOW_HEIGHT = 768;
+    private static final double REPOSITION_MARGIN = 5;
+    private static final double EPSILON = 0.01;
+
+    // States are packed as weapon << 34 | mode << 32 | x << 16 | y, with x and y in half pixels
+    private static final int GROUND = 0;
+    private static final int LADDER = 1;
+    private static final int GOAL = 2;
+    private static final int NO_WEAPON = 0;
+    private static final int HAMMER = 1;
+    private static final int BLASTER = 2;
+    private static final double Y_OFFSET = 512;
+    private static final int COST_SHIFT = 36;
+
+    // Jump and fall arcs for each held direction, as offsets from where the arc starts
+    private static final int[] ARC_DIRECTIONS = {-1, 0, 1};
+    private final double[][] jumpDx = new double[ARC_DIRECTIONS.length][];
+    private final double[][] jumpDy = new double[ARC_DIRECTIONS.length][];
+    private final double[][] jumpVy = new double[ARC_DIRECTIONS.length][];
+    private final double[][] fallDx = new double[ARC_DIRECTIONS.length][];
+    private final double[][] fallDy = new double[ARC_DIRECTIONS.length][];
+    private final double[][] fallVy = new double[ARC_DIRECTIONS.length][];
+
+    private final double marioWidth;
+    private final double marioHeight;
+    private final double marioStartX;
+    private final double marioStartY;
+    private final double[] platformLeft;
+    private final double[] platformRight;
+    private final double[] platformTop;
+    private final double[] ladderLeft;
+    private final double[] ladderRight;
+    private final double[] ladderTop;
+    private final double[] ladderBottom;
+    private final double[] weaponLeft;
+    private final double[] weaponRight;
+    private final double[] weaponTop;
+    private final double[] weaponBottom;
+    private final int[] weaponType;
+    private final double[] donkeyBox;
+
+    private final LongHeap queue = new LongHeap();
+    private final LongHashSet visited = new LongHashSet();
+
+    /**
+     * The answers found for a level.
+     */
+    public static class Report {
+        private final boolean[] reachablePlatforms;
+        private final int ticksToWeapon;
+        private final int ticksToDonkey;
+        private final int statesVisited;
+
+        private Report(boolean[] reachablePlatforms, int ticksToWeapon, int ticksToDonkey, int statesVisited) {
+            this.reachablePlatforms = reachablePlatforms;
+            this.ticksToWeapon = ticksToWeapon;
+            this.ticksToDonkey = ticksToDonkey;
+            this.statesVisited = statesVisited;
+        }
+
+        /**
+         * Checks whether Mario can stand on a platform.
+         *
+         * @param platform The index of the platform in the level config.
+         * @return True if Mario can reach the platform.
+         */
+        public boolean isPlatformReachable(int platform) {
+            return reachablePlatforms[platform];
+        }
+
+        /**
+         * Returns the number of platforms in the level.
+         *
+         * @return The number of platforms.
+         */
+        public int getPlatformCount() {
+            return reachablePlatforms.length;
+        }
+
+        /**
+         * Returns the fewest ticks Mario needs to pick up a hammer or blaster.
+         *
+         * @return The number of ticks, or {@link #UNREACHABLE}.
+         */
+        public int getTicksToWeapon() {
+            return ticksToWeapon;
+        }
+
+        /**
+         * Returns the fewest ticks Mario needs to pick up a weapon and then hit Donkey Kong with it.
+         *
+         * @return The number of ticks, or {@link #UNREACHABLE} if the level cannot be won.
+         */
+        public int getTicksToDonkey() {
+            return ticksToDonkey;
+        }
+
+        /**
+         * Returns the number of distinct states the search visited.
+         *
+         * @return The number of states visited.
+         */
+        public int getStatesVisited() {
+            return statesVisited;
+        }
+    }
+
+    /**
+     * Reads a level from its config and works out the jump and fall arcs.
+     *
+     * @param props The properties containing the level definitions.
+     * @param level The level number.
+     */
+    public LevelAnalyzer(Properties props, int level) {
+        int[] platformSize = IOUtils.readImageSize("res/platform.png");
+        int[] ladderSize = IOUtils.readImageSize("res/ladder.png");
+        int[] marioSize = IOUtils.readImageSize("res/mario_right.png");
+        int[] donkeySize = IOUtils.readImageSize("res/donkey_kong.png");
+        int[] hammerSize = IOUtils.readImageSize("res/hammer.png");
+        int[] blasterSize = IOUtils.readImageSize("res/blaster.png");
+        marioWidth = marioSize[0];
+        marioHeight = marioSize[1];
+
+        String[] platforms = props.getProperty("platforms.level" + level).split(";");
+        platformLeft = new double[platforms.length];
+        platformRight = new double[platforms.length];
+        platformTop = new double[platforms.length];
+        for (int i = 0; i < platforms.length; i++) {
+            double[] position = parsePosition(platforms[i]);
+            platformLeft[i] = position[0] - platformSize[0] / 2.0;
+            platformRight[i] = position[0] + platformSize[0] / 2.0;
+            platformTop[i] = position[1] - platformSize[1] / 2.0;
+        }
+
+        double[][] ladders = loadPositions(props, "ladder.level" + level, ladderSize);
+        ladderLeft = new double[ladders.length];
+        ladderRight = new double[ladders.length];
+        ladderTop = new double[ladders.length];
+        ladderBottom = new double[ladders.length];
+        for (int i = 0; i < ladders.length; i++) {
+            ladderLeft[i] = ladders[i][0] - ladderSize[0] / 2.0;
+            ladderRight[i] = ladders[i][0] + ladderSize[0] / 2.0;
+            ladderTop[i] = ladders[i][1] - ladderSize[1] / 2.0;
+            ladderBottom[i] = ladders[i][1] + ladderSize[1] / 2.0;
+        }
+
+        double[][] hammers = loadPositions(props, "hammer.level" + level, hammerSize);
+        double[][] blasters = loadPositions(props, "blaster.level" + level, blasterSize);
+        int weapons = hammers.length + blasters.length;
+        weaponLeft = new double[weapons];
+        weaponRight = new double[weapons];
+        weaponTop = new double[weapons];
+        weaponBottom = new double[weapons];
+        weaponType = new int[weapons];
+        for (int i = 0; i < weapons; i++) {
+            boolean isHammer = i < hammers.length;
+            double[] position = isHammer ? hammers[i] : blasters[i - hammers.length];
+            int[] size = isHammer ? hammerSize : blasterSize;
+            weaponLeft[i] = position[0] - size[0] / 2.0;
+            weaponRight[i] = position[0] + size[0] / 2.0;
+            weaponTop[i] = position[1] - size[1] / 2.0;
+            weaponBottom[i] = position[1] + size[1] / 2.0;
+            weaponType[i] = isHammer ? HAMMER : BLASTER;
+        }
+
+        double[] donkey = settle(parsePosition(props.getProperty("donkey.level" + level)), donkeySize);
+        donkeyBox = new double[] {donkey[0] - donkeySize[0] / 2.0, donkey[1] - donkeySize[1] / 2.0,
+                donkey[0] + donkeySize[0] / 2.0, donkey[1] + donkeySize[1] / 2.0};
+
+        double[] mario = parsePosition(props.getProperty("mario.level" + level));
+        marioStartX = mario[0];
+        marioStartY = mario[1];
+
+        for (int i = 0; i < ARC_DIRECTIONS.length; i++) {
+            double[][] jump = buildArc(ARC_DIRECTIONS[i], Mario.JUMP_VELOCITY);
+            jumpDx[i] = jump[0];
+            jumpDy[i] = jump[1];
+            jumpVy[i] = jump[2];
+            double[][] fall = buildArc(ARC_DIRECTIONS[i], 0);
+            fallDx[i] = fall[0];
+            fallDy[i] = fall[1];
+            fallVy[i] = fall[2];
+        }
+    }
+
+    /**
+     * Searches every state Mario can reach, cheapest first.
+     *
+     * @return The answers for the level.
+     */
+    public Report analyze() {
+        queue.clear();
+        visited.clear();
+        boolean[] reachablePlatforms = new boolean[platformTop.length];
+        int ticksToWeapon = UNREACHABLE;
+        int ticksToDonkey = UNREACHABLE;
+
+        // Mario starts in the air and drops onto the platform below him
+        followArc(marioStartX, marioStartY, fallDx[1], fallDy[1], fallVy[1], NO_WEAPON, 0, false);
+
+        while (!queue.isEmpty()) {
+            long entry = queue.pop();
+            int cost = (int) (entry >>> COST_SHIFT);
+            long state = entry & ((1L << COST_SHIFT) - 1);
+            if (!visited.add(state)) {
+                continue;
+            }
+            int weapon = (int) (state >>> 34);
+            int mode = (int) (state >>> 32) & 3;
+            if (mode == GOAL) {
+                ticksToDonkey = cost;
+                continue;
+            }
+            if (weapon != NO_WEAPON && ticksToWeapon == UNREACHABLE) {
+                ticksToWeapon = cost;
+            }
+            double x = ((state >>> 16) & 0xFFFF) / 2.0;
+            double y = (state & 0xFFFF) / 2.0 - Y_OFFSET;
+
+            if (mode == GROUND) {
+                int platform = findSupport(x, y);
+                if (platform >= 0) {
+                    reachablePlatforms[platform] = true;
+                }
+                expandGround(x, y, weapon, cost);
+            } else {
+                expandLadder(x, y, weapon, cost);
+            }
+        }
+        return new Report(reachablePlatforms, ticksToWeapon, ticksToDonkey, visited.size());
+    }
+
+    /**
+     * Adds the states Mario can move to in one tick, or one arc, while standing on a platform.
+     */
+    private void expandGround(double x, double y, int weapon, int cost) {
+        for (int i = 0; i < ARC_DIRECTIONS.length; i++) {
+            followArc(x, y, jumpDx[i], jumpDy[i], jumpVy[i], weapon, cost, true);
+            if (ARC_DIRECTIONS[i] == 0) {
+                continue;
+            }
+            double nextX = clampX(x + ARC_DIRECTIONS[i] * Mario.SPEED);
+            if (findSupport(nextX, y) >= 0) {
+                arrive(GROUND, nextX, y, weapon, cost + 1);
+            } else {
+                followArc(x, y, fallDx[i], fallDy[i], fallVy[i], weapon, cost, true);
+            }
+        }
+        climb(x, y, true, true, weapon, cost);
+        climb(x, y, false, true, weapon, cost);
+    }
+
+    /**
+     * Adds the states Mario can move to in one tick while holding onto a ladder.
+     */
+    private void expandLadder(double x, double y, int weapon, int cost) {
+        climb(x, y, true, false, weapon, cost);
+        climb(x, y, false, false, weapon, cost);
+        for (int i = 0; i < ARC_DIRECTIONS.length; i++) {
+            if (ARC_DIRECTIONS[i] == 0) {
+                continue;
+            }
+            double nextX = clampX(x + ARC_DIRECTIONS[i] * Mario.SPEED);
+            if (touchesLadder(nextX, y)) {
+                arrive(LADDER, nextX, y, weapon, cost + 1);
+            } else {
+                followArc(x, y, fallDx[i], fallDy[i], fallVy[i], weapon, cost, false);
+            }
+        }
+    }
+
+    /**
+     * Moves Mario one step up or down a ladder, snapping him onto the ladder's end as Mario does.
+     */
+    private void climb(double x, double y, boolean up, boolean onGround, int weapon, int cost) {
+        if (onGround && !isCentredOnLadder(x, y)) {
+            return;
+        }
+        double nextY = y + (up ? -Mario.CLIMB_SPEED : Mario.CLIMB_SPEED);
+        double bottom = nextY + marioHeight / 2.0;
+        for (int i = 0; i < ladderTop.length; i++) {
+            boolean aligned = x + marioWidth / 2.0 > ladderLeft[i] && x - marioWidth / 2.0 < ladderRight[i];
+            if (aligned && up && bottom <= ladderTop[i]) {
+                arrive(GROUND, x, ladderTop[i] - marioHeight / 2.0, weapon, cost + 1);
+                return;
+            } else if (aligned && !up && bottom >= ladderBottom[i]) {
+                arrive(GROUND, x, ladderBottom[i] - marioHeight / 2.0, weapon, cost + 1);
+                return;
+            }
+        }
+        arrive(LADDER, x, nextY, weapon, cost + 1);
+    }
+
+    /**
+     * Follows a jump or fall arc until Mario lands on a platform, grabs a ladder, reaches Donkey Kong
+     * or leaves the screen.
+     *
+     * @param startOnGround True if Mario is standing on the ground on the first tick of the arc.
+     */
+    private void followArc(double startX, double startY, double[] dx, double[] dy, double[] vy,
+                           int weapon, int cost, boolean startOnGround) {
+        double y = startY;
+        for (int t = 0; t < dx.length; t++) {
+            double x = clampX(startX + dx[t]);
+            if ((t > 0 || !startOnGround) && touchesLadder(x, y)) {
+                arrive(LADDER, x, y, weapon, cost + t + 1);
+                return;
+            }
+            double nextY = startY + dy[t];
+            if (vy[t] > 0) {
+                double prevBottom = y + marioHeight / 2.0;
+                double bottom = nextY + marioHeight / 2.0;
+                for (int i = 0; i < platformTop.length; i++) {
+                    if (prevBottom <= platformTop[i] && bottom >= platformTop[i] && overlapsPlatform(x, i)) {
+                        arrive(GROUND, x, platformTop[i] - marioHeight / 2.0, weapon, cost + t + 1);
+                        return;
+                    }
+                }
+            }
+            y = nextY;
+            weapon = pickUpWeapon(x, y, weapon);
+            if (touchesDonkey(x, y)) {
+                if (weapon == HAMMER) {
+                    queue.push((long) (cost + t + 1) << COST_SHIFT | (long) GOAL << 32);
+                }
+                return;
+            }
+            if (y - marioHeight / 2.0 > WINDOW_HEIGHT) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues a state Mario reaches after the given number of ticks, unless it ends the game.
+     */
+    private void arrive(int mode, double x, double y, int weapon, int cost) {
+        weapon = pickUpWeapon(x, y, weapon);
+        if (touchesDonkey(x, y)) {
+            if (weapon == HAMMER) {
+                queue.push((long) cost << COST_SHIFT | (long) GOAL << 32);
+            }
+            return;
+        }
+        if (weapon == BLASTER && y > donkeyBox[1] && y < donkeyBox[3]) {
+            // a bullet fired from here flies level with Donkey Kong
+            queue.push((long) cost << COST_SHIFT | (long) GOAL << 32);
+        }
+        long state = (long) weapon << 34 | (long) mode << 32
+                | Math.round(x * 2) << 16 | Math.round((y + Y_OFFSET) * 2);
+        if (!visited.contains(state)) {
+            queue.push((long) cost << COST_SHIFT | state);
+        }
+    }
+
+    private int pickUpWeapon(double x, double y, int weapon) {
+        for (int i = 0; i < weaponType.length; i++) {
+            if (intersects(x, y, weaponLeft[i], weaponTop[i], weaponRight[i], weaponBottom[i])) {
+                return weaponType[i];
+            }
+        }
+        return weapon;
+    }
+
+    private boolean touchesDonkey(double x, double y) {
+        return intersects(x, y, donkeyBox[0], donkeyBox[1], donkeyBox[2], donkeyBox[3]);
+    }
+
+    private boolean touchesLadder(double x, double y) {
+        for (int i = 0; i < ladderTop.length; i++) {
+            if (intersects(x, y, ladderLeft[i], ladderTop[i], ladderRight[i], ladderBottom[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCentredOnLadder(double x, double y) {
+        for (int i = 0; i < ladderTop.length; i++) {
+            if (x > ladderLeft[i] && x < ladderRight[i] && y + marioHeight / 2.0 >= ladderTop[i]
+                    && y - marioHeight / 2.0 <= ladderBottom[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean intersects(double x, double y, double left, double top, double right, double bottom) {
+        return x + marioWidth / 2.0 > left && x - marioWidth / 2.0 < right
+                && y + marioHeight / 2.0 > top && y - marioHeight / 2.0 < bottom;
+    }
+
+    private boolean overlapsPlatform(double x, int platform) {
+        return x + marioWidth / 2.0 > platformLeft[platform] && x - marioWidth / 2.0 < platformRight[platform];
+    }
+
+    /**
+     * Finds the platform Mario is standing on, as gravity would keep him there.
+     *
+     * @return The platform index, or -1 if nothing holds him up.
+     */
+    private int findSupport(double x, double y) {
+        double bottom = y + marioHeight / 2.0;
+        for (int i = 0; i < platformTop.length; i++) {
+            if (Math.abs(bottom - platformTop[i]) < EPSILON && overlapsPlatform(x, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static double clampX(double x) {
+        return Math.max(0, Math.min(x, WINDOW_WIDTH));
+    }
+
+    /**
+     * Works out the offsets Mario moves through each tick of an arc while holding a direction.
+     *
+     * @param direction      -1 for left, 0 for none and 1 for right.
+     * @param startVelocityY The vertical velocity when the arc starts.
+     * @return The horizontal offsets, vertical offsets and vertical velocities after each tick.
+     */
+    private static double[][] buildArc(int direction, double startVelocityY) {
+        int length = 0;
+        double[][] arc = new double[3][64];
+        double vy = startVelocityY;
+        double dy = 0;
+        while (dy < WINDOW_HEIGHT * 2) {
+            if (length == arc[0].length) {
+                for (int i = 0; i < arc.length; i++) {
+                    arc[i] = Arrays.copyOf(arc[i], length * 2);
+                }
+            }
+            vy = Math.min(vy + Mario.MARIO_GRAVITY, Mario.MARIO_TERMINAL_VELOCITY);
+            dy += vy;
+            arc[0][length] = direction * Mario.SPEED * (length + 1);
+            arc[1][length] = dy;
+            arc[2][length] = vy;
+            length++;
+        }
+        for (int i = 0; i < arc.length; i++) {
+            arc[i] = Arrays.copyOf(arc[i], length);
+        }
+        return arc;
+    }
+
+    /**
+     * Drops an object straight down onto the platform below it, as gravity does once the level starts.
+     */
+    private double[] settle(double[] position, int[] size) {
+        double bottom = position[1] + size[1] / 2.0;
+        double restingTop = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < platformTop.length; i++) {
+            boolean overlaps = position[0] + size[0] / 2.0 > platformLeft[i]
+                    && position[0] - size[0] / 2.0 < platformRight[i];
+            if (overlaps && platformTop[i] >= bottom - REPOSITION_MARGIN && platformTop[i] < restingTop) {
+                restingTop = platformTop[i];
+            }
+        }
+        if (restingTop == Double.POSITIVE_INFINITY) {
+            return position;
+        }
+        return new double[] {position[0], restingTop - size[1] / 2.0};
+    }
+
+    private double[][] loadPositions(Properties props, String key, int[] size) {
+        int count = Integer.parseInt(props.getProperty(key + ".count", "0"));
+        double[][] positions = new double[count][];
+        for (int i = 0; i < count; i++) {
+            positions[i] = settle(parsePosition(props.getProperty(key + "." + (i + 1))), size);
+        }
+        return positions;
+    }
+
+    private static double[] parsePosition(String value) {
+        String[] coords = value.split(",");
+        return new double[] {Double.parseDouble(coords[0]), Double.parseDouble(coords[1])};
+    }
+
+    /**
+     * A min-heap of longs, used as the search queue with the cost in the high bits.
+     */
+    private static class LongHeap {
+        private long[] heap = new long[1024];
+        private int size = 0;
+
+        private void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && heap[(i - 1) / 2] > value) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = value;
+        }
+
+        private long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * A set of non-negative longs using open addressing, so visited states are not boxed.
+     */
+    private static class LongHashSet {
+        private static final long EMPTY = -1;
+        private long[] keys = newTable(1 << 12);
+        private int size = 0;
+
+        private static long[] newTable(int capacity) {
+            long[] table = new long[capacity];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+
+        private int slot(long key, long[] table) {
+            int mask = table.length - 1;
+            int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (table[i] != EMPTY && table[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private boolean contains(long key) {
+            return keys[slot(key, keys)] == key;
+        }
+
+        private boolean add(long key) {
+            int i = slot(key, keys);
+            if (keys[i] == key) {
+                return false;
+            }
+            keys[i] = key;
+            if (++size * 2 > keys.length) {
+                long[] table = newTable(keys.length * 2);
+                for (long existing : keys) {
+                    if (existing != EMPTY) {
+                        table[slot(existing, table)] = existing;
+                    }
+                }
+                keys = table;
+            }
+            return true;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void clear() {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+
+    /**
+     * Analyses a level from a config file and prints what Mario can reach.
+     * Usage: {@code LevelAnalyzer <properties> <level>}
+     *
+     * @param args The config file and the level number.
+     */
+    public static void main(String[] args) {
+        Properties props = IOUtils.readPropertiesFile(args[0]);
+        long start = System.nanoTime();
+        Report report = new LevelAnalyzer(props, Integer.parseInt(args[1])).analyze();
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        for (int i = 0; i < report.getPlatformCount(); i++) {
+            System.out.println("platform " + (i + 1) + (report.isPlatformReachable(i) ? " reachable" : " unreachable"));
+        }
+        System.out.println("ticks to weapon: " + report.getTicksToWeapon());
+        System.out.println("ticks to Donkey Kong: " + report.getTicksToDonkey());
+        System.out.printf("%d states in %.1f ms%n", report.getStatesVisited(), millis);
+    }
+}
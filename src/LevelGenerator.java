@@ -0,0 +1,349 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+
+/**
+ * Generates random levels from a seed in the same key format as {@code app.properties}.
+ * Floors are stacked one ladder height apart, with the bottom floor spanning the screen and each
+ * floor above placed at a random offset. Ladders, barrels, weapons, monkeys, Mario and Donkey Kong
+ * are placed at random on them, with Donkey Kong clear of the ladders up to his floor and no weapon
+ * on his floor, so that Mario can reach a weapon before he has to get past Donkey Kong.
+ *
+ * A generated level is only kept if it is playable: Mario must be able to walk and climb from where
+ * he starts to a weapon and to Donkey Kong, and {@link LevelAnalyzer} must find a way for him to pick
+ * up a weapon and beat Donkey Kong with it. The checks only need the sprite sizes, which are read
+ * from the image files, so candidates can be generated and checked on all cores without a window.
+ */
+public class LevelGenerator {
+    private static final int WINDOW_WIDTH = 1024;
+    private static final int BOTTOM_FLOOR_Y = 753;
+    private static final int SCREEN_MARGIN = 60;
+    private static final int SPAWN_CLEARANCE = 80;
+    private static final int DONKEY_PLACEMENT_TRIES = 20;
+
+    private final int floors;
+    private final boolean withMonkeys;
+    private final int[] platformSize = IOUtils.readImageSize("res/platform.png");
+    private final int[] ladderSize = IOUtils.readImageSize("res/ladder.png");
+    private final int[] barrelSize = IOUtils.readImageSize("res/barrel.png");
+    private final int[] marioSize = IOUtils.readImageSize("res/mario_right.png");
+    private final int[] donkeySize = IOUtils.readImageSize("res/donkey_kong.png");
+    private final int[] hammerSize = IOUtils.readImageSize("res/hammer.png");
+    private final int[] blasterSize = IOUtils.readImageSize("res/blaster.png");
+    private final int[] normalMonkeySize = IOUtils.readImageSize("res/normal_monkey_right.png");
+    private final int[] smartMonkeySize = IOUtils.readImageSize("res/intelli_monkey_right.png");
+
+    /**
+     * A generated level layout, with positions of object centres.
+     */
+    private static class Layout {
+        private double[] platformX;
+        private double[] platformY;
+        private double[] ladderX;
+        private double[] ladderY;
+        private double[] barrelX;
+        private double[] barrelY;
+        private double marioX;
+        private double marioY;
+        private double donkeyX;
+        private double donkeyY;
+        private double hammerX;
+        private double hammerY;
+        private double[] blasterX;
+        private double[] blasterY;
+        private String[] normalMonkeys;
+        private String[] smartMonkeys;
+    }
+
+    /**
+     * Creates a level generator.
+     *
+     * @param floors      The number of floors in each level, including the bottom one.
+     * @param withMonkeys True to also place monkeys and blasters, as level 2 does.
+     */
+    public LevelGenerator(int floors, boolean withMonkeys) {
+        this.floors = floors;
+        this.withMonkeys = withMonkeys;
+    }
+
+    /**
+     * Generates the candidate levels for a range of seeds in parallel and keeps the playable ones.
+     *
+     * @param firstSeed The seed of the first candidate.
+     * @param count     The number of candidates, with consecutive seeds.
+     * @return The seeds of the playable candidates, in increasing order.
+     */
+    public long[] findPlayableSeeds(long firstSeed, int count) {
+        return LongStream.range(firstSeed, firstSeed + count)
+                .parallel()
+                .filter(seed -> isPlayable(layout(seed)))
+                .toArray();
+    }
+
+    /**
+     * Generates a level and writes it into the properties under the given level number.
+     *
+     * @param seed    The seed of the level.
+     * @param levelId The level number used in the property keys.
+     * @param props   The properties to add the level to.
+     */
+    public void writeLevel(long seed, int levelId, Properties props) {
+        writeLayout(layout(seed), levelId, props);
+    }
+
+    /**
+     * Writes a level layout into the properties under the given level number.
+     *
+     * @param layout  The layout of the level.
+     * @param levelId The level number used in the property keys.
+     * @param props   The properties to add the level to.
+     */
+    private void writeLayout(Layout layout, int levelId, Properties props) {
+        String level = ".level" + levelId;
+
+        StringBuilder platforms = new StringBuilder();
+        for (int i = 0; i < layout.platformX.length; i++) {
+            platforms.append(i > 0 ? ";" : "").append(coords(layout.platformX[i], layout.platformY[i]));
+        }
+        props.setProperty("rules" + level, String.valueOf(withMonkeys ? Level.MONKEY_RULES : Level.BARREL_RULES));
+        props.setProperty("platforms" + level, platforms.toString());
+        props.setProperty("mario" + level, coords(layout.marioX, layout.marioY));
+        props.setProperty("donkey" + level, coords(layout.donkeyX, layout.donkeyY));
+        props.setProperty("hammer" + level + ".count", "1");
+        props.setProperty("hammer" + level + ".1", coords(layout.hammerX, layout.hammerY));
+        writeList(props, "ladder" + level, layout.ladderX, layout.ladderY);
+        writeList(props, "barrel" + level, layout.barrelX, layout.barrelY);
+        writeList(props, "blaster" + level, layout.blasterX, layout.blasterY);
+        writeList(props, "normalMonkey" + level, layout.normalMonkeys);
+        writeList(props, "intelligentMonkey" + level, layout.smartMonkeys);
+    }
+
+    /**
+     * Builds the layout of the level for a seed.
+     *
+     * @param seed The seed of the level.
+     * @return The generated layout.
+     */
+    private Layout layout(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Layout layout = new Layout();
+        int platformWidth = platformSize[0];
+        int platformHeight = platformSize[1];
+        int floorGap = ladderSize[1];
+
+        // the bottom floor is two platforms spanning the screen, each floor above is one platform
+        layout.platformX = new double[floors + 1];
+        layout.platformY = new double[floors + 1];
+        layout.platformX[0] = platformWidth / 2.0;
+        layout.platformX[1] = WINDOW_WIDTH - platformWidth / 2.0 + SCREEN_MARGIN;
+        layout.platformY[0] = BOTTOM_FLOOR_Y;
+        layout.platformY[1] = BOTTOM_FLOOR_Y;
+        for (int floor = 1; floor < floors; floor++) {
+            layout.platformX[floor + 1] = random.nextInt(platformWidth / 2 - SCREEN_MARGIN,
+                    WINDOW_WIDTH - platformWidth / 2 + SCREEN_MARGIN + 1);
+            layout.platformY[floor + 1] = BOTTOM_FLOOR_Y - floor * floorGap;
+        }
+
+        // one or two ladders between each floor and the one above, where both platforms overlap
+        double[] ladderX = new double[floors * 2];
+        double[] ladderY = new double[floors * 2];
+        int ladders = 0;
+        for (int floor = 0; floor < floors - 1; floor++) {
+            int lower = floor == 0 ? random.nextInt(2) : floor + 1;
+            int upper = floor + 2;
+            double left = Math.max(floorLeft(layout, lower), floorLeft(layout, upper)) + ladderSize[0];
+            double right = Math.min(floorRight(layout, lower), floorRight(layout, upper)) - ladderSize[0];
+            left = Math.max(left, SCREEN_MARGIN);
+            right = Math.min(right, WINDOW_WIDTH - SCREEN_MARGIN);
+            int count = 1 + random.nextInt(2);
+            for (int i = 0; i < count && left < right; i++) {
+                ladderX[ladders] = left + random.nextDouble() * (right - left);
+                ladderY[ladders] = top(layout, lower) - floorGap / 2.0;
+                ladders++;
+            }
+        }
+        layout.ladderX = Arrays.copyOf(ladderX, ladders);
+        layout.ladderY = Arrays.copyOf(ladderY, ladders);
+
+        layout.marioX = platformWidth / 4.0;
+        layout.marioY = top(layout, 0) - marioSize[1] / 2.0;
+
+        // Donkey Kong stands clear of the ladders up to his floor, so Mario can climb up beside him
+        int topPlatform = floors;
+        layout.donkeyX = randomX(random, layout, topPlatform);
+        for (int i = 1; i < DONKEY_PLACEMENT_TRIES && isOverLadderTop(layout, layout.donkeyX, topPlatform); i++) {
+            layout.donkeyX = randomX(random, layout, topPlatform);
+        }
+        layout.donkeyY = top(layout, topPlatform) - donkeySize[1] / 2.0;
+
+        // weapons are kept off Donkey Kong's floor, since Mario could not reach them without touching him
+        int hammerPlatform = 2 + random.nextInt(floors - 2);
+        layout.hammerX = randomX(random, layout, hammerPlatform);
+        layout.hammerY = top(layout, hammerPlatform) - hammerSize[1] / 2.0;
+
+        int barrels = 3 + random.nextInt(4);
+        layout.barrelX = new double[barrels];
+        layout.barrelY = new double[barrels];
+        for (int i = 0; i < barrels; i++) {
+            int platform = random.nextInt(floors);
+            double x = randomX(random, layout, platform);
+            if (platform <= 1 && Math.abs(x - layout.marioX) < SPAWN_CLEARANCE) {
+                x = Math.min(x + SPAWN_CLEARANCE * 2, WINDOW_WIDTH - SCREEN_MARGIN);
+            }
+            layout.barrelX[i] = x;
+            layout.barrelY[i] = top(layout, platform) - barrelSize[1] / 2.0;
+        }
+
+        int blasters = withMonkeys ? 1 + random.nextInt(2) : 0;
+        layout.blasterX = new double[blasters];
+        layout.blasterY = new double[blasters];
+        for (int i = 0; i < blasters; i++) {
+            int platform = random.nextInt(floors);
+            layout.blasterX[i] = randomX(random, layout, platform);
+            layout.blasterY[i] = top(layout, platform) - blasterSize[1] / 2.0;
+        }
+
+        layout.normalMonkeys = new String[withMonkeys ? random.nextInt(4) : 0];
+        for (int i = 0; i < layout.normalMonkeys.length; i++) {
+            layout.normalMonkeys[i] = monkey(random, layout, normalMonkeySize[1]);
+        }
+        layout.smartMonkeys = new String[withMonkeys ? random.nextInt(4) : 0];
+        for (int i = 0; i < layout.smartMonkeys.length; i++) {
+            layout.smartMonkeys[i] = monkey(random, layout, smartMonkeySize[1]);
+        }
+        return layout;
+    }
+
+    /**
+     * Checks whether Donkey Kong standing at a position on a platform would cover the top of a ladder
+     * up to that platform.
+     *
+     * @param layout   The layout with its ladders placed.
+     * @param x        Donkey Kong's horizontal position.
+     * @param platform The platform Donkey Kong stands on.
+     * @return True if a ladder top is within reach of Donkey Kong.
+     */
+    private boolean isOverLadderTop(Layout layout, double x, int platform) {
+        for (int i = 0; i < layout.ladderX.length; i++) {
+            boolean reachesPlatform = layout.ladderY[i] - ladderSize[1] / 2.0 == top(layout, platform);
+            double clearance = (donkeySize[0] + ladderSize[0]) / 2.0 + marioSize[0];
+            if (reachesPlatform && Math.abs(layout.ladderX[i] - x) < clearance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that Mario can walk and climb from where he starts to the hammer and to Donkey Kong, and
+     * then that the {@link LevelAnalyzer} finds a way to pick up a weapon and beat Donkey Kong. The
+     * navigation graph is checked first, as it rules out most unplayable levels far more cheaply.
+     *
+     * @param layout The layout to check.
+     * @return True if the level is playable.
+     */
+    private boolean isPlayable(Layout layout) {
+        NavigationGraph graph = new NavigationGraph(layout.platformX, layout.platformY,
+                platformSize[0], platformSize[1], layout.ladderX, layout.ladderY, ladderSize[1]);
+        int mario = graph.findPlatform(layout.marioX, layout.marioY + marioSize[1] / 2.0);
+        int donkey = graph.findPlatform(layout.donkeyX, layout.donkeyY + donkeySize[1] / 2.0);
+        int hammer = graph.findPlatform(layout.hammerX, layout.hammerY + hammerSize[1] / 2.0);
+        if (mario == NavigationGraph.NO_PLATFORM || donkey == NavigationGraph.NO_PLATFORM
+                || hammer == NavigationGraph.NO_PLATFORM) {
+            return false;
+        }
+        if (!graph.isReachable(mario, hammer) || !graph.isReachable(mario, donkey)) {
+            return false;
+        }
+        Properties props = new Properties();
+        writeLayout(layout, 1, props);
+        return new LevelAnalyzer(props, 1).analyze().getTicksToDonkey() != LevelAnalyzer.UNREACHABLE;
+    }
+
+    /**
+     * Describes a monkey on a random floor above the bottom one, as position, direction and route.
+     */
+    private String monkey(SplittableRandom random, Layout layout, int height) {
+        int platform = 2 + random.nextInt(floors - 1);
+        String position = coords(randomX(random, layout, platform), top(layout, platform) - height / 2.0);
+        StringBuilder route = new StringBuilder();
+        int segments = 2 + random.nextInt(3);
+        for (int i = 0; i < segments; i++) {
+            route.append(i > 0 ? "," : "").append(100 + random.nextInt(401));
+        }
+        return position + ";" + (random.nextBoolean() ? "left" : "right") + ";" + route;
+    }
+
+    private double randomX(SplittableRandom random, Layout layout, int platform) {
+        double left = Math.max(floorLeft(layout, platform), SCREEN_MARGIN);
+        double right = Math.min(floorRight(layout, platform), WINDOW_WIDTH - SCREEN_MARGIN);
+        return left + random.nextDouble() * (right - left);
+    }
+
+    private double floorLeft(Layout layout, int platform) {
+        return layout.platformX[platform] - platformSize[0] / 2.0;
+    }
+
+    private double floorRight(Layout layout, int platform) {
+        return layout.platformX[platform] + platformSize[0] / 2.0;
+    }
+
+    private double top(Layout layout, int platform) {
+        return layout.platformY[platform] - platformSize[1] / 2.0;
+    }
+
+    private static String coords(double x, double y) {
+        return Math.round(x) + "," + Math.round(y);
+    }
+
+    private static void writeList(Properties props, String key, double[] xs, double[] ys) {
+        props.setProperty(key + ".count", String.valueOf(xs.length));
+        for (int i = 0; i < xs.length; i++) {
+            props.setProperty(key + "." + (i + 1), coords(xs[i], ys[i]));
+        }
+    }
+
+    private static void writeList(Properties props, String key, String[] values) {
+        props.setProperty(key + ".count", String.valueOf(values.length));
+        for (int i = 0; i < values.length; i++) {
+            props.setProperty(key + "." + (i + 1), values[i]);
+        }
+    }
+
+    /**
+     * Generates a pack of playable levels and writes them to a properties file.
+     * Usage: {@code LevelGenerator <firstSeed> <candidates> <firstLevelId> <output> [monkeys]}
+     *
+     * @param args The first seed, the number of candidates, the level number of the first level kept,
+     *             the output file, and optionally "monkeys" to generate levels like level 2.
+     */
+    public static void main(String[] args) {
+        long firstSeed = Long.parseLong(args[0]);
+        int candidates = Integer.parseInt(args[1]);
+        int firstLevelId = Integer.parseInt(args[2]);
+        boolean withMonkeys = args.length > 4 && args[4].equals("monkeys");
+        LevelGenerator generator = new LevelGenerator(5, withMonkeys);
+
+        long start = System.nanoTime();
+        long[] seeds = generator.findPlayableSeeds(firstSeed, candidates);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d of %d candidates playable, %.0f candidates per second%n",
+                seeds.length, candidates, candidates / seconds);
+
+        Properties pack = new Properties();
+        pack.setProperty("levels.count", String.valueOf(firstLevelId + seeds.length - 1));
+        for (int i = 0; i < seeds.length; i++) {
+            generator.writeLevel(seeds[i], firstLevelId + i, pack);
+        }
+        try (OutputStream out = new FileOutputStream(args[3])) {
+            pack.store(out, "Generated levels " + firstLevelId + " to " + (firstLevelId + seeds.length - 1));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * An in-memory input transport connecting two endpoints in the same process.
+ * It stands in for the network in offline play and testing, delaying every packet by a fixed
+ * latency and dropping packets at a fixed rate using a seeded random generator.
+ */
+public class LoopbackTransport implements InputTransport {
+    private final ArrayDeque<Packet> inbox = new ArrayDeque<>();
+    private LoopbackTransport peer;
+    private final long latencyNanos;
+    private final double lossRate;
+    private final Random random;
+
+    private record Packet(long deliverAt, byte[] data) {
+    }
+
+    private LoopbackTransport(long latencyMillis, double lossRate, long seed) {
+        this.latencyNanos = latencyMillis * 1_000_000L;
+        this.lossRate = lossRate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Creates two endpoints connected to each other.
+     *
+     * @param latencyMillis The delay in milliseconds before a sent packet can be received.
+     * @param lossRate      The probability between 0 and 1 that a sent packet is dropped.
+     * @param seed          The seed deciding which packets are dropped.
+     * @return The two connected endpoints.
+     */
+    public static LoopbackTransport[] createPair(long latencyMillis, double lossRate, long seed) {
+        LoopbackTransport first = new LoopbackTransport(latencyMillis, lossRate, seed);
+        LoopbackTransport second = new LoopbackTransport(latencyMillis, lossRate, seed + 1);
+        first.peer = second;
+        second.peer = first;
+        return new LoopbackTransport[]{first, second};
+    }
+
+    /**
+     * Queues a copy of the packet at the other endpoint, unless it is chosen to be lost.
+     *
+     * @param packet The packet to send.
+     */
+    @Override
+    public void send(ByteBuffer packet) {
+        if (random.nextDouble() < lossRate) {
+            return;
+        }
+        byte[] data = new byte[packet.remaining()];
+        packet.get(data);
+        peer.deliver(new Packet(System.nanoTime() + latencyNanos, data));
+    }
+
+    /**
+     * Receives the oldest queued packet whose latency has elapsed.
+     *
+     * @param packet The buffer to receive into.
+     * @return True if a packet was received.
+     */
+    @Override
+    public synchronized boolean receive(ByteBuffer packet) {
+        Packet next = inbox.peek();
+        if (next == null || next.deliverAt() > System.nanoTime()) {
+            return false;
+        }
+        inbox.poll();
+        packet.clear();
+        packet.put(next.data());
+        packet.flip();
+        return true;
+    }
+
+    /**
+     * Drops all packets that have not been received yet.
+     */
+    @Override
+    public synchronized void close() {
+        inbox.clear();
+    }
+
+    private synchronized void deliver(Packet packet) {
+        inbox.add(packet);
+    }
+}
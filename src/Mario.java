@@ -1,5 +1,6 @@
 import bagel.*;
 import bagel.util.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 /**
@@ -19,14 +20,34 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
     private static final Image MARIO_HAMMER_RIGHT = new Image("res/mario_hammer_right.png");
     private static final Image MARIO_BLASTER_RIGHT = new Image("res/mario_blaster_right.png");
     private static final Image MARIO_BLASTER_LEFT = new Image("res/mario_blaster_left.png");
-
-    // Motion and Physics
-    private static final double MARIO_TERMINAL_VELOCITY = 10;
-    private static final double MARIO_GRAVITY = 0.2;
+    private static final CollisionMask MARIO_LEFT_MASK = CollisionMask.load("res/mario_left.png");
+    private static final CollisionMask MARIO_RIGHT_MASK = CollisionMask.load("res/mario_right.png");
+    private static final CollisionMask MARIO_HAMMER_LEFT_MASK = CollisionMask.load("res/mario_hammer_left.png");
+    private static final CollisionMask MARIO_HAMMER_RIGHT_MASK = CollisionMask.load("res/mario_hammer_right.png");
+    private static final CollisionMask MARIO_BLASTER_RIGHT_MASK = CollisionMask.load("res/mario_blaster_right.png");
+    private static final CollisionMask MARIO_BLASTER_LEFT_MASK = CollisionMask.load("res/mario_blaster_left.png");
+
+    // Animation clips shared by all Marios, climbing swaps between facing left and right
+    private static final int IDLE_CLIP = 0;
+    private static final int WALK_CLIP = 1;
+    private static final int CLIMB_CLIP = 2;
+    private static final int JUMP_CLIP = 3;
+    private static final int SWING_CLIP = 4;
+    private static final AnimationClip[] CLIPS = {
+            new AnimationClip(1, 0),
+            new AnimationClip(6, -0.08, 0, 0.08, 0),
+            new AnimationClip(8, new double[] {0, 0}, new boolean[] {false, true}),
+            new AnimationClip(1, -0.15),
+            new AnimationClip(4, -0.3, 0, 0.3, 0)
+    };
+
+    // Motion and Physics, shared with LevelAnalyzer so its search moves Mario the same way
+    public static final double MARIO_TERMINAL_VELOCITY = 10;
+    public static final double MARIO_GRAVITY = 0.2;
     private final Motion motion = new Motion(MARIO_GRAVITY, MARIO_TERMINAL_VELOCITY);
-    private static final double SPEED = 3.5;
-    private static final double JUMP_VELOCITY = -5;
-    private static final double CLIMB_SPEED = 2.0;
+    public static final double SPEED = 3.5;
+    public static final double JUMP_VELOCITY = -5;
+    public static final double CLIMB_SPEED = 2.0;
     private boolean isClimbing = false;
     private boolean onGround = false;
     private boolean hasScoredThisJump = false;
@@ -34,8 +55,9 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
 
     private Weapon currentWeapon = null;
     private final ArrayList<Bullet> bullets = new ArrayList<>();
-    private Input input;
+    private final PlayerInput controls = new PlayerInput();
     private int bulletCount = 0;
+    private EventJournal journal;
 
     /**
      * Constructs a Mario instance positioned at (x, y).
@@ -52,15 +74,15 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
      * Handles input-based movement, climbing, jumping, gravity application,
      * weapon ammo management, bullet shooting, and constrains Mario within screen bounds.
      *
-     * @param input     Current input state.
+     * @param buttons   The buttons held by the player this frame, see {@link PlayerInput}.
      * @param platforms Array of platforms for collision and gravity.
      * @param ladders   Array of ladders for climbing logic.
      */
-    public void update(Input input, Platform[] platforms, Ladder[] ladders) {
-        this.input = input;
+    public void update(int buttons, Platform[] platforms, Ladder[] ladders) {
+        controls.next(buttons);
         move();
-        climb(input, ladders);
-        handleJump(input);
+        climb(ladders);
+        handleJump();
         applyGravity(platforms);
 
         // Handle mario icon if bullet runs out
@@ -69,9 +91,12 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
         }
 
         // Handle shooting
-        if (input.wasPressed(Keys.S) && currentWeapon instanceof Blaster) {
+        if (controls.wasPressed(PlayerInput.SHOOT) && currentWeapon instanceof Blaster) {
             shoot(facingLeft);
             bulletCount--;
+            if (journal != null) {
+                journal.record(EventJournal.BULLET_FIRED, x, y, bulletCount);
+            }
         }
         for (Bullet bullet : bullets) {
             bullet.move();
@@ -97,12 +122,11 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
      */
     @Override
     public void move() {
-        if (input == null) return;
-        if (input.isDown(Keys.LEFT)) {
+        if (controls.isDown(PlayerInput.LEFT)) {
             x -= SPEED;
             facingLeft = true;
             isClimbing = false;
-        } else if (input.isDown(Keys.RIGHT)) {
+        } else if (controls.isDown(PlayerInput.RIGHT)) {
             x += SPEED;
             facingLeft = false;
             isClimbing = false;
@@ -112,12 +136,11 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
     /**
      * Allows Mario to climb up or down ladders if aligned.
      *
-     * @param input   The current input state.
      * @param ladders Array of ladders in the level.
      */
-    private void climb(Input input, Ladder[] ladders) {
-        boolean climbUp = input.isDown(Keys.UP);
-        boolean climbDown = input.isDown(Keys.DOWN);
+    private void climb(Ladder[] ladders) {
+        boolean climbUp = controls.isDown(PlayerInput.UP);
+        boolean climbDown = controls.isDown(PlayerInput.DOWN);
         isClimbing = false;
 
         Rectangle marioBox = getImage().getBoundingBoxAt(new Point(x, y));
@@ -190,13 +213,14 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
 
     /**
      * Handles jumping logic when Mario is on ground and not climbing.
-     *
-     * @param input Current input state.
      */
-    private void handleJump(Input input) {
-        if (input.wasPressed(Keys.SPACE) && onGround && !isClimbing) {
+    private void handleJump() {
+        if (controls.wasPressed(PlayerInput.JUMP) && onGround && !isClimbing) {
             motion.setVelocityY(JUMP_VELOCITY);
             onGround = false;
+            if (journal != null) {
+                journal.record(EventJournal.JUMP, x, y, 0);
+            }
         }
     }
 
@@ -204,7 +228,32 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
      * Draws Mario and all active bullets on the screen.
      */
     public void draw() {
-        getImage().draw(x, y);
+        draw(clipStartTick);
+    }
+
+    /**
+     * Draws the frame of Mario's current animation shown at a tick, and all active bullets.
+     * The animation follows what he is doing: climbing, jumping, swinging the hammer or walking.
+     *
+     * @param tick The current tick.
+     */
+    @Override
+    public void draw(int tick) {
+        int clip;
+        if (isClimbing) {
+            clip = CLIMB_CLIP;
+        } else if (!onGround) {
+            clip = JUMP_CLIP;
+        } else if (currentWeapon instanceof Hammer) {
+            clip = SWING_CLIP;
+        } else if (controls.isDown(PlayerInput.LEFT) || controls.isDown(PlayerInput.RIGHT)) {
+            clip = WALK_CLIP;
+        } else {
+            clip = IDLE_CLIP;
+        }
+        playClip(clip, tick);
+        CLIPS[clipId].draw(getImage(facingLeft), getImage(!facingLeft), x, y, clipStartTick, tick);
+
         for (Bullet bullet : bullets) {
             if (bullet.isActive()) {
                 bullet.draw();
@@ -219,12 +268,38 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
      */
     @Override
     public Image getImage() {
+        return getImage(facingLeft);
+    }
+
+    /**
+     * Returns the image for Mario facing the given way, based on the weapon held.
+     *
+     * @param left True for the image facing left.
+     * @return The Image representing Mario facing that way.
+     */
+    private Image getImage(boolean left) {
+        if (currentWeapon instanceof Blaster) {
+            return left ? MARIO_BLASTER_LEFT : MARIO_BLASTER_RIGHT;
+        } else if (currentWeapon instanceof Hammer) {
+            return left ? MARIO_HAMMER_LEFT : MARIO_HAMMER_RIGHT;
+        } else {
+            return left ? MARIO_LEFT : MARIO_RIGHT;
+        }
+    }
+
+    /**
+     * Returns the solid pixels of Mario's current image, based on direction and weapon held.
+     *
+     * @return The collision mask.
+     */
+    @Override
+    public CollisionMask getMask() {
         if (currentWeapon instanceof Blaster) {
-            return facingLeft ? MARIO_BLASTER_LEFT : MARIO_BLASTER_RIGHT;
+            return facingLeft ? MARIO_BLASTER_LEFT_MASK : MARIO_BLASTER_RIGHT_MASK;
         } else if (currentWeapon instanceof Hammer) {
-            return facingLeft ? MARIO_HAMMER_LEFT : MARIO_HAMMER_RIGHT;
+            return facingLeft ? MARIO_HAMMER_LEFT_MASK : MARIO_HAMMER_RIGHT_MASK;
         } else {
-            return facingLeft ? MARIO_LEFT : MARIO_RIGHT;
+            return facingLeft ? MARIO_LEFT_MASK : MARIO_RIGHT_MASK;
         }
     }
 
@@ -240,6 +315,15 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
         return bullet;
     }
 
+    /**
+     * Sets the event journal Mario's jumps and shots are recorded in.
+     *
+     * @param journal The event journal, or null for none.
+     */
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+    }
+
     /**
      * Sets the current weapon Mario is holding.
      *
@@ -294,6 +378,15 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
         return onGround;
     }
 
+    /**
+     * Checks whether Mario is currently climbing a ladder.
+     *
+     * @return True if Mario is climbing, false otherwise.
+     */
+    public boolean isClimbing() {
+        return isClimbing;
+    }
+
     /**
      * Gets Mario's current vertical velocity.
      *
@@ -320,5 +413,68 @@ public class Mario extends GameObject implements AffectedByGravity, Shootable<Bu
     public void setHasScoredThisJump(boolean scored) {
         this.hasScoredThisJump = scored;
     }
-}
 
+    /**
+     * Writes Mario's position, velocity, held buttons, movement flags, bullet count and active bullets
+     * to the snapshot buffer. The current weapon is written by the level, which owns the weapons.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        motion.writeState(buffer);
+        controls.writeState(buffer);
+        buffer.put((byte) ((isClimbing ? 1 : 0) | (onGround ? 2 : 0)
+                | (hasScoredThisJump ? 4 : 0) | (facingLeft ? 8 : 0)));
+        buffer.putInt(bulletCount);
+
+        int activeCount = 0;
+        for (Bullet bullet : bullets) {
+            if (bullet.isActive()) {
+                activeCount++;
+            }
+        }
+        buffer.putInt(activeCount);
+        for (Bullet bullet : bullets) {
+            if (bullet.isActive()) {
+                buffer.put((byte) (bullet.isFacingLeft() ? 1 : 0));
+                bullet.writeState(buffer);
+            }
+        }
+    }
+
+    /**
+     * Restores Mario's position, velocity, held buttons, movement flags, bullet count and active bullets
+     * from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        motion.readState(buffer);
+        controls.readState(buffer);
+        byte flags = buffer.get();
+        isClimbing = (flags & 1) != 0;
+        onGround = (flags & 2) != 0;
+        hasScoredThisJump = (flags & 4) != 0;
+        facingLeft = (flags & 8) != 0;
+        bulletCount = buffer.getInt();
+
+        // reuse the bullets already fired in order, as ThrowingMonkey does with its bananas
+        int activeCount = buffer.getInt();
+        for (int i = 0; i < activeCount; i++) {
+            boolean bulletFacingLeft = buffer.get() != 0;
+            if (i == bullets.size()) {
+                bullets.add(new Bullet(0, 0, bulletFacingLeft));
+            }
+            Bullet bullet = bullets.get(i);
+            bullet.setFacingLeft(bulletFacingLeft);
+            bullet.readState(buffer);
+        }
+        for (int i = activeCount; i < bullets.size(); i++) {
+            bullets.get(i).setActive(false);
+        }
+    }
+}
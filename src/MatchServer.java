@@ -0,0 +1,501 @@
+import bagel.Input;
+import bagel.Keys;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Plays headless matches requested over HTTP and reports how they ended.
+ *
+ * A match is requested by posting a properties file to {@code /match}. The {@code match.*} keys
+ * describe the match, and a request can carry its own level layout by overriding the level keys of the
+ * game config, such as {@code platforms.level1}, {@code ladder.level1.count}, {@code levels.count} and
+ * the {@code behaviour.*} keys. Any other key is refused, since it would change how the server plays
+ * every match, and object counts are bounded so that one request cannot take the server's memory:
+ * <ul>
+ *     <li>{@code match.level}: the level to start at, 1 by default.</li>
+ *     <li>{@code match.seed}: if set, the level is generated from this seed by {@link LevelGenerator},
+ *     with monkeys if {@code match.monkeys} is true.</li>
+ *     <li>{@code match.inputs}: the buttons held each tick (see {@link PlayerInput}), separated by
+ *     commas, where {@code buttons*n} holds the buttons for n ticks. Once the inputs run out no
+ *     buttons are held. A replay is simply one entry per tick.</li>
+ *     <li>{@code match.maxTicks}: the most ticks to play, at most the server's limit.</li>
+ *     <li>{@code match.player}: the name the run is added to the leaderboard under, if there is one.</li>
+ * </ul>
+ * The response is a properties file with the outcome ({@code WIN}, {@code GAME_OVER} or
+ * {@code UNFINISHED}), the score, the number of ticks played and the level reached.
+ *
+ * Every request is handled on its own virtual thread, so thousands of waiting requests cost little.
+ * Only a fixed number of matches are simulated at once, one per core by default, and the others wait
+ * for a turn, so a burst of requests does not oversubscribe the CPU. Counters and a latency histogram
+ * are served in the Prometheus text format at {@code /metrics}.
+ */
+public class MatchServer {
+
+    /** Outcome of a match that Mario won. */
+    public static final String WIN = "WIN";
+
+    /** Outcome of a match that Mario lost. */
+    public static final String GAME_OVER = "GAME_OVER";
+
+    /** Outcome of a match that ran out of ticks before it ended. */
+    public static final String UNFINISHED = "UNFINISHED";
+
+    private static final int GENERATED_FLOORS = 5;
+    private static final String MATCH_PREFIX = "match.";
+
+    /** Most bytes a match request may have. */
+    public static final int MAX_REQUEST_BYTES = 1 << 20;
+
+    /** Most objects of one kind a match request may place in a level. */
+    public static final int MAX_OBJECTS = 1024;
+
+    /** Most levels a match request may declare. */
+    public static final int MAX_LEVELS = 99;
+
+    // the game config keys a request may override: a level's layout, the number of levels and the behaviours
+    private static final Pattern OVERRIDABLE_KEY = Pattern.compile("(rules|platforms|mario|donkey)\\.level\\d{1,2}"
+            + "|(ladder|barrel|hammer|blaster|normalMonkey|intelligentMonkey|pursuingMonkey|scriptedMonkey)"
+            + "\\.level\\d{1,2}\\.(count|\\d{1,4})|levels\\.count|behaviour\\.[A-Za-z0-9_.]+");
+
+    // upper bounds of the latency histogram buckets in milliseconds, the last bucket has no bound
+    private static final long[] LATENCY_BOUNDS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final Properties baseProps;
+    private final int maxTicks;
+    private final Semaphore simulations;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Leaderboard leaderboard;
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder losses = new LongAdder();
+    private final LongAdder unfinished = new LongAdder();
+    private final LongAdder ticksPlayed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BOUNDS_MS.length + 1);
+
+    /**
+     * Opens the match server. Matches are served once {@link #start()} is called.
+     *
+     * @param props       The game properties that requests override.
+     * @param port        The TCP port to listen on.
+     * @param simulations The most matches simulated at once.
+     * @param maxTicks    The most ticks a match may be played for.
+     * @param backlog     The most connections waiting to be accepted.
+     * @throws IOException If the server socket or the leaderboard cannot be opened.
+     */
+    public MatchServer(Properties props, int port, int simulations, int maxTicks, int backlog) throws IOException {
+        this.baseProps = new Properties();
+        baseProps.putAll(props);
+        // read the level pack once here rather than for every match
+        String packFile = props.getProperty("levels.packFile", "");
+        if (!packFile.isEmpty()) {
+            baseProps.putAll(IOUtils.readPropertiesFile(packFile));
+            baseProps.remove("levels.packFile");
+        }
+        this.maxTicks = maxTicks;
+        boolean leaderboardEnabled = Boolean.parseBoolean(props.getProperty("leaderboard.enabled", "false"));
+        this.leaderboard = leaderboardEnabled ? Leaderboard.open(props) : null;
+        this.simulations = new Semaphore(simulations, true);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), backlog);
+        server.createContext("/match", this::handleMatch);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops serving requests, letting matches being played finish for up to a second, and closes
+     * the leaderboard.
+     *
+     * @throws IOException If the leaderboard cannot be closed.
+     */
+    public void stop() throws IOException {
+        server.stop(1);
+        executor.shutdown();
+        if (leaderboard != null) {
+            leaderboard.close();
+        }
+    }
+
+    /**
+     * Plays the match posted to {@code /match} and responds with its result.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleMatch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        inFlight.incrementAndGet();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                failures.increment();
+                respond(exchange, 405, "error=POST a match to /match\n");
+                return;
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readNBytes(MAX_REQUEST_BYTES + 1);
+            }
+            if (body.length > MAX_REQUEST_BYTES) {
+                failures.increment();
+                respond(exchange, 413, "error=a match request has at most " + MAX_REQUEST_BYTES + " bytes\n");
+                return;
+            }
+            Properties request = new Properties();
+            request.load(new ByteArrayInputStream(body));
+
+            String result;
+            try {
+                result = play(request);
+            } catch (RuntimeException ex) {
+                // a malformed number, coordinate or level in the request
+                failures.increment();
+                respond(exchange, 400, "error=" + ex + "\n");
+                return;
+            } catch (InterruptedException ex) {
+                failures.increment();
+                respond(exchange, 503, "error=server stopping\n");
+                return;
+            }
+            respond(exchange, 200, result);
+        } finally {
+            inFlight.decrementAndGet();
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Checks that a match request may override a game config key with a value.
+     *
+     * @param key   The config key.
+     * @param value The value the request gives it.
+     * @return The value.
+     * @throws IllegalArgumentException If the key is not a level key, or it is a count out of bounds.
+     */
+    static String checkOverride(String key, String value) {
+        if (!OVERRIDABLE_KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("a match request may not set " + key);
+        }
+        if (key.endsWith(".count")) {
+            boolean levels = key.equals("levels.count");
+            int min = levels ? 1 : 0;
+            int max = levels ? MAX_LEVELS : MAX_OBJECTS;
+            int count = Integer.parseInt(value.trim());
+            if (count < min || count > max) {
+                throw new IllegalArgumentException(key + " must be between " + min + " and " + max);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Plays a match from start to finish.
+     *
+     * @param request The match request.
+     * @return The result of the match as properties text.
+     * @throws InterruptedException If the server stopped while the match waited for its turn.
+     */
+    private String play(Properties request) throws InterruptedException {
+        int levelId = Integer.parseInt(request.getProperty("match.level", "1"));
+        int limit = Math.min(Integer.parseInt(request.getProperty("match.maxTicks", String.valueOf(maxTicks))), maxTicks);
+        int[] inputs = parseInputs(request.getProperty("match.inputs", ""), limit);
+
+        Properties props = new Properties();
+        props.putAll(baseProps);
+        String seed = request.getProperty("match.seed");
+        if (seed != null) {
+            boolean monkeys = Boolean.parseBoolean(request.getProperty("match.monkeys", "false"));
+            new LevelGenerator(GENERATED_FLOORS, monkeys).writeLevel(Long.parseLong(seed), levelId, props);
+            props.setProperty("leaderboard.pack", "seed " + seed);
+        }
+        for (String key : request.stringPropertyNames()) {
+            if (!key.startsWith(MATCH_PREFIX)) {
+                props.setProperty(key, checkOverride(key, request.getProperty(key)));
+            }
+        }
+        if (props.getProperty("platforms.level" + levelId) == null) {
+            throw new IllegalArgumentException("no level " + levelId);
+        }
+
+        long waitStart = System.nanoTime();
+        waiting.incrementAndGet();
+        simulations.acquire();
+        waiting.decrementAndGet();
+        waitNanos.add(System.nanoTime() - waitStart);
+        try {
+            Game game = new Game(props, true);
+            if (leaderboard != null) {
+                game.setLeaderboard(leaderboard, request.getProperty("match.player", "anonymous"));
+            }
+            GameScreen screen = new GameScreen(props);
+            game.startLevel(levelId);
+            screen.setCurrentStatus(GameScreen.PLAY);
+
+            int tick = 0;
+            while (tick < limit && screen.getCurrentStatus() == GameScreen.PLAY) {
+                int buttons = tick < inputs.length ? inputs[tick] : 0;
+                tick++;
+                game.update(buttons, screen, tick);
+            }
+            ticksPlayed.add(tick);
+
+            String outcome;
+            if (screen.getCurrentStatus() == GameScreen.WIN) {
+                outcome = WIN;
+                wins.increment();
+            } else if (screen.getCurrentStatus() == GameScreen.GAME_OVER) {
+                outcome = GAME_OVER;
+                losses.increment();
+            } else {
+                outcome = UNFINISHED;
+                unfinished.increment();
+            }
+            Level level = game.getCurrentLevel();
+            return "outcome=" + outcome + "\nscore=" + game.getRunScore() + "\nticks=" + tick
+                    + "\nlevel=" + level.getLevelId() + "\n";
+        } finally {
+            simulations.release();
+        }
+    }
+
+    /**
+     * Expands an input script into the buttons held each tick.
+     *
+     * @param script The script, such as {@code 2*30,18,2*10}.
+     * @param limit  The most ticks to expand.
+     * @return The buttons held each tick.
+     */
+    static int[] parseInputs(String script, int limit) {
+        int[] inputs = new int[0];
+        int count = 0;
+        for (String entry : script.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int star = entry.indexOf('*');
+            int buttons = Integer.parseInt(star < 0 ? entry : entry.substring(0, star));
+            int ticks = star < 0 ? 1 : Integer.parseInt(entry.substring(star + 1));
+            ticks = Math.min(ticks, limit - count);
+            if (ticks <= 0) {
+                break;
+            }
+            if (count + ticks > inputs.length) {
+                inputs = Arrays.copyOf(inputs, Math.max(count + ticks, inputs.length * 2));
+            }
+            Arrays.fill(inputs, count, count + ticks, buttons);
+            count += ticks;
+        }
+        return Arrays.copyOf(inputs, count);
+    }
+
+    /**
+     * Adds the time taken by a request to the latency histogram.
+     *
+     * @param nanos The time taken in nanoseconds.
+     */
+    private void recordLatency(long nanos) {
+        latencyNanos.add(nanos);
+        long millis = nanos / 1_000_000;
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS_MS.length && millis >= LATENCY_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * Responds to {@code /metrics} with the counters and latency histogram.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        double uptime = (System.nanoTime() - startNanos) / 1e9;
+        long completed = wins.sum() + losses.sum() + unfinished.sum();
+        StringBuilder text = new StringBuilder();
+        text.append("match_requests_total ").append(requests.sum()).append('\n');
+        text.append("match_failures_total ").append(failures.sum()).append('\n');
+        text.append("match_completed_total{outcome=\"win\"} ").append(wins.sum()).append('\n');
+        text.append("match_completed_total{outcome=\"game_over\"} ").append(losses.sum()).append('\n');
+        text.append("match_completed_total{outcome=\"unfinished\"} ").append(unfinished.sum()).append('\n');
+        text.append("match_in_flight ").append(inFlight.get()).append('\n');
+        text.append("match_waiting ").append(waiting.get()).append('\n');
+        text.append("match_ticks_total ").append(ticksPlayed.sum()).append('\n');
+        text.append(String.format("match_throughput_per_second %.3f%n", completed / uptime));
+        text.append(String.format("match_ticks_per_second %.1f%n", ticksPlayed.sum() / uptime));
+        text.append(String.format("match_wait_seconds_sum %.6f%n", waitNanos.sum() / 1e9));
+
+        long cumulative = 0;
+        for (int i = 0; i < LATENCY_BOUNDS_MS.length; i++) {
+            cumulative += latencyBuckets.get(i);
+            text.append(String.format("match_latency_seconds_bucket{le=\"%.3f\"} %d%n", LATENCY_BOUNDS_MS[i] / 1e3, cumulative));
+        }
+        cumulative += latencyBuckets.get(LATENCY_BOUNDS_MS.length);
+        text.append("match_latency_seconds_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        text.append(String.format("match_latency_seconds_sum %.6f%n", latencyNanos.sum() / 1e9));
+        text.append("match_latency_seconds_count ").append(cumulative).append('\n');
+        respond(exchange, 200, text.toString());
+    }
+
+    /**
+     * Sends a plain text response and closes the exchange.
+     *
+     * @param exchange The HTTP exchange.
+     * @param status   The HTTP status code.
+     * @param text     The response body.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Posts the same match many times at once to a running server and prints how long it took.
+     *
+     * @param url   The URL of the server's {@code /match} endpoint.
+     * @param count The number of requests, all sent at once.
+     * @param match The match request as properties text.
+     * @throws InterruptedException If interrupted while waiting for responses.
+     */
+    private static void loadTest(String url, int count, String match) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .POST(HttpRequest.BodyPublishers.ofString(match)).build();
+        int ok = 0;
+        long start = System.nanoTime();
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                responses.add(senders.submit(() -> client.send(request, HttpResponse.BodyHandlers.ofString())));
+            }
+            for (Future<HttpResponse<String>> response : responses) {
+                try {
+                    if (response.get().statusCode() == 200) {
+                        ok++;
+                    }
+                } catch (ExecutionException ex) {
+                    ex.getCause().printStackTrace();
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d of %d matches played in %.2f s, %.1f matches per second%n",
+                ok, count, seconds, count / seconds);
+    }
+
+    /**
+     * Runs the match server, or a load test against one.
+     * Usage: {@code MatchServer} to serve matches until the window is closed or ESC is pressed, or
+     * {@code MatchServer load <requests> [url]} to post that many level 1 matches at once.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        if (args.length > 0 && args[0].equals("load")) {
+            int count = Integer.parseInt(args[1]);
+            String url = args.length > 2 ? args[2] : "http://localhost:" + props.getProperty("matchServer.port") + "/match";
+            try {
+                loadTest(url, count, "match.level=1\nmatch.inputs=2*120,18*30,1*200\n");
+            } catch (InterruptedException ex) {
+                ex.printStackTrace();
+                System.exit(-1);
+            }
+            return;
+        }
+
+        int simulations = Integer.parseInt(props.getProperty("matchServer.simulations"));
+        if (simulations <= 0) {
+            simulations = Runtime.getRuntime().availableProcessors();
+        }
+        int maxSimulations = simulations;
+        // sprites can only be loaded once there is a window, so the server starts in its first frame
+        WindowHarness.run(props, "Match server", new WindowHarness.Frame() {
+            private MatchServer server;
+
+            @Override
+            public boolean update(Input input) {
+                if (server == null) {
+                    server = open(props, maxSimulations);
+                } else if (input.wasPressed(Keys.ESCAPE)) {
+                    try {
+                        server.stop();
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Loads the sprites and starts a match server with the settings in the config.
+     *
+     * @param props       The game properties.
+     * @param simulations The most matches simulated at once.
+     * @return The running server.
+     */
+    private static MatchServer open(Properties props, int simulations) {
+        try {
+            // sprites must be loaded on the window thread before matches are played
+            AssetPreloader.loadSprites();
+            MatchServer server = new MatchServer(props,
+                    Integer.parseInt(props.getProperty("matchServer.port")), simulations,
+                    Integer.parseInt(props.getProperty("matchServer.maxTicks")),
+                    Integer.parseInt(props.getProperty("matchServer.backlog")));
+            server.start();
+            System.out.println("Serving matches on port " + props.getProperty("matchServer.port"));
+            return server;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+}
@@ -1,4 +1,7 @@
 import bagel.*;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * An abstract class representing a Monkey enemy that can move along a predefined pixel-based route.
@@ -11,6 +14,9 @@ public abstract class Monkey extends Enemy implements Moveable {
     private final static double SPEED = 0.5;
     private final Platform[] platforms;
 
+    // Monkeys always walk, rocking from side to side
+    private static final AnimationClip WALK = new AnimationClip(10, -0.1, 0, 0.1, 0);
+
     /**
      * Constructs a Monkey with a specified starting position, direction, movement route, and platform references.
      *
@@ -27,6 +33,52 @@ public abstract class Monkey extends Enemy implements Moveable {
         this.distanceMoved = 0;
         this.currentMove = 0;
         this.platforms = platforms;
+        // start monkeys at different points of the walk so they do not rock in step
+        this.clipStartTick = (int) x;
+    }
+
+    /**
+     * Draws the monkey on screen using the correct directional sprite.
+     * Only draws the monkey if it is not destroyed.
+     */
+    @Override
+    public void draw() {
+        draw(clipStartTick);
+    }
+
+    /**
+     * Draws the monkey's walk at a tick, if it is not destroyed.
+     *
+     * @param tick The current tick.
+     */
+    @Override
+    public void draw(int tick) {
+        if (!isDestroyed()) {
+            WALK.draw(getImage(), getImage(), x, y, clipStartTick, tick);
+        }
+    }
+
+    /**
+     * Works out and makes the monkey's move for this tick. Only the monkey's own state and the
+     * given state of the level from the previous tick are read, so that monkeys can think in
+     * parallel. Creating new objects, such as thrown bananas, is left to {@link #act(int)}.
+     * Monkeys walk their route by default.
+     *
+     * @param tick          The current tick of the level's clock.
+     * @param marioX        The horizontal position of Mario.
+     * @param marioPlatform The platform Mario is on, or {@link NavigationGraph#NO_PLATFORM}.
+     */
+    public void think(int tick, double marioX, int marioPlatform) {
+        move();
+    }
+
+    /**
+     * Carries out what the monkey decided in {@link #think}, once every monkey has thought.
+     * Monkeys act one at a time in a fixed order. Monkeys that only walk do nothing here.
+     *
+     * @param tick The current tick of the level's clock.
+     */
+    public void act(int tick) {
     }
 
     /**
@@ -38,7 +90,7 @@ public abstract class Monkey extends Enemy implements Moveable {
         double nextX = x + horizontalStep;
 
         // Turn around if grounded and either at the edge of screen or platform
-        if (isGrounded() && (nextX < 0 || nextX > Window.getWidth() || isEdgeOfPlatform(nextX))) {
+        if (isBlocked(nextX)) {
             facingLeft = !facingLeft;
             distanceMoved = 0;
             return;
@@ -61,6 +113,25 @@ public abstract class Monkey extends Enemy implements Moveable {
         }
     }
 
+    /**
+     * Checks whether a step would take the grounded monkey off the edge of the screen or of its platform.
+     *
+     * @param nextX The x-coordinate the monkey would move to.
+     * @return true if the monkey should not take the step; false otherwise.
+     */
+    protected boolean isBlocked(double nextX) {
+        return isGrounded() && (nextX < 0 || nextX > Window.getWidth() || isEdgeOfPlatform(nextX));
+    }
+
+    /**
+     * Returns the bananas the monkey has thrown. Monkeys that do not throw have none.
+     *
+     * @return The bananas thrown, active or not.
+     */
+    public List<Banana> getBananas() {
+        return Collections.emptyList();
+    }
+
     /**
      * Checks whether the monkey is currently grounded on a platform.
      *
@@ -122,4 +193,39 @@ public abstract class Monkey extends Enemy implements Moveable {
     public boolean isFacingLeft() {
         return facingLeft;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets the direction the monkey is facing.
+     *
+     * @param facingLeft true to face left; false to face right.
+     */
+    protected void setFacingLeft(boolean facingLeft) {
+        this.facingLeft = facingLeft;
+    }
+
+    /**
+     * Writes the monkey's state, including its progress along the route, to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putInt(currentMove);
+        buffer.putDouble(distanceMoved);
+        buffer.put((byte) (facingLeft ? 1 : 0));
+    }
+
+    /**
+     * Restores the monkey's state, including its progress along the route, from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        currentMove = buffer.getInt();
+        distanceMoved = buffer.getDouble();
+        facingLeft = buffer.get() != 0;
+    }
+}
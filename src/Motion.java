@@ -1,12 +1,13 @@
 import bagel.util.Point;
 import bagel.util.Rectangle;
+import java.nio.ByteBuffer;
 
 /**
  * A helper class to handle vertical motion under gravity for game objects.
  * It simulates gravity, applies terminal velocity, and performs collision detection
  * with platforms to determine when an object lands.
  */
-public class Motion {
+public class Motion implements Snapshottable {
     private double vy = 0;
     private final double terminalVelocity;
     private final double gravity;
@@ -77,4 +78,24 @@ public class Motion {
     public void setVelocityY(double vy) {
         this.vy = vy;
     }
+
+    /**
+     * Writes the vertical velocity to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        buffer.putDouble(vy);
+    }
+
+    /**
+     * Restores the vertical velocity from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        vy = buffer.getDouble();
+    }
 }
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+
+/**
+ * A navigation graph of the platforms in a level, used by enemies that chase Mario.
+ * Platforms are the nodes. Two platforms are linked if a ladder joins them or if they are at the
+ * same height and touch, so that one can walk from one onto the other. The first link on a
+ * shortest path between every pair of platforms is worked out once when the level loads, so
+ * finding the way towards Mario is a single table lookup.
+ */
+public class NavigationGraph {
+
+    /** Value returned when there is no link to take. */
+    public static final int NO_LINK = -1;
+
+    /** Value returned when a position is not on any platform. */
+    public static final int NO_PLATFORM = -1;
+
+    private static final double STANDING_MARGIN = 5;
+    private static final double LADDER_MARGIN = 10;
+
+    private final int platformCount;
+    private final double[] platformLeft;
+    private final double[] platformRight;
+    private final double[] platformTop;
+
+    private int linkCount = 0;
+    private final int[] linkTo;
+    private final double[] linkX;
+    private final boolean[] linkIsLadder;
+    private final int[] nextLink;
+
+    /**
+     * Builds the navigation graph and its next-link table for a level.
+     *
+     * @param platforms The platforms of the level.
+     * @param ladders   The ladders of the level.
+     */
+    public NavigationGraph(Platform[] platforms, Ladder[] ladders) {
+        this(positionsOf(platforms, true), positionsOf(platforms, false),
+                platforms.length > 0 ? platforms[0].getImage().getWidth() : 0,
+                platforms.length > 0 ? platforms[0].getImage().getHeight() : 0,
+                positionsOf(ladders, true), positionsOf(ladders, false),
+                ladders.length > 0 ? ladders[0].getImage().getHeight() : 0);
+    }
+
+    /**
+     * Builds the navigation graph and its next-link table from the positions and sprite sizes of
+     * the platforms and ladders, so that levels can be checked without loading any images.
+     *
+     * @param platformX      The horizontal centre of each platform.
+     * @param platformY      The vertical centre of each platform.
+     * @param platformWidth  The width of the platform sprite.
+     * @param platformHeight The height of the platform sprite.
+     * @param ladderX        The horizontal centre of each ladder.
+     * @param ladderY        The vertical centre of each ladder.
+     * @param ladderHeight   The height of the ladder sprite.
+     */
+    public NavigationGraph(double[] platformX, double[] platformY, double platformWidth, double platformHeight,
+                           double[] ladderX, double[] ladderY, double ladderHeight) {
+        platformCount = platformX.length;
+        platformLeft = new double[platformCount];
+        platformRight = new double[platformCount];
+        platformTop = new double[platformCount];
+        for (int i = 0; i < platformCount; i++) {
+            platformLeft[i] = platformX[i] - platformWidth / 2.0;
+            platformRight[i] = platformX[i] + platformWidth / 2.0;
+            platformTop[i] = platformY[i] - platformHeight / 2.0;
+        }
+
+        int maxLinks = platformCount * platformCount + ladderX.length * 2;
+        linkTo = new int[maxLinks];
+        linkX = new double[maxLinks];
+        linkIsLadder = new boolean[maxLinks];
+
+        int[] directLink = new int[platformCount * platformCount];
+        double[] cost = new double[platformCount * platformCount];
+        Arrays.fill(directLink, NO_LINK);
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+
+        addWalkLinks(directLink, cost);
+        addLadderLinks(ladderX, ladderY, ladderHeight, directLink, cost);
+
+        nextLink = directLink;
+        for (int i = 0; i < platformCount; i++) {
+            cost[i * platformCount + i] = 0;
+        }
+        // Floyd-Warshall, keeping the first link of each shortest path
+        for (int k = 0; k < platformCount; k++) {
+            for (int i = 0; i < platformCount; i++) {
+                double viaK = cost[i * platformCount + k];
+                if (viaK == Double.POSITIVE_INFINITY) continue;
+                for (int j = 0; j < platformCount; j++) {
+                    double total = viaK + cost[k * platformCount + j];
+                    if (total < cost[i * platformCount + j]) {
+                        cost[i * platformCount + j] = total;
+                        nextLink[i * platformCount + j] = nextLink[i * platformCount + k];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Links platforms at the same height whose horizontal ranges touch or overlap.
+     *
+     * @param directLink The cheapest direct link between each pair of platforms.
+     * @param cost       The cost of the cheapest direct link between each pair of platforms.
+     */
+    private void addWalkLinks(int[] directLink, double[] cost) {
+        for (int a = 0; a < platformCount; a++) {
+            for (int b = 0; b < platformCount; b++) {
+                boolean sameHeight = a != b && Math.abs(platformTop[a] - platformTop[b]) <= STANDING_MARGIN;
+                if (sameHeight && platformLeft[b] <= platformRight[a] && platformLeft[a] <= platformRight[b]) {
+                    double x = (Math.max(platformLeft[a], platformLeft[b]) + Math.min(platformRight[a], platformRight[b])) / 2;
+                    addLink(a, b, x, false, 1, directLink, cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Links the platform each ladder settles on with the platform its top reaches, in both directions.
+     * Climbing a ladder costs its height, so paths prefer fewer and shorter climbs.
+     *
+     * @param ladderX      The horizontal centre of each ladder.
+     * @param ladderY      The vertical centre of each ladder.
+     * @param height       The height of the ladder sprite.
+     * @param directLink   The cheapest direct link between each pair of platforms.
+     * @param cost         The cost of the cheapest direct link between each pair of platforms.
+     */
+    private void addLadderLinks(double[] ladderX, double[] ladderY, double height, int[] directLink, double[] cost) {
+        for (int ladder = 0; ladder < ladderX.length; ladder++) {
+            double x = ladderX[ladder];
+
+            // the ladder falls until its bottom rests on the first platform below it
+            int lower = NO_PLATFORM;
+            double bottom = ladderY[ladder] + height / 2.0;
+            for (int i = 0; i < platformCount; i++) {
+                boolean below = platformTop[i] >= bottom - STANDING_MARGIN;
+                if (containsX(i, x) && below && (lower == NO_PLATFORM || platformTop[i] < platformTop[lower])) {
+                    lower = i;
+                }
+            }
+            if (lower == NO_PLATFORM) continue;
+
+            double top = platformTop[lower] - height;
+            for (int upper = 0; upper < platformCount; upper++) {
+                if (upper != lower && containsX(upper, x) && Math.abs(platformTop[upper] - top) <= LADDER_MARGIN) {
+                    addLink(lower, upper, x, true, height, directLink, cost);
+                    addLink(upper, lower, x, true, height, directLink, cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects one coordinate of each object.
+     *
+     * @param objects     The objects.
+     * @param horizontal  True for the horizontal coordinate, false for the vertical one.
+     * @return The coordinates in the order of the objects.
+     */
+    private static double[] positionsOf(GameObject[] objects, boolean horizontal) {
+        double[] positions = new double[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            positions[i] = horizontal ? objects[i].getX() : objects[i].getY();
+        }
+        return positions;
+    }
+
+    /**
+     * Adds a link and keeps it as the direct link between its platforms if it is the cheapest so far.
+     *
+     * @param from       The platform the link starts on.
+     * @param to         The platform the link leads to.
+     * @param x          The horizontal position where the link is taken.
+     * @param isLadder   True if the link is a ladder.
+     * @param linkCost   The cost of taking the link.
+     * @param directLink The cheapest direct link between each pair of platforms.
+     * @param cost       The cost of the cheapest direct link between each pair of platforms.
+     */
+    private void addLink(int from, int to, double x, boolean isLadder, double linkCost, int[] directLink, double[] cost) {
+        int link = linkCount++;
+        linkTo[link] = to;
+        linkX[link] = x;
+        linkIsLadder[link] = isLadder;
+        if (linkCost < cost[from * platformCount + to]) {
+            cost[from * platformCount + to] = linkCost;
+            directLink[from * platformCount + to] = link;
+        }
+    }
+
+    /**
+     * Checks whether a horizontal position is within a platform.
+     *
+     * @param platform The platform.
+     * @param x        The horizontal position.
+     * @return True if the position is between the platform's edges.
+     */
+    private boolean containsX(int platform, double x) {
+        return x >= platformLeft[platform] && x <= platformRight[platform];
+    }
+
+    /**
+     * Finds the platform a character is standing on.
+     *
+     * @param x     The horizontal position of the character.
+     * @param footY The vertical position of the bottom of the character.
+     * @return The index of the platform, or {@link #NO_PLATFORM} if the character is not on one.
+     */
+    public int findPlatform(double x, double footY) {
+        for (int i = 0; i < platformCount; i++) {
+            if (containsX(i, x) && Math.abs(footY - platformTop[i]) <= STANDING_MARGIN) {
+                return i;
+            }
+        }
+        return NO_PLATFORM;
+    }
+
+    /**
+     * Checks whether one platform can be reached from another by walking and climbing ladders.
+     *
+     * @param from The platform to start from.
+     * @param to   The platform to reach.
+     * @return True if the platforms are the same or a path joins them.
+     */
+    public boolean isReachable(int from, int to) {
+        return from == to || nextLink[from * platformCount + to] != NO_LINK;
+    }
+
+    /**
+     * Looks up the first link to take on the shortest way from one platform to another.
+     *
+     * @param from The platform to start from.
+     * @param to   The platform to reach.
+     * @return The link to take, or {@link #NO_LINK} if the platforms are the same or not connected.
+     */
+    public int getNextLink(int from, int to) {
+        return nextLink[from * platformCount + to];
+    }
+
+    /**
+     * @param link The link.
+     * @return The platform the link leads to.
+     */
+    public int getLinkTarget(int link) {
+        return linkTo[link];
+    }
+
+    /**
+     * @param link The link.
+     * @return The horizontal position where the link is taken.
+     */
+    public double getLinkX(int link) {
+        return linkX[link];
+    }
+
+    /**
+     * @param link The link.
+     * @return True if the link is a ladder, false if it is walking onto a neighbouring platform.
+     */
+    public boolean isLadderLink(int link) {
+        return linkIsLadder[link];
+    }
+
+    /**
+     * @param platform The platform.
+     * @return The vertical position of the top of the platform.
+     */
+    public double getPlatformTop(int platform) {
+        return platformTop[platform];
+    }
+
+    /**
+     * @param platform The platform.
+     * @return The horizontal position of the left edge of the platform.
+     */
+    public double getPlatformLeft(int platform) {
+        return platformLeft[platform];
+    }
+
+    /**
+     * @param platform The platform.
+     * @return The horizontal position of the right edge of the platform.
+     */
+    public double getPlatformRight(int platform) {
+        return platformRight[platform];
+    }
+
+    /**
+     * @return The number of platforms in the graph.
+     */
+    public int getPlatformCount() {
+        return platformCount;
+    }
+}
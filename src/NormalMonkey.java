@@ -7,6 +7,8 @@ import bagel.*;
 public class NormalMonkey extends Monkey {
     private static final Image NORMAL_MONKEY_RIGHT = new Image("res/normal_monkey_right.png");
     private static final Image NORMAL_MONKEY_LEFT = new Image("res/normal_monkey_left.png");
+    private static final CollisionMask NORMAL_MONKEY_RIGHT_MASK = CollisionMask.load("res/normal_monkey_right.png");
+    private static final CollisionMask NORMAL_MONKEY_LEFT_MASK = CollisionMask.load("res/normal_monkey_left.png");
 
     /**
      * Constructs a NormalMonkey with given position, facing direction, movement route, and platform references.
@@ -21,16 +23,6 @@ public class NormalMonkey extends Monkey {
         super(x, y, facingLeft, route, platforms);
     }
 
-    /**
-     * Draws the monkey on screen using the correct directional sprite.
-     * Only draws the monkey if it is not destroyed.
-     */
-    public void draw() {
-        if (!isDestroyed()) {
-            getImage().draw(x, y);
-        }
-    }
-
     /**
      * Retrieves the current image of the monkey based on its facing direction.
      *
@@ -39,4 +31,14 @@ public class NormalMonkey extends Monkey {
     public Image getImage() {
         return (isFacingLeft() ? NORMAL_MONKEY_LEFT : NORMAL_MONKEY_RIGHT);
     }
+
+    /**
+     * Returns the solid pixels of the monkey facing its current direction.
+     *
+     * @return The collision mask.
+     */
+    @Override
+    public CollisionMask getMask() {
+        return isFacingLeft() ? NORMAL_MONKEY_LEFT_MASK : NORMAL_MONKEY_RIGHT_MASK;
+    }
 }
\ No newline at end of file
@@ -41,16 +41,30 @@ public class ObjectLoader {
         Ladder[] ladders = new Ladder[count];
 
         for (int i = 0; i < count; i++) {
-            String[] coords = props.getProperty("ladder.level" + level + "." + (i + 1)).split(",");
-            double x = Double.parseDouble(coords[0]);
-            double y = Double.parseDouble(coords[1]);
-            ladders[i] = new Ladder(x, y);
-            reposition(ladders[i], platforms);
+            ladders[i] = loadLadder(props, platforms, level, i);
         }
 
         return ladders;
     }
 
+    /**
+     * Loads a single ladder for a level and aligns it if its initial position overlaps any platform.
+     *
+     * @param props Properties file containing ladder definitions.
+     * @param platforms Platforms used for alignment.
+     * @param level The level number.
+     * @param index The index of the ladder, starting from 0.
+     * @return The Ladder object.
+     */
+    public static Ladder loadLadder(Properties props, Platform[] platforms, int level, int index) {
+        String[] coords = props.getProperty("ladder.level" + level + "." + (index + 1)).split(",");
+        double x = Double.parseDouble(coords[0]);
+        double y = Double.parseDouble(coords[1]);
+        Ladder ladder = new Ladder(x, y);
+        reposition(ladder, platforms);
+        return ladder;
+    }
+
     /**
      * Loads barrels for the specified level and repositions them if initial position overlaps any platform.
      *
@@ -64,15 +78,29 @@ public class ObjectLoader {
         Barrel[] barrels = new Barrel[count];
 
         for (int i = 0; i < count; i++) {
-            String[] coords = props.getProperty("barrel.level" + level + "." + (i + 1)).split(",");
-            double x = Double.parseDouble(coords[0]);
-            double y = Double.parseDouble(coords[1]);
-            barrels[i] = new Barrel(x, y);
-            reposition(barrels[i], platforms);
+            barrels[i] = loadBarrel(props, platforms, level, i);
         }
         return barrels;
     }
 
+    /**
+     * Loads a single barrel for a level and repositions it if its initial position overlaps any platform.
+     *
+     * @param props Properties containing barrel definitions.
+     * @param platforms Platforms used for alignment.
+     * @param level The level number.
+     * @param index The index of the barrel, starting from 0.
+     * @return The {@link Barrel} object.
+     */
+    public static Barrel loadBarrel(Properties props, Platform[] platforms, int level, int index) {
+        String[] coords = props.getProperty("barrel.level" + level + "." + (index + 1)).split(",");
+        double x = Double.parseDouble(coords[0]);
+        double y = Double.parseDouble(coords[1]);
+        Barrel barrel = new Barrel(x, y);
+        reposition(barrel, platforms);
+        return barrel;
+    }
+
     /**
      * Loads hammers (weapons) for the level and positions them on platforms.
      *
@@ -146,44 +174,135 @@ public class ObjectLoader {
         // Load normal monkeys
         int normMonkCount = Integer.parseInt(props.getProperty("normalMonkey.level" + level + ".count"));
         for (int i = 0; i < normMonkCount; i++) {
-            String[] parts = props.getProperty("normalMonkey.level" + level + "." + (i + 1)).split(";");
-            String[] coords = parts[0].split(",");
-            double x = Double.parseDouble(coords[0]);
-            double y = Double.parseDouble(coords[1]);
-            boolean facingLeft = parts[1].equals("left");
-
-            String[] routeStr = parts[2].split(",");
-            int[] route = new int[routeStr.length];
-            for (int j = 0; j < routeStr.length; j++) {
-                route[j] = Integer.parseInt(routeStr[j]);
-            }
-
-            NormalMonkey normal = new NormalMonkey(x, y, facingLeft, route, platforms);
-            reposition(normal, platforms);
-            allMonkey.add(normal);
+            allMonkey.add(loadMonkey(props, platforms, level, i, false));
         }
 
         // Load smart monkeys
         int smartMonkCount = Integer.parseInt(props.getProperty("intelligentMonkey.level" + level + ".count"));
         for (int i = 0; i < smartMonkCount; i++) {
-            String[] parts = props.getProperty("intelligentMonkey.level" + level + "." + (i + 1)).split(";");
-            String[] coords = parts[0].split(",");
-            double x = Double.parseDouble(coords[0]);
-            double y = Double.parseDouble(coords[1]);
-            boolean facingLeft = parts[1].equals("left");
-
-            String[] routeStr = parts[2].split(",");
-            int[] route = new int[routeStr.length];
-            for (int j = 0; j < routeStr.length; j++) {
-                route[j] = Integer.parseInt(routeStr[j]);
-            }
-            SmartMonkey smart = new SmartMonkey(x, y, facingLeft, route, platforms);
-            reposition(smart, platforms);
-            allMonkey.add(smart);
+            allMonkey.add(loadMonkey(props, platforms, level, i, true));
         }
         return allMonkey;
     }
 
+    /**
+     * Loads a single normal or smart monkey for a level and repositions it.
+     *
+     * @param props Properties containing monkey definitions.
+     * @param platforms Platforms for positioning reference.
+     * @param level The level number.
+     * @param index The index of the monkey among monkeys of its kind, starting from 0.
+     * @param smart True to load a smart monkey, false to load a normal monkey.
+     * @return The monkey object.
+     */
+    public static Monkey loadMonkey(Properties props, Platform[] platforms, int level, int index, boolean smart) {
+        String kind = smart ? "intelligentMonkey" : "normalMonkey";
+        String[] parts = props.getProperty(kind + ".level" + level + "." + (index + 1)).split(";");
+        String[] coords = parts[0].split(",");
+        double x = Double.parseDouble(coords[0]);
+        double y = Double.parseDouble(coords[1]);
+        boolean facingLeft = parts[1].equals("left");
+
+        String[] routeStr = parts[2].split(",");
+        int[] route = new int[routeStr.length];
+        for (int j = 0; j < routeStr.length; j++) {
+            route[j] = Integer.parseInt(routeStr[j]);
+        }
+
+        Monkey monkey = smart ? new SmartMonkey(x, y, facingLeft, route, platforms)
+                : new NormalMonkey(x, y, facingLeft, route, platforms);
+        reposition(monkey, platforms);
+        return monkey;
+    }
+
+    /**
+     * Loads monkeys that chase Mario for the level and repositions them.
+     * Levels without a pursuing monkey count have none.
+     *
+     * @param props Properties containing pursuing monkey definitions.
+     * @param platforms Platforms for positioning reference.
+     * @param graph The navigation graph the monkeys use to find their way to Mario.
+     * @param level The level number.
+     * @return A list of pursuing monkey objects.
+     */
+    public static ArrayList<Monkey> loadPursuingMonkeys(Properties props, Platform[] platforms,
+                                                        NavigationGraph graph, int level) {
+        ArrayList<Monkey> pursuers = new ArrayList<>();
+        int count = Integer.parseInt(props.getProperty("pursuingMonkey.level" + level + ".count", "0"));
+        for (int i = 0; i < count; i++) {
+            pursuers.add(loadPursuingMonkey(props, platforms, graph, level, i));
+        }
+        return pursuers;
+    }
+
+    /**
+     * Loads a single monkey that chases Mario for a level and repositions it.
+     *
+     * @param props Properties containing pursuing monkey definitions.
+     * @param platforms Platforms for positioning reference.
+     * @param graph The navigation graph the monkey uses to find its way to Mario.
+     * @param level The level number.
+     * @param index The index of the pursuing monkey, starting from 0.
+     * @return The pursuing monkey object.
+     */
+    public static PursuingMonkey loadPursuingMonkey(Properties props, Platform[] platforms,
+                                                    NavigationGraph graph, int level, int index) {
+        String[] parts = props.getProperty("pursuingMonkey.level" + level + "." + (index + 1)).split(";");
+        String[] coords = parts[0].split(",");
+        double x = Double.parseDouble(coords[0]);
+        double y = Double.parseDouble(coords[1]);
+        boolean facingLeft = parts[1].equals("left");
+
+        PursuingMonkey pursuer = new PursuingMonkey(x, y, facingLeft, platforms, graph);
+        reposition(pursuer, platforms);
+        return pursuer;
+    }
+
+    /**
+     * Loads monkeys that follow behaviours declared in the config for the level and repositions them.
+     * Levels without a scripted monkey count have none.
+     *
+     * @param props Properties containing scripted monkey definitions.
+     * @param platforms Platforms for positioning reference.
+     * @param ladders Ladders the monkeys can stand at.
+     * @param behaviours The compiled behaviours the monkeys follow.
+     * @param level The level number.
+     * @return A list of scripted monkey objects.
+     */
+    public static ArrayList<Monkey> loadScriptedMonkeys(Properties props, Platform[] platforms, Ladder[] ladders,
+                                                        BehaviourTable behaviours, int level) {
+        ArrayList<Monkey> scripted = new ArrayList<>();
+        int count = Integer.parseInt(props.getProperty("scriptedMonkey.level" + level + ".count", "0"));
+        for (int i = 0; i < count; i++) {
+            scripted.add(loadScriptedMonkey(props, platforms, ladders, behaviours, level, i));
+        }
+        return scripted;
+    }
+
+    /**
+     * Loads a single monkey that follows a behaviour declared in the config and repositions it.
+     *
+     * @param props Properties containing scripted monkey definitions.
+     * @param platforms Platforms for positioning reference.
+     * @param ladders Ladders the monkey can stand at.
+     * @param behaviours The compiled behaviours the monkey follows.
+     * @param level The level number.
+     * @param index The index of the scripted monkey, starting from 0.
+     * @return The scripted monkey object.
+     */
+    public static ScriptedMonkey loadScriptedMonkey(Properties props, Platform[] platforms, Ladder[] ladders,
+                                                    BehaviourTable behaviours, int level, int index) {
+        String[] parts = props.getProperty("scriptedMonkey.level" + level + "." + (index + 1)).split(";");
+        String[] coords = parts[0].split(",");
+        double x = Double.parseDouble(coords[0]);
+        double y = Double.parseDouble(coords[1]);
+        boolean facingLeft = parts[1].equals("left");
+
+        ScriptedMonkey monkey = new ScriptedMonkey(x, y, facingLeft, behaviours, parts[2].trim(), platforms, ladders);
+        reposition(monkey, platforms);
+        return monkey;
+    }
+
     /**
      * Loads blasters for the level and repositions them.
      *
@@ -207,6 +326,22 @@ public class ObjectLoader {
         return blasters;
     }
 
+    /**
+     * Moves an existing object to the position given for it in the properties and repositions it
+     * onto a platform, keeping the rest of its state.
+     *
+     * @param obj The GameObject to move.
+     * @param props Properties containing the object's coordinates.
+     * @param key The key of the object's entry, whose value starts with its x,y coordinates.
+     * @param platforms Platforms used for alignment.
+     */
+    public static void moveTo(GameObject obj, Properties props, String key, Platform[] platforms) {
+        String[] coords = props.getProperty(key).split(";")[0].split(",");
+        obj.setX(Double.parseDouble(coords[0]));
+        obj.setY(Double.parseDouble(coords[1]));
+        reposition(obj, platforms);
+    }
+
     /**
      * Combines multiple arrays of GameObject into one.
      *
@@ -235,7 +370,7 @@ public class ObjectLoader {
      * @param obj The GameObject to reposition.
      * @param platforms Array of platforms to check against.
      */
-    private static void reposition(GameObject obj, Platform[] platforms) {
+    public static void reposition(GameObject obj, Platform[] platforms) {
         for (Platform plat : platforms) {
 
             // Check if bottom of object is intersecting top of platform
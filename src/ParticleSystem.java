@@ -0,0 +1,256 @@
+import bagel.DrawOptions;
+import bagel.Font;
+import bagel.Image;
+
+/**
+ * Short-lived visual effects: debris from smashed barrels, sparks from destroyed monkeys and the
+ * score they were worth floating up.
+ *
+ * Particles are kept packed at the front of parallel primitive arrays sized once up front, and a
+ * particle that expires is replaced by the last one, so updating is one loop over plain arrays and
+ * nothing is allocated while playing. Each frame only a fixed number of particles may be spawned
+ * and drawn, so a burst of destruction cannot stall a frame. Particles only affect what is drawn,
+ * so they are not part of snapshots.
+ */
+public class ParticleSystem {
+
+    /** Kind of particle drawn as a small spinning chip of a barrel. */
+    public static final int DEBRIS = 0;
+
+    /** Kind of particle drawn as a small spinning spark. */
+    public static final int SPARK = 1;
+
+    /** Kind of particle drawn as a score floating upwards. */
+    public static final int SCORE = 2;
+
+    private static final int KINDS = 3;
+    private static final float[] GRAVITY = {0.3f, 0.05f, 0f};
+    private static final int[] LIFETIME = {45, 30, 50};
+    private static final float[] SPEED = {4f, 3f, 0f};
+    private static final float SCORE_RISE_SPEED = -1f;
+    private static final double SPRITE_SCALE = 0.3;
+
+    private final int capacity;
+    private final int spawnBudget;
+    private final int drawBudget;
+    private final float[] x;
+    private final float[] y;
+    private final float[] vx;
+    private final float[] vy;
+    private final float[] rotation;
+    private final float[] spin;
+    private final int[] life;
+    private final byte[] kind;
+    private final String[] label;
+    private int labelScore = 0;
+    private String labelText = "0";
+    private int count = 0;
+    private int spawnedThisTick = 0;
+    private long throttledCount = 0;
+    private int random = 0x2545F491;
+
+    private Image[] sprites;
+    private Font font;
+    private boolean hidden = false;
+    private final DrawOptions options = new DrawOptions();
+
+    /**
+     * Creates a particle system with all of its storage allocated.
+     *
+     * @param capacity    The most particles alive at once.
+     * @param spawnBudget The most particles spawned per tick, further spawns are dropped.
+     * @param drawBudget  The most particles drawn per frame.
+     */
+    public ParticleSystem(int capacity, int spawnBudget, int drawBudget) {
+        this.capacity = capacity;
+        this.spawnBudget = spawnBudget;
+        this.drawBudget = drawBudget;
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.vx = new float[capacity];
+        this.vy = new float[capacity];
+        this.rotation = new float[capacity];
+        this.spin = new float[capacity];
+        this.life = new int[capacity];
+        this.kind = new byte[capacity];
+        this.label = new String[capacity];
+    }
+
+    /**
+     * Sets what particles are drawn with. Until this is called, particles are simulated but not drawn.
+     *
+     * @param debrisSprite The sprite shrunk down for debris.
+     * @param sparkSprite  The sprite shrunk down for sparks.
+     * @param font         The font scores are drawn with.
+     */
+    public void setAppearance(Image debrisSprite, Image sparkSprite, Font font) {
+        this.sprites = new Image[] {debrisSprite, sparkSprite};
+        this.font = font;
+    }
+
+    /**
+     * Spawns a burst of particles flying out from a point, as far as this tick's budget allows.
+     *
+     * @param particleKind The kind of particle, such as {@link #DEBRIS}.
+     * @param originX      The horizontal position of the burst.
+     * @param originY      The vertical position of the burst.
+     * @param particles    The number of particles wanted.
+     * @param score        The score shown by {@link #SCORE} particles, ignored by other kinds.
+     * @return The number of particles spawned.
+     */
+    public int spawnBurst(int particleKind, double originX, double originY, int particles, int score) {
+        int allowed = Math.min(particles, Math.min(spawnBudget - spawnedThisTick, capacity - count));
+        allowed = Math.max(allowed, 0);
+        throttledCount += particles - allowed;
+        spawnedThisTick += allowed;
+        if (particleKind == SCORE && score != labelScore) {
+            // scores repeat, so the text is only made again when the score differs from the last one
+            labelScore = score;
+            labelText = Integer.toString(score);
+        }
+
+        for (int n = 0; n < allowed; n++) {
+            int i = count++;
+            double angle = nextRandom() * Math.PI * 2;
+            float speed = SPEED[particleKind] * (0.5f + nextRandom());
+            x[i] = (float) originX;
+            y[i] = (float) originY;
+            vx[i] = (float) Math.cos(angle) * speed;
+            vy[i] = particleKind == SCORE ? SCORE_RISE_SPEED : (float) Math.sin(angle) * speed - speed;
+            rotation[i] = 0;
+            spin[i] = (nextRandom() - 0.5f) * 0.6f;
+            life[i] = LIFETIME[particleKind];
+            kind[i] = (byte) particleKind;
+            label[i] = particleKind == SCORE ? labelText : null;
+        }
+        return allowed;
+    }
+
+    /**
+     * Moves every particle by one tick and removes those that have expired.
+     */
+    public void update() {
+        spawnedThisTick = 0;
+        int i = 0;
+        while (i < count) {
+            if (--life[i] <= 0) {
+                count--;
+                x[i] = x[count];
+                y[i] = y[count];
+                vx[i] = vx[count];
+                vy[i] = vy[count];
+                rotation[i] = rotation[count];
+                spin[i] = spin[count];
+                life[i] = life[count];
+                kind[i] = kind[count];
+                label[i] = label[count];
+                continue;
+            }
+            vy[i] += GRAVITY[kind[i]];
+            x[i] += vx[i];
+            y[i] += vy[i];
+            rotation[i] += spin[i];
+            i++;
+        }
+    }
+
+    /**
+     * Draws the particles, one kind at a time so that each pass uses a single sprite, up to the
+     * per-frame budget.
+     */
+    public void draw() {
+        if (sprites == null || hidden) {
+            return;
+        }
+        int drawn = 0;
+        for (int pass = 0; pass < KINDS && drawn < drawBudget; pass++) {
+            for (int i = 0; i < count && drawn < drawBudget; i++) {
+                if (kind[i] != pass) {
+                    continue;
+                }
+                if (pass == SCORE) {
+                    font.drawString(label[i], x[i], y[i]);
+                } else {
+                    options.setScale(SPRITE_SCALE, SPRITE_SCALE).setRotation(rotation[i]);
+                    sprites[pass].draw(x[i], y[i], options);
+                }
+                drawn++;
+            }
+        }
+    }
+
+    /**
+     * Hides or shows the particles. Hidden particles are still simulated, so they reappear where
+     * they would have been.
+     *
+     * @param hidden True to stop drawing particles, such as while frames run late.
+     */
+    public void setHidden(boolean hidden) {
+        this.hidden = hidden;
+    }
+
+    /**
+     * Removes every particle, such as when a new level starts.
+     */
+    public void clear() {
+        count = 0;
+        spawnedThisTick = 0;
+    }
+
+    /**
+     * Returns the number of particles alive.
+     *
+     * @return The number of live particles.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of particles that were not spawned because a budget or the capacity was reached.
+     *
+     * @return The number of throttled particles.
+     */
+    public long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * Returns a pseudo-random number between 0 and 1 from a xorshift generator, which needs no objects.
+     *
+     * @return The next random number.
+     */
+    private float nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return (random >>> 8) / (float) (1 << 24);
+    }
+
+    /**
+     * Measures how long updating a full particle system takes per tick.
+     * Usage: {@code ParticleSystem [capacity] [ticks]}
+     *
+     * @param args The capacity and number of ticks to measure, 131072 and 2000 by default.
+     */
+    public static void main(String[] args) {
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 131072;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        ParticleSystem particles = new ParticleSystem(capacity, capacity, capacity);
+
+        long totalNanos = 0;
+        long particleTicks = 0;
+        for (int tick = 0; tick < ticks; tick++) {
+            // keep the system full, so that expired particles are replaced every tick
+            while (particles.spawnBurst(tick % KINDS, 512, 384, 1024, 100) > 0) {
+                // spawn until full
+            }
+            particleTicks += particles.getCount();
+            long start = System.nanoTime();
+            particles.update();
+            totalNanos += System.nanoTime() - start;
+        }
+        System.out.printf("%d particles: %.1f us per tick, %.2f ns per particle%n",
+                capacity, totalNanos / 1e3 / ticks, (double) totalNanos / particleTicks);
+    }
+}
@@ -0,0 +1,101 @@
+import bagel.Input;
+import bagel.Keys;
+import java.nio.ByteBuffer;
+
+/**
+ * The buttons held by a player during one frame, packed into an int so that inputs can be
+ * stored, replayed and sent over the network cheaply.
+ * A button counts as pressed in the frame where it becomes held, so the whole input for a
+ * frame is determined by the held buttons of this frame and the previous one.
+ */
+public class PlayerInput implements Snapshottable {
+
+    /** Button for moving left. */
+    public static final int LEFT = 1;
+
+    /** Button for moving right. */
+    public static final int RIGHT = 1 << 1;
+
+    /** Button for climbing up. */
+    public static final int UP = 1 << 2;
+
+    /** Button for climbing down. */
+    public static final int DOWN = 1 << 3;
+
+    /** Button for jumping. */
+    public static final int JUMP = 1 << 4;
+
+    /** Button for shooting. */
+    public static final int SHOOT = 1 << 5;
+
+    private int held = 0;
+    private int previous = 0;
+
+    /**
+     * Reads the buttons currently held on the keyboard.
+     *
+     * @param input The current keyboard input.
+     * @return The held buttons packed into an int.
+     */
+    public static int read(Input input) {
+        int buttons = 0;
+        if (input.isDown(Keys.LEFT)) buttons |= LEFT;
+        if (input.isDown(Keys.RIGHT)) buttons |= RIGHT;
+        if (input.isDown(Keys.UP)) buttons |= UP;
+        if (input.isDown(Keys.DOWN)) buttons |= DOWN;
+        if (input.isDown(Keys.SPACE)) buttons |= JUMP;
+        if (input.isDown(Keys.S)) buttons |= SHOOT;
+        return buttons;
+    }
+
+    /**
+     * Advances to the next frame with the given buttons held.
+     *
+     * @param buttons The buttons held in the new frame.
+     */
+    public void next(int buttons) {
+        previous = held;
+        held = buttons;
+    }
+
+    /**
+     * Checks whether a button is held in the current frame.
+     *
+     * @param button The button to check.
+     * @return True if the button is held.
+     */
+    public boolean isDown(int button) {
+        return (held & button) != 0;
+    }
+
+    /**
+     * Checks whether a button became held in the current frame.
+     *
+     * @param button The button to check.
+     * @return True if the button is held now but was not held in the previous frame.
+     */
+    public boolean wasPressed(int button) {
+        return (held & button) != 0 && (previous & button) == 0;
+    }
+
+    /**
+     * Writes the held buttons of the current and previous frame to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(held).putInt(previous);
+    }
+
+    /**
+     * Restores the held buttons of the current and previous frame from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        held = buffer.getInt();
+        previous = buffer.getInt();
+    }
+}
@@ -1,4 +1,5 @@
 import bagel.Window;
+import java.nio.ByteBuffer;
 
 /**
  * An abstract class representing a horizontal projectile in the game.
@@ -7,7 +8,7 @@ import bagel.Window;
  * or moved out of the screen bounds
  */
 public abstract class Projectile extends GameObject implements Moveable {
-    private final boolean facingLeft;
+    private boolean facingLeft;
     private final double speed;
     private final static double MAX_DISTANCE = 300;
     private double distanceTraveled = 0;
@@ -71,5 +72,39 @@ public abstract class Projectile extends GameObject implements Moveable {
     public boolean isFacingLeft() {
         return facingLeft;
     }
-}
 
+    /**
+     * Turns the projectile to travel left or right, so that a projectile can be reused when a
+     * snapshot is restored.
+     *
+     * @param facingLeft True if the projectile should move left; false for right.
+     */
+    public void setFacingLeft(boolean facingLeft) {
+        this.facingLeft = facingLeft;
+    }
+
+    /**
+     * Writes the projectile's position, travelled distance and active state to the snapshot buffer.
+     * The direction is written by the owner of the projectile, which sets it before restoring the rest.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putDouble(distanceTraveled);
+        buffer.put((byte) (active ? 1 : 0));
+    }
+
+    /**
+     * Restores the projectile's position, travelled distance and active state from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        distanceTraveled = buffer.getDouble();
+        active = buffer.get() != 0;
+    }
+}
@@ -0,0 +1,180 @@
+import bagel.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A monkey that chases Mario across the level instead of following a fixed route.
+ * On Mario's platform it walks towards him. Otherwise it looks up the next link towards Mario's
+ * platform in the level's {@link NavigationGraph}, walks to it, and climbs the ladder or walks
+ * onto the neighbouring platform.
+ */
+public class PursuingMonkey extends Monkey {
+    private static final Image PURSUING_MONKEY_RIGHT = new Image("res/normal_monkey_right.png");
+    private static final Image PURSUING_MONKEY_LEFT = new Image("res/normal_monkey_left.png");
+    private static final CollisionMask PURSUING_MONKEY_RIGHT_MASK = CollisionMask.load("res/normal_monkey_right.png");
+    private static final CollisionMask PURSUING_MONKEY_LEFT_MASK = CollisionMask.load("res/normal_monkey_left.png");
+    private static final double SPEED = 0.8;
+    private static final double CLIMB_SPEED = 1.0;
+
+    private final NavigationGraph graph;
+    private int currentPlatform = NavigationGraph.NO_PLATFORM;
+    private int climbTarget = NavigationGraph.NO_PLATFORM;
+
+    /**
+     * Constructs a PursuingMonkey with given position, facing direction and the level it moves in.
+     *
+     * @param x          The initial x-coordinate of the monkey.
+     * @param y          The initial y-coordinate of the monkey.
+     * @param facingLeft Whether the monkey starts by facing left.
+     * @param platforms  The platforms available in the level.
+     * @param graph      The navigation graph of the level.
+     */
+    public PursuingMonkey(double x, double y, boolean facingLeft, Platform[] platforms, NavigationGraph graph) {
+        super(x, y, facingLeft, new int[]{0}, platforms);
+        this.graph = graph;
+    }
+
+    /**
+     * Applies gravity unless the monkey is climbing, and works out which platform it landed on.
+     *
+     * @param platforms Array of platforms to determine collision and grounded state.
+     */
+    @Override
+    public void applyGravity(Platform[] platforms) {
+        if (climbTarget != NavigationGraph.NO_PLATFORM) {
+            return;
+        }
+        super.applyGravity(platforms);
+        if (currentPlatform == NavigationGraph.NO_PLATFORM
+                || x < graph.getPlatformLeft(currentPlatform) || x > graph.getPlatformRight(currentPlatform)) {
+            currentPlatform = graph.findPlatform(x, getFootY());
+        }
+    }
+
+    /**
+     * Moves the monkey one step towards Mario.
+     *
+     * @param tick          The current tick of the level's clock.
+     * @param marioX        The horizontal position of Mario.
+     * @param marioPlatform The platform Mario is on, or {@link NavigationGraph#NO_PLATFORM}.
+     */
+    @Override
+    public void think(int tick, double marioX, int marioPlatform) {
+        pursue(marioX, marioPlatform);
+    }
+
+    /**
+     * Moves the monkey one step towards Mario.
+     *
+     * @param marioX        The horizontal position of Mario.
+     * @param marioPlatform The platform Mario is on, or {@link NavigationGraph#NO_PLATFORM}.
+     */
+    public void pursue(double marioX, int marioPlatform) {
+        if (isDestroyed()) {
+            return;
+        }
+        if (climbTarget != NavigationGraph.NO_PLATFORM) {
+            climb();
+            return;
+        }
+        if (currentPlatform == NavigationGraph.NO_PLATFORM) {
+            return;
+        }
+
+        int link = marioPlatform == NavigationGraph.NO_PLATFORM || marioPlatform == currentPlatform
+                ? NavigationGraph.NO_LINK
+                : graph.getNextLink(currentPlatform, marioPlatform);
+        if (link == NavigationGraph.NO_LINK) {
+            walkTowards(marioX);
+            return;
+        }
+
+        double linkX = graph.getLinkX(link);
+        if (Math.abs(linkX - x) > SPEED) {
+            walkTowards(linkX);
+        } else if (graph.isLadderLink(link)) {
+            x = linkX;
+            climbTarget = graph.getLinkTarget(link);
+        } else {
+            // the link is where both platforms overlap, so the monkey is now on the next one
+            currentPlatform = graph.getLinkTarget(link);
+        }
+    }
+
+    /**
+     * Climbs towards the top of the target platform and stands on it once reached.
+     */
+    private void climb() {
+        double targetY = graph.getPlatformTop(climbTarget) - getImage().getHeight() / 2.0;
+        if (Math.abs(targetY - y) <= CLIMB_SPEED) {
+            y = targetY;
+            currentPlatform = climbTarget;
+            climbTarget = NavigationGraph.NO_PLATFORM;
+        } else {
+            y += targetY < y ? -CLIMB_SPEED : CLIMB_SPEED;
+        }
+    }
+
+    /**
+     * Walks towards a horizontal position, facing the direction of travel.
+     *
+     * @param targetX The position to walk towards.
+     */
+    private void walkTowards(double targetX) {
+        double distance = targetX - x;
+        if (Math.abs(distance) <= SPEED) {
+            return;
+        }
+        setFacingLeft(distance < 0);
+        x += distance < 0 ? -SPEED : SPEED;
+    }
+
+    /**
+     * @return The vertical position of the bottom of the monkey.
+     */
+    private double getFootY() {
+        return y + getImage().getHeight() / 2.0;
+    }
+
+    /**
+     * Retrieves the current image of the monkey based on its facing direction.
+     *
+     * @return The {@link Image} representing the monkey's current orientation.
+     */
+    @Override
+    public Image getImage() {
+        return (isFacingLeft() ? PURSUING_MONKEY_LEFT : PURSUING_MONKEY_RIGHT);
+    }
+
+    /**
+     * Returns the solid pixels of the monkey facing its current direction.
+     *
+     * @return The collision mask.
+     */
+    @Override
+    public CollisionMask getMask() {
+        return isFacingLeft() ? PURSUING_MONKEY_LEFT_MASK : PURSUING_MONKEY_RIGHT_MASK;
+    }
+
+    /**
+     * Writes the monkey's state, including its platform and climbing target, to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putInt(currentPlatform).putInt(climbTarget);
+    }
+
+    /**
+     * Restores the monkey's state, including its platform and climbing target, from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        currentPlatform = buffer.getInt();
+        climbTarget = buffer.getInt();
+    }
+}
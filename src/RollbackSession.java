@@ -0,0 +1,352 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Runs a level shared by two players over an {@link InputTransport} using rollback.
+ * Each tick is simulated straight away with the remote player's input predicted to be the same
+ * as their last known input. When the real input for a past tick arrives and differs from the
+ * prediction, the level is restored to its snapshot before that tick and the ticks since are
+ * simulated again. If the remote player falls more than {@link #MAX_ROLLBACK} ticks behind,
+ * the session waits for them instead of predicting further.
+ */
+public class RollbackSession {
+
+    /** The maximum number of ticks simulated ahead of the last confirmed remote input. */
+    public static final int MAX_ROLLBACK = 8;
+
+    private static final int HISTORY = 64;
+    private static final int PACKET_BYTES = 5 + MAX_ROLLBACK * 4;
+
+    private final InputTransport transport;
+    private final boolean localIsMario;
+    private final int[] localInputs = new int[HISTORY];
+    private final int[] remoteInputs = new int[HISTORY];
+    private final int[] remoteTicks = new int[HISTORY];
+    private final SnapshotBuffer states;
+    private final ByteBuffer packet = ByteBuffer.allocate(PACKET_BYTES);
+    private Level level;
+    private int baseFrame;
+    private int tick;
+    private int confirmedTick;
+    private int lastRemoteButtons;
+    private int rollbackCount = 0;
+    private int stallCount = 0;
+    private int maxRollbackTicks = 0;
+    private long maxRollbackNanos = 0;
+
+    /**
+     * Creates a rollback session over the given transport.
+     *
+     * @param transport    The connection to the other player.
+     * @param localIsMario True if the local player controls Mario, false if they control Donkey Kong.
+     * @param slotBytes    The maximum size in bytes of a level's state, as for the game's snapshots.
+     */
+    public RollbackSession(InputTransport transport, boolean localIsMario, int slotBytes) {
+        this.transport = transport;
+        this.localIsMario = localIsMario;
+        this.states = new SnapshotBuffer(MAX_ROLLBACK + 2, slotBytes);
+    }
+
+    /**
+     * Starts playing a new level from tick 0. Both players must start the same level.
+     *
+     * @param level     The level to play.
+     * @param baseFrame The game frame the level starts at.
+     */
+    public void reset(Level level, int baseFrame) {
+        this.level = level;
+        this.baseFrame = baseFrame;
+        this.tick = 0;
+        this.confirmedTick = -1;
+        this.lastRemoteButtons = 0;
+        Arrays.fill(remoteTicks, -1);
+        states.clear();
+    }
+
+    /**
+     * Exchanges inputs with the other player, rolls back if a past prediction was wrong, and
+     * simulates the next tick unless the other player is too far behind.
+     *
+     * @param localButtons The buttons held by the local player this frame, see {@link PlayerInput}.
+     * @return True if a tick was simulated, false if the session is waiting for the other player.
+     */
+    public boolean advance(int localButtons) {
+        int mispredictedTick = receiveRemoteInputs();
+        if (mispredictedTick < tick) {
+            rollback(mispredictedTick);
+        }
+
+        if (tick - confirmedTick > MAX_ROLLBACK) {
+            sendLocalInputs(tick - 1);
+            stallCount++;
+            return false;
+        }
+
+        localInputs[tick % HISTORY] = localButtons;
+        sendLocalInputs(tick);
+        if (remoteTicks[tick % HISTORY] != tick) {
+            remoteInputs[tick % HISTORY] = lastRemoteButtons;
+        }
+        states.record(tick, level);
+        simulate(tick);
+        tick++;
+        return true;
+    }
+
+    /**
+     * Restores the level to its state before the given tick and simulates all later ticks again,
+     * predicting remote inputs that are still unknown from the newest confirmed one.
+     *
+     * @param fromTick The first tick whose remote input was predicted wrongly.
+     */
+    private void rollback(int fromTick) {
+        long start = System.nanoTime();
+        states.restore(tick - 1 - fromTick, level);
+        for (int t = fromTick; t < tick; t++) {
+            if (t > fromTick) {
+                states.record(t, level);
+            }
+            if (remoteTicks[t % HISTORY] != t) {
+                remoteInputs[t % HISTORY] = lastRemoteButtons;
+            }
+            simulate(t);
+        }
+        rollbackCount++;
+        maxRollbackTicks = Math.max(maxRollbackTicks, tick - fromTick);
+        maxRollbackNanos = Math.max(maxRollbackNanos, System.nanoTime() - start);
+    }
+
+    /**
+     * Exchanges inputs with the other player and rolls back if a past prediction was wrong, without
+     * simulating another tick, such as once both players have played the last tick of a match.
+     *
+     * @return True if every tick simulated so far has the other player's confirmed input.
+     */
+    public boolean settle() {
+        int mispredictedTick = receiveRemoteInputs();
+        if (mispredictedTick < tick) {
+            rollback(mispredictedTick);
+        }
+        sendLocalInputs(tick - 1);
+        return confirmedTick == tick - 1;
+    }
+
+    /**
+     * Simulates one tick of the level with the stored inputs of both players.
+     *
+     * @param t The tick to simulate.
+     */
+    private void simulate(int t) {
+        int local = localInputs[t % HISTORY];
+        int remote = remoteInputs[t % HISTORY];
+        if (localIsMario) {
+            level.update(local, remote);
+        } else {
+            level.update(remote, local);
+        }
+    }
+
+    /**
+     * Reads all waiting packets from the other player and stores the inputs they confirm.
+     *
+     * @return The earliest past tick whose prediction turned out wrong, or the current tick if none did.
+     */
+    private int receiveRemoteInputs() {
+        int mispredictedTick = tick;
+        while (transport.receive(packet)) {
+            if (packet.remaining() < 5) {
+                continue;
+            }
+            int firstTick = packet.getInt();
+            int count = Math.min(packet.get(), packet.remaining() / 4);
+            for (int i = 0; i < count; i++) {
+                int t = firstTick + i;
+                int buttons = packet.getInt();
+                boolean known = t <= confirmedTick || remoteTicks[t % HISTORY] == t;
+                if (known || t >= tick + HISTORY / 2) {
+                    continue;
+                }
+                if (t < tick && remoteInputs[t % HISTORY] != buttons) {
+                    mispredictedTick = Math.min(mispredictedTick, t);
+                }
+                remoteInputs[t % HISTORY] = buttons;
+                remoteTicks[t % HISTORY] = t;
+            }
+        }
+        while (remoteTicks[(confirmedTick + 1) % HISTORY] == confirmedTick + 1) {
+            confirmedTick++;
+            lastRemoteButtons = remoteInputs[confirmedTick % HISTORY];
+        }
+        return mispredictedTick;
+    }
+
+    /**
+     * Sends the local inputs of the last few ticks up to the given one, so that a lost packet
+     * is covered by the next one.
+     *
+     * @param lastTick The newest tick whose local input is sent.
+     */
+    private void sendLocalInputs(int lastTick) {
+        if (lastTick < 0) {
+            return;
+        }
+        int firstTick = Math.max(0, lastTick - MAX_ROLLBACK + 1);
+        packet.clear();
+        packet.putInt(firstTick);
+        packet.put((byte) (lastTick - firstTick + 1));
+        for (int t = firstTick; t <= lastTick; t++) {
+            packet.putInt(localInputs[t % HISTORY]);
+        }
+        packet.flip();
+        transport.send(packet);
+    }
+
+    /**
+     * @return The game frame of the newest simulated tick.
+     */
+    public int getFrame() {
+        return baseFrame + tick;
+    }
+
+    /**
+     * @return The number of times the level was rolled back and simulated again.
+     */
+    public int getRollbackCount() {
+        return rollbackCount;
+    }
+
+    /**
+     * @return The number of frames spent waiting for the other player.
+     */
+    public int getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * @return The most ticks simulated again in one rollback.
+     */
+    public int getMaxRollbackTicks() {
+        return maxRollbackTicks;
+    }
+
+    /**
+     * @return The longest time one rollback took, restoring the level and simulating the ticks again.
+     */
+    public long getMaxRollbackNanos() {
+        return maxRollbackNanos;
+    }
+
+    /**
+     * Describes the counters in one line, for printing when a game ends.
+     *
+     * @return The rollback report.
+     */
+    public String getReport() {
+        return String.format("rollbacks %d, stalls %d, longest rollback %d ticks in %.2f ms",
+                rollbackCount, stallCount, maxRollbackTicks, maxRollbackNanos / 1e6);
+    }
+
+    /**
+     * Plays the same level as both players over a {@link LoopbackTransport} with latency and packet
+     * loss, then checks that both ended in the same state and prints the rollbacks, the stalls and the
+     * longest rollback against the time of a frame. Each player holds random buttons for a random
+     * number of ticks, and the frames run at the game's rate so that the latency is real. Levels load
+     * sprites, so the check runs in the first frame of a game window.
+     * Usage: {@code RollbackSession [level] [ticks] [latencyMillis] [lossRate...]}
+     *
+     * @param args The level, the ticks each player plays, the latency, and the loss rates to try,
+     *             level 1, 600 ticks, 50 ms and 0 and 0.1 by default.
+     */
+    public static void main(String[] args) {
+        int levelId = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        double[] rates = {0, 0.1};
+        if (args.length > 3) {
+            rates = new double[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                rates[i - 3] = Double.parseDouble(args[i]);
+            }
+        }
+        double[] lossRates = rates;
+        Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        WindowHarness.runInFirstFrame(props, "RollbackSession", () -> {
+            for (double lossRate : lossRates) {
+                play(props, levelId, ticks, latencyMillis, lossRate);
+            }
+        });
+    }
+
+    /**
+     * Runs one match of the check described in {@link #main}.
+     *
+     * @param props         The game properties.
+     * @param levelId       The level to play.
+     * @param ticks         The number of ticks each player plays.
+     * @param latencyMillis The delay of every packet.
+     * @param lossRate      The share of packets lost.
+     */
+    private static void play(Properties props, int levelId, int ticks, long latencyMillis, double lossRate) {
+        int slotBytes = Integer.parseInt(props.getProperty("snapshot.slotBytes"));
+        long frameNanos = 1_000_000_000L / GameClock.TICKS_PER_SECOND;
+        LoopbackTransport[] transports = LoopbackTransport.createPair(latencyMillis, lossRate, 42);
+        RollbackSession[] sessions = new RollbackSession[2];
+        Level[] levels = new Level[2];
+        Random[] players = {new Random(1), new Random(2)};
+        int[] buttons = new int[2];
+        int[] holdTicks = new int[2];
+        for (int i = 0; i < 2; i++) {
+            levels[i] = Level.create(props, levelId);
+            sessions[i] = new RollbackSession(transports[i], i == 0, slotBytes);
+            sessions[i].reset(levels[i], 0);
+        }
+
+        // play every tick, then keep exchanging inputs until both players have confirmed all of them
+        long nextFrame = System.nanoTime();
+        boolean settled = false;
+        while (!settled) {
+            settled = true;
+            for (int i = 0; i < 2; i++) {
+                RollbackSession session = sessions[i];
+                if (session.tick < ticks) {
+                    if (holdTicks[i]-- <= 0) {
+                        buttons[i] = players[i].nextInt(1 << 6);
+                        holdTicks[i] = players[i].nextInt(30);
+                    }
+                    session.advance(buttons[i]);
+                    settled = false;
+                } else {
+                    settled &= session.settle();
+                }
+            }
+            nextFrame += frameNanos;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+
+        long[] checksums = new long[2];
+        ByteBuffer buffer = ByteBuffer.allocate(slotBytes);
+        for (int i = 0; i < 2; i++) {
+            buffer.clear();
+            levels[i].writeState(buffer);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.position());
+            checksums[i] = crc.getValue();
+        }
+        System.out.printf("%d ms latency, %.0f%% loss: state %08x %08x %s%n", latencyMillis, lossRate * 100,
+                checksums[0], checksums[1], checksums[0] == checksums[1] ? "matches" : "DIFFERS");
+        for (int i = 0; i < 2; i++) {
+            System.out.printf("  %s: %s, %.0f%% of a frame%n", i == 0 ? "Mario" : "Donkey Kong",
+                    sessions[i].getReport(), 100.0 * sessions[i].maxRollbackNanos / frameNanos);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import bagel.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A monkey whose behaviour is a state machine declared in the config rather than written in code.
+ * Each tick it carries out the action of its state in its {@link BehaviourTable}, then moves to the
+ * state of the first transition whose guard holds. Bananas it decides to throw are thrown by
+ * {@link ThrowingMonkey}, like those of a {@link SmartMonkey}.
+ */
+public class ScriptedMonkey extends ThrowingMonkey {
+    private static final Image SCRIPTED_MONKEY_RIGHT = new Image("res/intelli_monkey_right.png");
+    private static final Image SCRIPTED_MONKEY_LEFT = new Image("res/intelli_monkey_left.png");
+    private static final CollisionMask SCRIPTED_MONKEY_RIGHT_MASK = CollisionMask.load("res/intelli_monkey_right.png");
+    private static final CollisionMask SCRIPTED_MONKEY_LEFT_MASK = CollisionMask.load("res/intelli_monkey_left.png");
+    private static final double SPEED = 0.5;
+    // how far the monkey's feet may be from the top or bottom of a ladder to count as standing at it
+    private static final double LADDER_REACH = 5;
+
+    private final BehaviourTable behaviours;
+    private final Ladder[] ladders;
+    private int state;
+    private int ticksInState = 0;
+
+    /**
+     * Constructs a ScriptedMonkey with given position, facing direction and behaviour.
+     *
+     * @param x          The initial x-coordinate of the monkey.
+     * @param y          The initial y-coordinate of the monkey.
+     * @param facingLeft Whether the monkey starts by facing left.
+     * @param behaviours The compiled behaviours of the level.
+     * @param behaviour  The name of the monkey's behaviour.
+     * @param platforms  The platforms available in the level.
+     * @param ladders    The ladders of the level.
+     */
+    public ScriptedMonkey(double x, double y, boolean facingLeft, BehaviourTable behaviours, String behaviour,
+                          Platform[] platforms, Ladder[] ladders) {
+        super(x, y, facingLeft, new int[]{0}, platforms);
+        this.behaviours = behaviours;
+        this.ladders = ladders;
+        this.state = behaviours.getStartState(behaviour);
+    }
+
+    /**
+     * Carries out the action of the monkey's state, moves its bananas, then takes the first transition
+     * whose guard holds.
+     *
+     * @param tick          The current tick of the level's clock.
+     * @param marioX        The horizontal position of Mario.
+     * @param marioPlatform The platform Mario is on, not used by this monkey.
+     */
+    @Override
+    public void think(int tick, double marioX, int marioPlatform) {
+        if (isDestroyed()) {
+            return;
+        }
+        switch (behaviours.getAction(state)) {
+            case BehaviourTable.WALK:
+                walk();
+                break;
+            case BehaviourTable.TURN:
+                setFacingLeft(!isFacingLeft());
+                break;
+            case BehaviourTable.CHASE:
+                setFacingLeft(marioX < x);
+                walk();
+                break;
+            case BehaviourTable.SHOOT:
+                planShot();
+                break;
+            default:
+                break;
+        }
+        moveBananas();
+
+        ticksInState++;
+        boolean atEdge = isBlocked(x + (isFacingLeft() ? -SPEED : SPEED));
+        int next = behaviours.next(state, ticksInState, atEdge, Math.abs(marioX - x), isAtLadder());
+        if (next != state) {
+            state = next;
+            ticksInState = 0;
+        }
+    }
+
+    /**
+     * Takes a step the way the monkey is facing, unless it would leave its platform or the screen.
+     */
+    private void walk() {
+        double nextX = x + (isFacingLeft() ? -SPEED : SPEED);
+        if (!isBlocked(nextX)) {
+            x = nextX;
+        }
+    }
+
+    /**
+     * Checks whether the monkey stands at the top or the bottom of a ladder.
+     *
+     * @return True if a ladder reaches the monkey's feet.
+     */
+    private boolean isAtLadder() {
+        double footY = y + getImage().getHeight() / 2.0;
+        for (Ladder ladder : ladders) {
+            double halfWidth = ladder.getImage().getWidth() / 2.0;
+            double halfHeight = ladder.getImage().getHeight() / 2.0;
+            if (Math.abs(x - ladder.getX()) <= halfWidth
+                    && footY >= ladder.getY() - halfHeight - LADDER_REACH
+                    && footY <= ladder.getY() + halfHeight + LADDER_REACH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the image of the monkey facing its current direction.
+     *
+     * @return The appropriate Image.
+     */
+    @Override
+    public Image getImage() {
+        return isFacingLeft() ? SCRIPTED_MONKEY_LEFT : SCRIPTED_MONKEY_RIGHT;
+    }
+
+    /**
+     * Returns the solid pixels of the monkey facing its current direction.
+     *
+     * @return The collision mask.
+     */
+    @Override
+    public CollisionMask getMask() {
+        return isFacingLeft() ? SCRIPTED_MONKEY_LEFT_MASK : SCRIPTED_MONKEY_RIGHT_MASK;
+    }
+
+    /**
+     * Writes the monkey's state, its active bananas and its place in its behaviour to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putInt(state);
+        buffer.putInt(ticksInState);
+    }
+
+    /**
+     * Restores the monkey's state, its active bananas and its place in its behaviour from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        state = buffer.getInt();
+        ticksInState = buffer.getInt();
+    }
+}
@@ -1,4 +1,5 @@
 import bagel.*;
+import org.lwjgl.glfw.GLFW;
 import java.util.Properties;
 
 /**
@@ -15,7 +16,24 @@ public class ShadowDonkeyKong extends AbstractGame {
     private final Properties MESSAGE_PROPS;
     private final GameScreen screen;
     private final Game game;
-    public static int currentFrame = 0;
+    private final FramePacer pacer;
+    private final boolean reportPacing;
+    private final InputQueue inputQueue;
+    private final boolean reportInput;
+    private boolean inputInstalled = false;
+    private final AssetPreloader preloader;
+    private final long preloadBudgetNanos;
+    private final StartupTimer startupTimer;
+    private final boolean reportStartup;
+    private final double timeScale;
+    private final boolean clockControls;
+    private final IdleMode idleMode;
+    private final boolean reportIdle;
+    private final boolean pauseOnFocusLoss;
+    // whether the last frame drew a screen that only changes on input
+    private boolean idleFrame = false;
+    // ticks simulated since the game was started from the home screen, numbering the recorded frames
+    private int currentFrame = 0;
 
     public ShadowDonkeyKong(Properties gameProps, Properties messageProps) {
         super(Integer.parseInt(gameProps.getProperty("window.width")),
@@ -26,6 +44,37 @@ public class ShadowDonkeyKong extends AbstractGame {
         this.MESSAGE_PROPS = messageProps;
         this.screen = new GameScreen(gameProps);
         this.game = new Game(gameProps);
+        this.pacer = Boolean.parseBoolean(gameProps.getProperty("pacing.enabled", "false")) ? createPacer(gameProps) : null;
+        this.reportPacing = Boolean.parseBoolean(gameProps.getProperty("pacing.report", "false"));
+        this.inputQueue = Boolean.parseBoolean(gameProps.getProperty("input.queue.enabled", "false"))
+                ? new InputQueue(Integer.parseInt(gameProps.getProperty("input.queue.capacity"))) : null;
+        this.reportInput = Boolean.parseBoolean(gameProps.getProperty("input.report", "false"));
+
+        this.startupTimer = new StartupTimer(Integer.parseInt(gameProps.getProperty("startup.measuredFrames")));
+        this.reportStartup = Boolean.parseBoolean(gameProps.getProperty("startup.report", "false"));
+        startupTimer.reached("window");
+        this.preloader = Boolean.parseBoolean(gameProps.getProperty("startup.preload", "false"))
+                ? new AssetPreloader(gameProps) : null;
+        this.preloadBudgetNanos = Long.parseLong(gameProps.getProperty("startup.frameBudgetMillis", "4")) * 1_000_000;
+        this.timeScale = Double.parseDouble(gameProps.getProperty("clock.timeScale", "1"));
+        this.clockControls = Boolean.parseBoolean(gameProps.getProperty("clock.controls", "false"));
+        this.idleMode = Boolean.parseBoolean(gameProps.getProperty("idle.enabled", "false"))
+                ? new IdleMode(Long.parseLong(gameProps.getProperty("idle.timeoutMillis"))) : null;
+        this.reportIdle = Boolean.parseBoolean(gameProps.getProperty("idle.report", "false"));
+        this.pauseOnFocusLoss = Boolean.parseBoolean(gameProps.getProperty("idle.pauseOnFocusLoss", "false"));
+    }
+
+    /**
+     * Creates the frame pacer that keeps the simulation at a steady rate when frames run late.
+     *
+     * @param props The game properties containing the pacing settings.
+     * @return The frame pacer.
+     */
+    private static FramePacer createPacer(Properties props) {
+        return new FramePacer(GameClock.TICKS_PER_SECOND,
+                Integer.parseInt(props.getProperty("pacing.maxCatchUpTicks")),
+                Integer.parseInt(props.getProperty("pacing.shedAfterFrames")),
+                Integer.parseInt(props.getProperty("pacing.recoverAfterFrames")));
     }
 
     /**
@@ -34,30 +83,64 @@ public class ShadowDonkeyKong extends AbstractGame {
      */
     @Override
     protected void update(Input input) {
+        // sleep until input arrives while the screen drawn last frame is still up to date
+        if (idleMode != null && idleFrame) {
+            idleMode.waitForEvents();
+        }
         if (input.wasPressed(Keys.ESCAPE)) {
             Window.close();
         }
-        switch (screen.getCurrentStatus()) {
+        startupTimer.reached("first frame");
+        int status = screen.getCurrentStatus();
+        switch (status) {
             case GameScreen.HOME:
-                screen.renderHomeScreen(GAME_PROPS, MESSAGE_PROPS);
+                screen.renderHomeScreen(GAME_PROPS, MESSAGE_PROPS,
+                        preload(input.wasPressed(Keys.ENTER) || input.wasPressed(Keys.NUM_2)));
                 if (input.wasPressed(Keys.ENTER)) {
-                    game.startLevel(1);
-                    screen.setCurrentStatus(GameScreen.PLAY);
+                    startLevel(1);
                 } else if (input.wasPressed(Keys.NUM_2)){
-                    game.startLevel(2);
-                    screen.setCurrentStatus(GameScreen.PLAY);
+                    startLevel(2);
                 }
                 break;
 
             case GameScreen.PLAY:
-                currentFrame++;
-                game.update(input, screen, currentFrame);
+                if (input.wasPressed(Keys.P) || (pauseOnFocusLoss && !game.getClock().isPaused() && !hasFocus())) {
+                    setPaused(!game.getClock().isPaused());
+                }
+                if (game.getClock().isPaused()) {
+                    game.render(screen);
+                    screen.renderPauseText(GAME_PROPS, MESSAGE_PROPS);
+                    break;
+                }
+                timePlayFrame();
+                if (clockControls) {
+                    controlClock(input);
+                }
+                // hold backspace to rewind through recorded frames
+                if (input.isDown(Keys.BACKSPACE) && game.canRewind()) {
+                    currentFrame = game.rewind();
+                    if (pacer != null) {
+                        pacer.reset();
+                    }
+                    if (inputQueue != null) {
+                        inputQueue.skip(System.nanoTime());
+                    }
+                } else {
+                    playFrame(input);
+                }
+                game.render(screen);
+                if (screen.getCurrentStatus() != GameScreen.PLAY) {
+                    endPacing();
+                }
                 break;
 
             case GameScreen.GAME_OVER:
                 screen.renderGameEndScreen(GAME_PROPS, MESSAGE_PROPS, game, false);
                 if (input.wasPressed(Keys.SPACE)) {
                     resetToHome();
+                } else if (input.wasPressed(Keys.BACKSPACE) && game.canRewind()) {
+                    currentFrame = game.restoreCheckpoint();
+                    screen.setCurrentStatus(GameScreen.PLAY);
                 }
                 break;
 
@@ -68,13 +151,194 @@ public class ShadowDonkeyKong extends AbstractGame {
                 }
                 break;
         }
+        // a screen only stays the same if this frame drew the screen that will be shown next
+        idleFrame = status == screen.getCurrentStatus() && isStatic();
+        if (idleMode != null && !idleFrame && idleMode.wake() && reportIdle) {
+            System.out.println(idleMode.getReport());
+        }
+    }
+
+    /**
+     * Checks whether the current screen only changes on input: the home screen once the game has
+     * loaded, the end screens, and a paused game.
+     *
+     * @return True if nothing on the screen moves by itself.
+     */
+    private boolean isStatic() {
+        switch (screen.getCurrentStatus()) {
+            case GameScreen.HOME:
+                return preloader == null || preloader.isDone();
+            case GameScreen.PLAY:
+                return game.getClock().isPaused();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Checks whether the game window has the keyboard focus.
+     *
+     * @return True if the window is focused.
+     */
+    private static boolean hasFocus() {
+        return GLFW.glfwGetWindowAttrib(GLFW.glfwGetCurrentContext(), GLFW.GLFW_FOCUSED) == GLFW.GLFW_TRUE;
+    }
+
+    /**
+     * Pauses or resumes play. Nothing is simulated while paused. On resuming, the time spent paused is
+     * not caught up, and keys pressed while paused are not played.
+     *
+     * @param paused True to pause, false to resume.
+     */
+    private void setPaused(boolean paused) {
+        game.getClock().setPaused(paused);
+        startupTimer.pause();
+        if (!paused) {
+            if (pacer != null) {
+                pacer.reset();
+            }
+            if (inputQueue != null) {
+                inputQueue.skip(System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Loads more of the game within this frame's budget, and reports the startup time once loading
+     * is done. With the {@code startup.exitWhenReady} system property set, the game then closes, so
+     * that a training run can record the classes used to start up in a class-data sharing archive.
+     *
+     * @param starting True if a level is about to start, so the sprites left must be loaded now.
+     * @return The fraction of the game loaded, from 0 to 1.
+     */
+    private double preload(boolean starting) {
+        if (preloader == null || preloader.isDone()) {
+            return 1;
+        }
+        if (starting) {
+            preloader.finish();
+        }
+        if (preloader.advance(preloadBudgetNanos)) {
+            startupTimer.reached("loaded");
+            if (reportStartup) {
+                System.out.println(startupTimer.getReport());
+            }
+            if (Boolean.getBoolean("startup.exitWhenReady")) {
+                Window.close();
+            }
+        }
+        return preloader.getProgress();
+    }
+
+    /**
+     * Measures the frame that is starting, and prints the startup report once the first minute of
+     * play has been measured.
+     */
+    private void timePlayFrame() {
+        startupTimer.reached("first play frame");
+        if (startupTimer.framePlayed(System.nanoTime()) && reportStartup) {
+            System.out.println(startupTimer.getReport());
+        }
+    }
+
+    /**
+     * Starts a level from the home screen at the configured speed.
+     *
+     * @param levelId The level to start.
+     */
+    private void startLevel(int levelId) {
+        game.startLevel(levelId);
+        game.getClock().setTimeScale(timeScale);
+        screen.setCurrentStatus(GameScreen.PLAY);
+    }
+
+    /**
+     * Halves or doubles the speed of the game with minus and equals, for debugging.
+     *
+     * @param input The current mouse/keyboard input.
+     */
+    private void controlClock(Input input) {
+        GameClock clock = game.getClock();
+        if (input.wasPressed(Keys.MINUS)) {
+            clock.setTimeScale(clock.getTimeScale() / 2);
+        } else if (input.wasPressed(Keys.EQUAL)) {
+            clock.setTimeScale(clock.getTimeScale() * 2);
+        }
+    }
+
+    /**
+     * Runs the simulation ticks of one frame: one tick normally, or a few more when the frame pacer
+     * says the game fell behind, scaled by the speed of the level's clock. Extra ticks stop early
+     * if the level ends.
+     *
+     * @param input The current mouse/keyboard input.
+     */
+    private void playFrame(Input input) {
+        long now = System.nanoTime();
+        int realTicks = 1;
+        if (pacer != null) {
+            realTicks = pacer.beginFrame(now);
+            game.setShedLevel(pacer.getShedLevel());
+        }
+        int ticks = game.getClock().ticksFor(realTicks);
+        if (inputQueue != null) {
+            playQueuedFrame(now, realTicks, ticks);
+            return;
+        }
+        for (int tick = 0; tick < ticks && screen.getCurrentStatus() == GameScreen.PLAY; tick++) {
+            currentFrame++;
+            game.update(input, screen, currentFrame);
+        }
+    }
+
+    /**
+     * Runs the simulation ticks of one frame with the buttons from the input queue. When a frame runs
+     * several ticks, they stand for evenly spaced moments ending now, and each tick only sees the key
+     * changes that arrived before its moment, so a late frame replays presses in the ticks they fell in.
+     *
+     * @param now       The time the frame started, from {@link System#nanoTime()}.
+     * @param realTicks The number of ticks of real time the frame stands for.
+     * @param ticks     The number of ticks to run.
+     */
+    private void playQueuedFrame(long now, int realTicks, int ticks) {
+        if (!inputInstalled) {
+            // the window only exists once the game loop is running
+            inputQueue.install(GLFW.glfwGetCurrentContext());
+            inputInstalled = true;
+        }
+        // the previous frame has been swapped to the screen by the time this one starts
+        inputQueue.framePresented(now);
+        // at other speeds than normal the ticks are spread over the real time instead
+        long tickNanos = realTicks * (1_000_000_000L / GameClock.TICKS_PER_SECOND) / Math.max(1, ticks);
+        for (int tick = 0; tick < ticks && screen.getCurrentStatus() == GameScreen.PLAY; tick++) {
+            currentFrame++;
+            game.update(inputQueue.nextTick(now - (ticks - 1 - tick) * tickNanos), screen, currentFrame);
+        }
+    }
+
+    /**
+     * Stops pacing when play stops, so that time spent on other screens is not caught up later,
+     * and prints the pacing counters and input latencies if asked to.
+     */
+    private void endPacing() {
+        startupTimer.pause();
+        if (pacer != null) {
+            pacer.reset();
+            if (reportPacing) {
+                System.out.println("Frame pacing: " + pacer.getReport());
+            }
+        }
+        if (inputQueue != null && reportInput) {
+            System.out.print(inputQueue.getReport());
+        }
     }
 
     /**
-     * Resets the game state to the home screen.
+     * Leaves the run that was played and resets the game state to the home screen.
      * Resets the current frame count and the total game score.
      */
     private void resetToHome() {
+        game.leaveRun();
         screen.setCurrentStatus(GameScreen.HOME);
         currentFrame = 0;
         game.setTotalScore(0);
@@ -89,9 +353,10 @@ public class ShadowDonkeyKong extends AbstractGame {
      * @param args Command-line arguments (not used in this game).
      */
     public static void main(String[] args) {
-        Properties gameProps = IOUtils.readPropertiesFile("res/app.properties");
+        Properties gameProps = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
         Properties messageProps = IOUtils.readPropertiesFile("res/message.properties");
         ShadowDonkeyKong game = new ShadowDonkeyKong(gameProps, messageProps);
         game.run();
+        game.game.close();
     }
 }
@@ -1,15 +1,16 @@
 import bagel.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 /**
  * Represents a SmartMonkey enemy that can move along a predefined route and shoot bananas periodically.
- * Extends Monkey and implements Shootable with Banana as the type.
+ * Extends ThrowingMonkey, which throws the bananas.
  */
-public class SmartMonkey extends Monkey implements Shootable<Banana> {
+public class SmartMonkey extends ThrowingMonkey {
     private static final Image SMART_MONKEY_RIGHT = new Image("res/intelli_monkey_right.png");
     private static final Image SMART_MONKEY_LEFT = new Image("res/intelli_monkey_left.png");
-    private final ArrayList<Banana> bananas = new ArrayList<>();
-    private int lastShotFrame = 0;
+    private static final CollisionMask SMART_MONKEY_RIGHT_MASK = CollisionMask.load("res/intelli_monkey_right.png");
+    private static final CollisionMask SMART_MONKEY_LEFT_MASK = CollisionMask.load("res/intelli_monkey_left.png");
+    private int lastShotTick = 0;
     private static final int SHOOT_DELAY = 300;
 
     /**
@@ -26,60 +27,61 @@ public class SmartMonkey extends Monkey implements Shootable<Banana> {
     }
 
     /**
-     * Updates the SmartMonkey’s state: moves it, potentially shoots, and updates all bananas.
+     * Moves the monkey and its bananas, and decides whether it is time to shoot.
      *
-     * @param currentFrame The current game frame count used to control shooting delay.
+     * @param tick          The current tick of the level's clock, used to control shooting delay.
+     * @param marioX        The horizontal position of Mario, not used by this monkey.
+     * @param marioPlatform The platform Mario is on, not used by this monkey.
      */
-    public void update(int currentFrame) {
+    @Override
+    public void think(int tick, double marioX, int marioPlatform) {
         move();
-        if (currentFrame - lastShotFrame >= SHOOT_DELAY) {
-            shoot(isFacingLeft());
-            lastShotFrame = currentFrame;
-        }
-        for (Banana banana : bananas) {
-            banana.move();
+        if (tick - lastShotTick >= SHOOT_DELAY) {
+            // the banana is thrown when the monkey acts later this tick
+            planShot();
+            lastShotTick = tick;
         }
+        moveBananas();
     }
 
     /**
-     * Draws the SmartMonkey and all bananas it has shot if not destroyed.
+     * Returns the image representing the SmartMonkey, based on its facing direction.
+     *
+     * @return The appropriate Image
      */
-    public void draw() {
-        if (!isDestroyed()){
-            getImage().draw(x, y);
-            for (Banana banana : bananas) {
-                banana.draw();
-            }
-        }
+    public Image getImage() {
+        return (isFacingLeft() ? SMART_MONKEY_LEFT : SMART_MONKEY_RIGHT);
     }
 
     /**
-     * Shoots a banana in the direction the monkey is currently facing.
+     * Returns the solid pixels of the SmartMonkey facing its current direction.
      *
-     * @param facingLeft Direction in which to shoot the banana.
-     * @return Banana object.
+     * @return The collision mask.
      */
-    public Banana shoot(boolean facingLeft) {
-        Banana banana = new Banana(this.x, this.y, facingLeft);
-        bananas.add(banana);
-        return banana;
+    @Override
+    public CollisionMask getMask() {
+        return isFacingLeft() ? SMART_MONKEY_LEFT_MASK : SMART_MONKEY_RIGHT_MASK;
     }
 
     /**
-     * Returns the list of bananas currently managed by SmartMonkey.
+     * Writes the monkey's state, active bananas and shooting timer to the snapshot buffer.
      *
-     * @return An ArrayList of Banana objects.
+     * @param buffer The buffer to write the state to.
      */
-    public ArrayList<Banana> getBananas() {
-        return bananas;
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.putInt(lastShotTick);
     }
 
     /**
-     * Returns the image representing the SmartMonkey, based on its facing direction.
+     * Restores the monkey's state, active bananas and shooting timer from the snapshot buffer.
      *
-     * @return The appropriate Image
+     * @param buffer The buffer to read the state from.
      */
-    public Image getImage() {
-        return (isFacingLeft() ? SMART_MONKEY_LEFT : SMART_MONKEY_RIGHT);
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        lastShotTick = buffer.getInt();
     }
 }
@@ -0,0 +1,83 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed-size ring buffer of game state snapshots stored off-heap.
+ * Each recorded frame gets its own preallocated slot in a single direct buffer, so recording
+ * and restoring a frame never allocates. Once full, the oldest frame is overwritten.
+ */
+public class SnapshotBuffer {
+    private final ByteBuffer[] slots;
+    private final int[] frames;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Constructs a snapshot buffer holding up to the given number of frames.
+     *
+     * @param capacity  The number of frames kept before the oldest is overwritten.
+     * @param slotBytes The maximum size in bytes of a single snapshot.
+     */
+    public SnapshotBuffer(int capacity, int slotBytes) {
+        ByteBuffer storage = ByteBuffer.allocateDirect(capacity * slotBytes);
+        this.slots = new ByteBuffer[capacity];
+        this.frames = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = storage.slice(i * slotBytes, slotBytes);
+        }
+    }
+
+    /**
+     * Records the state of the given object as the newest frame.
+     *
+     * @param frame The frame number the state belongs to.
+     * @param state The object to snapshot.
+     */
+    public void record(int frame, Snapshottable state) {
+        ByteBuffer slot = slots[head];
+        slot.clear();
+        state.writeState(slot);
+        slot.flip();
+        frames[head] = frame;
+
+        head = (head + 1) % slots.length;
+        size = Math.min(size + 1, slots.length);
+    }
+
+    /**
+     * Discards the newest frames and restores the state of the frame that is then the newest.
+     * At least one frame is always kept so that rewinding can stop at the oldest frame.
+     *
+     * @param framesBack The number of frames to step back.
+     * @param state      The object to restore the state into.
+     * @return The frame number of the restored frame, or -1 if nothing was recorded.
+     */
+    public int restore(int framesBack, Snapshottable state) {
+        if (size == 0) {
+            return -1;
+        }
+        int dropped = Math.min(framesBack, size - 1);
+        head = Math.floorMod(head - dropped, slots.length);
+        size -= dropped;
+
+        int newest = Math.floorMod(head - 1, slots.length);
+        ByteBuffer slot = slots[newest];
+        slot.rewind();
+        state.readState(slot);
+        return frames[newest];
+    }
+
+    /**
+     * Removes all recorded frames.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * @return The number of frames currently recorded.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,21 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for objects whose mutable state can be saved to and restored from a binary snapshot.
+ * Implementations must read back exactly the fields they write, in the same order.
+ */
+public interface Snapshottable {
+    /**
+     * Writes the current state of the object to the buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    void writeState(ByteBuffer buffer);
+
+    /**
+     * Restores the state of the object from the buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    void readState(ByteBuffer buffer);
+}
@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the live game state to any number of spectators over TCP.
+ * The game thread only serialises the state once per tick into a shared buffer, so its cost does
+ * not depend on the number of spectators. A single selector thread then sends each spectator the
+ * bytes that changed since the last frame it was sent. Since TCP delivers in order, that frame is
+ * the one the spectator has. A spectator whose outbound buffer is still half full misses frames and
+ * gets a full keyframe once it has caught up.
+ *
+ * Each message is a type byte (0 for a keyframe, 1 for a delta), the frame number and the payload
+ * length, followed by the payload. A keyframe payload is the full state. A delta payload is a list
+ * of changed runs, each a skipped byte count, a run length and the new bytes of the run.
+ */
+public class SpectatorServer implements Runnable {
+    private static final byte KEYFRAME = 0;
+    private static final byte DELTA = 1;
+    private static final int HEADER_BYTES = 9;
+    private static final int RUN_HEADER_BYTES = 4;
+
+    private final int stateBytes;
+    private final int outboundBytes;
+    private final int maxClients;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    // written by the game thread, guarded by the sequence number as a seqlock, with fences keeping the
+    // plain accesses to the frame between the two sequence accesses on both sides
+    private final ByteBuffer published;
+    private volatile long publishedSequence = 0;
+    private int publishedFrame;
+    private int publishedLength;
+
+    // owned by the selector thread
+    private final byte[] current;
+    private int currentFrame;
+    private int currentLength;
+    private long currentSequence = 0;
+    private int clientCount = 0;
+
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong publishNanos = new AtomicLong();
+
+    /**
+     * A connected spectator with the last state it was sent and its pending outbound bytes.
+     */
+    private static class Client {
+        private final SocketChannel channel;
+        private final byte[] baseline;
+        private int baselineLength = 0;
+        private final ByteBuffer outbound;
+        private boolean needsKeyframe = true;
+
+        private Client(SocketChannel channel, int stateBytes, int outboundBytes) {
+            this.channel = channel;
+            this.baseline = new byte[stateBytes];
+            this.outbound = ByteBuffer.allocateDirect(outboundBytes);
+        }
+    }
+
+    /**
+     * Opens the spectator server on the given port. The server starts accepting spectators
+     * once {@link #start()} is called.
+     *
+     * @param port          The TCP port to listen on.
+     * @param stateBytes    The maximum size in bytes of a serialised game state.
+     * @param outboundBytes The size in bytes of each spectator's outbound buffer.
+     * @param maxClients    The maximum number of spectators connected at once.
+     * @throws IOException If the server socket cannot be opened.
+     */
+    public SpectatorServer(int port, int stateBytes, int outboundBytes, int maxClients) throws IOException {
+        this.stateBytes = stateBytes;
+        this.outboundBytes = outboundBytes;
+        this.maxClients = maxClients;
+        this.published = ByteBuffer.allocate(stateBytes);
+        this.current = new byte[stateBytes];
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts the selector thread as a daemon thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "spectator-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Publishes the game state of a frame to all spectators. Called by the game thread once per tick.
+     *
+     * @param frame The frame number of the state.
+     * @param state The game state to publish.
+     */
+    public void publish(int frame, Snapshottable state) {
+        long start = System.nanoTime();
+        long sequence = publishedSequence;
+        publishedSequence = sequence + 1;
+        // the frame must not be written before the odd sequence is seen
+        VarHandle.storeStoreFence();
+        published.clear();
+        state.writeState(published);
+        publishedFrame = frame;
+        publishedLength = published.position();
+        publishedSequence = sequence + 2;
+        selector.wakeup();
+        publishNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Runs the selector loop, accepting spectators, encoding new frames and flushing outbound buffers.
+     */
+    @Override
+    public void run() {
+        try {
+            while (serverChannel.isOpen()) {
+                selector.select();
+                boolean newFrame = copyPublishedFrame();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(key);
+                    }
+                }
+
+                if (newFrame) {
+                    for (SelectionKey key : selector.keys()) {
+                        if (key.isValid() && key.attachment() instanceof Client) {
+                            encodeFrame((Client) key.attachment());
+                            flush(key);
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Copies the newest published frame, retrying if the game thread wrote it during the copy.
+     *
+     * @return True if a frame newer than the previous copy was copied.
+     */
+    private boolean copyPublishedFrame() {
+        while (true) {
+            long sequence = publishedSequence;
+            if (sequence == currentSequence) {
+                return false;
+            }
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int length = publishedLength;
+            int frame = publishedFrame;
+            published.get(0, current, 0, length);
+            // the frame must be read before the sequence is checked again
+            VarHandle.loadLoadFence();
+            if (publishedSequence == sequence) {
+                currentLength = length;
+                currentFrame = frame;
+                currentSequence = sequence;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Accepts a waiting spectator, or turns it away if the server is full.
+     *
+     * @throws IOException If accepting fails.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (clientCount >= maxClients) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Client(channel, stateBytes, outboundBytes));
+        clientCount++;
+    }
+
+    /**
+     * Appends the current frame to a spectator's outbound buffer, as a delta against the last frame
+     * it was sent or as a keyframe. The frame is dropped if the spectator is still behind.
+     *
+     * @param client The spectator to encode the frame for.
+     */
+    private void encodeFrame(Client client) {
+        ByteBuffer out = client.outbound;
+        int worstCase = HEADER_BYTES + currentLength * (RUN_HEADER_BYTES + 1);
+        if (out.position() > outboundBytes / 2 || out.remaining() < worstCase) {
+            client.needsKeyframe = true;
+            framesDropped.incrementAndGet();
+            return;
+        }
+
+        boolean keyframe = client.needsKeyframe || client.baselineLength != currentLength;
+        int headerStart = out.position();
+        out.position(headerStart + HEADER_BYTES);
+        if (keyframe) {
+            out.put(current, 0, currentLength);
+        } else {
+            encodeRuns(client.baseline, out);
+        }
+        int payloadLength = out.position() - headerStart - HEADER_BYTES;
+        out.put(headerStart, keyframe ? KEYFRAME : DELTA);
+        out.putInt(headerStart + 1, currentFrame);
+        out.putInt(headerStart + 5, payloadLength);
+
+        System.arraycopy(current, 0, client.baseline, 0, currentLength);
+        client.baselineLength = currentLength;
+        client.needsKeyframe = false;
+    }
+
+    /**
+     * Writes the runs of bytes in the current frame that differ from the baseline.
+     *
+     * @param baseline The last frame the spectator was sent, of the same length as the current one.
+     * @param out      The buffer to write the runs to.
+     */
+    private void encodeRuns(byte[] baseline, ByteBuffer out) {
+        int previousEnd = 0;
+        int i = 0;
+        while (i < currentLength) {
+            if (current[i] == baseline[i]) {
+                i++;
+                continue;
+            }
+            int runStart = i;
+            while (i < currentLength && current[i] != baseline[i]) {
+                i++;
+            }
+            out.putShort((short) (runStart - previousEnd));
+            out.putShort((short) (i - runStart));
+            out.put(current, runStart, i - runStart);
+            previousEnd = i;
+        }
+    }
+
+    /**
+     * Writes as much of a spectator's outbound buffer as the socket accepts, and only asks to be
+     * told when the socket is writable again if bytes are left over.
+     *
+     * @param key The selection key of the spectator.
+     */
+    private void flush(SelectionKey key) {
+        Client client = (Client) key.attachment();
+        ByteBuffer out = client.outbound;
+        try {
+            out.flip();
+            bytesSent.addAndGet(client.channel.write(out));
+            out.compact();
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException ex) {
+            disconnect(key);
+        }
+    }
+
+    /**
+     * Reads and discards anything a spectator sends, and disconnects it once it closes the connection.
+     *
+     * @param key The selection key of the spectator.
+     */
+    private void read(SelectionKey key) {
+        try {
+            discard.clear();
+            if (((SocketChannel) key.channel()).read(discard) < 0) {
+                disconnect(key);
+            }
+        } catch (IOException ex) {
+            disconnect(key);
+        }
+    }
+
+    /**
+     * Closes the connection to a spectator.
+     *
+     * @param key The selection key of the spectator.
+     */
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        clientCount--;
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            // already closed by the spectator
+        }
+    }
+
+    /**
+     * @return The total number of bytes sent to all spectators.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return The total number of frames skipped for spectators that fell behind.
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * @return The total time in nanoseconds the game thread spent publishing frames.
+     */
+    public long getPublishNanos() {
+        return publishNanos.get();
+    }
+}
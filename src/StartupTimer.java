@@ -0,0 +1,89 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long the game takes to start: the time from the process being launched to each stage
+ * of starting up, then how long each frame takes over the first minute of play, while classes are still
+ * being loaded and compiled.
+ */
+public class StartupTimer {
+
+    private final long launchMillis;
+    private final long[] frameNanos;
+    private final List<String> stages = new ArrayList<>();
+    private final List<Long> stageMillis = new ArrayList<>();
+    private int frameCount = 0;
+    private long lastFrameNanos = -1;
+
+    /**
+     * Starts timing from when the process was launched.
+     *
+     * @param measuredFrames The number of frames of play to measure.
+     */
+    public StartupTimer(int measuredFrames) {
+        this.launchMillis = ProcessHandle.current().info().startInstant()
+                .map(instant -> instant.toEpochMilli())
+                .orElse(ManagementFactory.getRuntimeMXBean().getStartTime());
+        this.frameNanos = new long[measuredFrames];
+    }
+
+    /**
+     * Records that a stage of starting up has been reached. Only the first time each stage is reached counts.
+     *
+     * @param stage The name of the stage.
+     */
+    public void reached(String stage) {
+        if (!stages.contains(stage)) {
+            stages.add(stage);
+            stageMillis.add(System.currentTimeMillis() - launchMillis);
+        }
+    }
+
+    /**
+     * Records the start of a frame of play, measuring the frame before it.
+     *
+     * @param nowNanos The current time from {@link System#nanoTime()}.
+     * @return True if this frame filled the measured frames, so the report is complete.
+     */
+    public boolean framePlayed(long nowNanos) {
+        if (frameCount == frameNanos.length) {
+            return false;
+        }
+        if (lastFrameNanos >= 0) {
+            frameNanos[frameCount++] = nowNanos - lastFrameNanos;
+        }
+        lastFrameNanos = nowNanos;
+        return frameCount == frameNanos.length;
+    }
+
+    /**
+     * Stops measuring the frame in progress, such as when play stops for a menu, so the time away
+     * from play is not counted as one long frame.
+     */
+    public void pause() {
+        lastFrameNanos = -1;
+    }
+
+    /**
+     * Describes the time to each stage and the frame times measured so far.
+     *
+     * @return The startup report.
+     */
+    public String getReport() {
+        StringBuilder text = new StringBuilder("Startup:");
+        for (int i = 0; i < stages.size(); i++) {
+            text.append(String.format(" %s %d ms,", stages.get(i), stageMillis.get(i)));
+        }
+        if (frameCount == 0) {
+            text.setLength(text.length() - 1);
+            return text.toString();
+        }
+        long[] sorted = Arrays.copyOf(frameNanos, frameCount);
+        Arrays.sort(sorted);
+        text.append(String.format(" first %d frames p50 %.2f ms, p99 %.2f ms, max %.2f ms", frameCount,
+                sorted[frameCount / 2] / 1e6, sorted[(int) (frameCount * 0.99)] / 1e6, sorted[frameCount - 1] / 1e6));
+        return text.toString();
+    }
+}
@@ -0,0 +1,143 @@
+import bagel.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A monkey that throws bananas the way it is facing. A subclass decides in {@link #think} when to throw,
+ * and the banana is thrown in {@link #act(int)}, once every monkey has thought, so that monkeys can
+ * think in parallel while bananas are still thrown in a fixed order.
+ */
+public abstract class ThrowingMonkey extends Monkey implements Shootable<Banana> {
+    private final ArrayList<Banana> bananas = new ArrayList<>();
+    private boolean shotDue = false;
+
+    /**
+     * Constructs a ThrowingMonkey with given position, direction, movement route, and platform references.
+     *
+     * @param x          The initial x-coordinate of the monkey.
+     * @param y          The initial y-coordinate of the monkey.
+     * @param facingLeft Whether the monkey starts by facing left.
+     * @param route      An array of movement distances per segment.
+     * @param platforms  The platforms available in the level.
+     */
+    public ThrowingMonkey(double x, double y, boolean facingLeft, int[] route, Platform[] platforms) {
+        super(x, y, facingLeft, route, platforms);
+    }
+
+    /**
+     * Has the monkey throw a banana when it next acts.
+     */
+    protected void planShot() {
+        shotDue = true;
+    }
+
+    /**
+     * Moves every banana the monkey has thrown.
+     */
+    protected void moveBananas() {
+        for (Banana banana : bananas) {
+            banana.move();
+        }
+    }
+
+    /**
+     * Throws a banana if one was planned this tick. The new banana takes its first step straight away,
+     * like the bananas already thrown.
+     *
+     * @param tick The current tick of the level's clock.
+     */
+    @Override
+    public void act(int tick) {
+        if (shotDue) {
+            shoot(isFacingLeft()).move();
+            shotDue = false;
+        }
+    }
+
+    /**
+     * Draws the monkey's walk at a tick and all bananas it has thrown, if it is not destroyed.
+     *
+     * @param tick The current tick.
+     */
+    @Override
+    public void draw(int tick) {
+        if (!isDestroyed()) {
+            super.draw(tick);
+            for (Banana banana : bananas) {
+                banana.draw();
+            }
+        }
+    }
+
+    /**
+     * Throws a banana in the given direction.
+     *
+     * @param facingLeft Direction in which to throw the banana.
+     * @return The banana thrown.
+     */
+    @Override
+    public Banana shoot(boolean facingLeft) {
+        Banana banana = new Banana(this.x, this.y, facingLeft);
+        bananas.add(banana);
+        return banana;
+    }
+
+    /**
+     * Returns the bananas the monkey has thrown.
+     *
+     * @return The bananas thrown, active or not.
+     */
+    @Override
+    public ArrayList<Banana> getBananas() {
+        return bananas;
+    }
+
+    /**
+     * Writes the monkey's state and its active bananas to the snapshot buffer.
+     * Inactive bananas are left out since they no longer move, draw or collide.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        int activeCount = 0;
+        for (Banana banana : bananas) {
+            if (banana.isActive()) {
+                activeCount++;
+            }
+        }
+        buffer.putInt(activeCount);
+        for (Banana banana : bananas) {
+            if (banana.isActive()) {
+                buffer.put((byte) (banana.isFacingLeft() ? 1 : 0));
+                banana.writeState(buffer);
+            }
+        }
+    }
+
+    /**
+     * Restores the monkey's state and its active bananas from the snapshot buffer. The bananas already
+     * thrown are reused in order, new ones are only created if there are too few, and the rest are left
+     * inactive, so restoring a snapshot every frame does not allocate.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        int activeCount = buffer.getInt();
+        for (int i = 0; i < activeCount; i++) {
+            boolean facingLeft = buffer.get() != 0;
+            if (i == bananas.size()) {
+                bananas.add(new Banana(0, 0, facingLeft));
+            }
+            Banana banana = bananas.get(i);
+            banana.setFacingLeft(facingLeft);
+            banana.readState(buffer);
+        }
+        for (int i = activeCount; i < bananas.size(); i++) {
+            bananas.get(i).setActive(false);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.imageio.ImageIO;
+
+/**
+ * Answers balancing questions from the traces written by {@link TraceRecorder}: where Mario spends his
+ * time on the playfield, where he dies, and how long each level takes to clear.
+ *
+ * Traces are scanned in parallel on the common fork/join pool, each thread with its own inflater and
+ * buffers. Each trace is memory-mapped, and only the level and position columns of each block are
+ * inflated; the other columns are skipped by their compressed length without being read.
+ */
+public class TraceQuery {
+
+    private static final int TICKS_PER_SECOND = 60;
+    private static final int MAX_LEVELS = 256;
+    private static final int MAX_CLEAR_SECONDS = 3600;
+    private static final int TOP_DEATHS = 10;
+    private static final int[] SCANNED_COLUMNS = {TraceRecorder.LEVEL, TraceRecorder.X, TraceRecorder.Y};
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int cellSize;
+    private final int gridWidth;
+    private final int gridHeight;
+
+    /**
+     * The inflater and buffers one scanning thread reuses for every block.
+     */
+    private static class Scratch {
+        private final Inflater inflater = new Inflater();
+        private final ByteBuffer[] columns = new ByteBuffer[TraceRecorder.COLUMNS];
+        private byte[] levels = new byte[0];
+        private float[] xs = new float[0];
+        private float[] ys = new float[0];
+    }
+
+    /**
+     * What was found in some traces, filled by one thread and then merged with the results of the others.
+     */
+    private class Result {
+        private final long[] positions = new long[gridWidth * gridHeight];
+        private final long[] deaths = new long[gridWidth * gridHeight];
+        // seconds taken to clear each level, counted per whole second
+        private final long[][] clearSeconds = new long[MAX_LEVELS][];
+        private final long[] outcomes = new long[3];
+        private long traces = 0;
+        private long ticks = 0;
+        private long bytes = 0;
+        private long inflatedBytes = 0;
+        private long corrupt = 0;
+
+        /**
+         * Adds the results of another thread to these.
+         *
+         * @param other The other results.
+         */
+        private void merge(Result other) {
+            add(positions, other.positions);
+            add(deaths, other.deaths);
+            add(outcomes, other.outcomes);
+            for (int level = 0; level < MAX_LEVELS; level++) {
+                if (other.clearSeconds[level] != null) {
+                    add(clearTimes(level), other.clearSeconds[level]);
+                }
+            }
+            traces += other.traces;
+            ticks += other.ticks;
+            bytes += other.bytes;
+            inflatedBytes += other.inflatedBytes;
+            corrupt += other.corrupt;
+        }
+
+        /**
+         * Returns the distribution of clear times of a level, creating it when first needed.
+         *
+         * @param level The level number.
+         * @return The number of clears taking each whole number of seconds.
+         */
+        private long[] clearTimes(int level) {
+            if (clearSeconds[level] == null) {
+                clearSeconds[level] = new long[MAX_CLEAR_SECONDS + 1];
+            }
+            return clearSeconds[level];
+        }
+
+        /**
+         * Counts a level that was cleared.
+         *
+         * @param level The level number.
+         * @param ticks The number of ticks it took.
+         */
+        private void addClear(int level, int ticks) {
+            clearTimes(level)[Math.min(ticks / TICKS_PER_SECOND, MAX_CLEAR_SECONDS)]++;
+        }
+    }
+
+    /**
+     * Creates a query over a playfield of the given size.
+     *
+     * @param width    The width of the playfield in pixels.
+     * @param height   The height of the playfield in pixels.
+     * @param cellSize The size in pixels of each square heatmap cell.
+     */
+    public TraceQuery(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.gridWidth = (width + cellSize - 1) / cellSize;
+        this.gridHeight = (height + cellSize - 1) / cellSize;
+    }
+
+    /**
+     * Scans traces in parallel.
+     *
+     * @param files The trace files.
+     * @return The merged results of every trace.
+     */
+    private Result scanAll(List<Path> files) {
+        return files.parallelStream().collect(Result::new, this::scan, Result::merge);
+    }
+
+    /**
+     * Scans one trace, adding what it shows to the results. A trace that cannot be read is counted as corrupt.
+     *
+     * @param result The results to add to.
+     * @param file   The trace file.
+     */
+    private void scan(Result result, Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TraceRecorder.HEADER_BYTES) {
+                result.corrupt++;
+                return;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != TraceRecorder.MAGIC || map.getInt(8) != TraceRecorder.COLUMNS) {
+                result.corrupt++;
+                return;
+            }
+            scanBlocks(result, map, findBlocks(map));
+            result.bytes += size;
+            result.traces++;
+        } catch (IOException | DataFormatException | IndexOutOfBoundsException ex) {
+            result.corrupt++;
+        }
+    }
+
+    /**
+     * Finds the blocks of a trace and how it ended, from the footer if the trace was finished, or by
+     * walking the blocks up to the last whole one if it was cut short.
+     *
+     * @param map The mapped trace file.
+     * @return The offset of each block, followed by the outcome.
+     */
+    private static long[] findBlocks(ByteBuffer map) {
+        int size = map.capacity();
+        boolean finished = size >= TraceRecorder.HEADER_BYTES + TraceRecorder.TRAILER_BYTES
+                && map.getInt(size - 4) == TraceRecorder.MAGIC;
+        if (finished) {
+            int footer = (int) map.getLong(size - TraceRecorder.TRAILER_BYTES);
+            int count = map.getInt(footer);
+            long[] blocks = new long[count + 1];
+            for (int i = 0; i < count; i++) {
+                blocks[i] = map.getLong(footer + 4 + i * 12);
+            }
+            byte outcome = map.get(footer + 4 + count * 12);
+            blocks[count] = outcome <= TraceRecorder.GAME_OVER && outcome >= 0 ? outcome : TraceRecorder.UNFINISHED;
+            return blocks;
+        }
+
+        long[] blocks = new long[16];
+        int count = 0;
+        int position = TraceRecorder.HEADER_BYTES;
+        while (position + TraceRecorder.BLOCK_HEADER_BYTES <= size) {
+            int length = TraceRecorder.BLOCK_HEADER_BYTES;
+            for (int column = 0; column < TraceRecorder.COLUMNS; column++) {
+                length += map.getInt(position + 4 + column * 4);
+            }
+            if (position + length > size) {
+                break;
+            }
+            if (count + 1 == blocks.length) {
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            }
+            blocks[count++] = position;
+            position += length;
+        }
+        blocks[count] = TraceRecorder.UNFINISHED;
+        return Arrays.copyOf(blocks, count + 1);
+    }
+
+    /**
+     * Inflates the level and position columns of each block and counts where Mario was, where he
+     * died and how long each level took.
+     *
+     * @param result The results to add to.
+     * @param map    The mapped trace file.
+     * @param blocks The offset of each block, followed by the outcome.
+     * @throws DataFormatException If a column is corrupt.
+     */
+    private void scanBlocks(Result result, ByteBuffer map, long[] blocks) throws DataFormatException {
+        int blockCount = blocks.length - 1;
+        int outcome = (int) blocks[blockCount];
+        Scratch scratch = SCRATCH.get();
+        ByteBuffer[] columns = scratch.columns;
+        int runLevel = -1;
+        int runTicks = 0;
+        float lastX = 0;
+        float lastY = 0;
+
+        for (int b = 0; b < blockCount; b++) {
+            int position = (int) blocks[b];
+            int ticks = map.getInt(position);
+            int data = position + TraceRecorder.BLOCK_HEADER_BYTES;
+            for (int column = 0, offset = data; column < TraceRecorder.COLUMNS; column++) {
+                int length = map.getInt(position + 4 + column * 4);
+                if (Arrays.binarySearch(SCANNED_COLUMNS, column) >= 0) {
+                    columns[column] = inflate(scratch.inflater, map, offset, length,
+                            ticks * TraceRecorder.COLUMN_BYTES[column], columns[column]);
+                    result.inflatedBytes += columns[column].limit();
+                }
+                offset += length;
+            }
+
+            // copying the columns into arrays in bulk keeps the loops below free of buffer bounds checks
+            if (scratch.xs.length < ticks) {
+                scratch.levels = new byte[ticks];
+                scratch.xs = new float[ticks];
+                scratch.ys = new float[ticks];
+            }
+            byte[] levels = scratch.levels;
+            float[] xs = scratch.xs;
+            float[] ys = scratch.ys;
+            columns[TraceRecorder.LEVEL].get(0, levels, 0, ticks);
+            columns[TraceRecorder.X].asFloatBuffer().get(0, xs, 0, ticks);
+            columns[TraceRecorder.Y].asFloatBuffer().get(0, ys, 0, ticks);
+
+            long[] positions = result.positions;
+            for (int tick = 0; tick < ticks; tick++) {
+                positions[cell(xs[tick], ys[tick])]++;
+            }
+            for (int tick = 0; tick < ticks; tick++) {
+                int level = levels[tick] & 0xFF;
+                if (level != runLevel) {
+                    if (runLevel >= 0) {
+                        result.addClear(runLevel, runTicks);
+                    }
+                    runLevel = level;
+                    runTicks = 0;
+                }
+                runTicks++;
+            }
+            if (ticks > 0) {
+                lastX = xs[ticks - 1];
+                lastY = ys[ticks - 1];
+            }
+            result.ticks += ticks;
+        }
+
+        if (outcome == TraceRecorder.WIN && runLevel >= 0) {
+            result.addClear(runLevel, runTicks);
+        } else if (outcome == TraceRecorder.GAME_OVER && runLevel >= 0) {
+            result.deaths[cell(lastX, lastY)]++;
+        }
+        result.outcomes[outcome]++;
+    }
+
+    /**
+     * Inflates one column of a block into a buffer, replacing the buffer if it is too small.
+     *
+     * @param inflater The inflater to use.
+     * @param map      The mapped trace file.
+     * @param offset   The offset of the compressed column.
+     * @param length   The compressed length of the column.
+     * @param size     The inflated size of the column.
+     * @param buffer   The buffer to inflate into, or null.
+     * @return The buffer holding the column.
+     * @throws DataFormatException If the column is corrupt.
+     */
+    private static ByteBuffer inflate(Inflater inflater, ByteBuffer map, int offset, int length, int size,
+                                      ByteBuffer buffer) throws DataFormatException {
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+        buffer.clear().limit(size);
+        inflater.reset();
+        inflater.setInput(map.slice(offset, length));
+        while (buffer.hasRemaining() && !inflater.finished()) {
+            if (inflater.inflate(buffer) == 0 && inflater.needsInput()) {
+                throw new DataFormatException("column ends early");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the heatmap cell a position falls in, clamped to the playfield.
+     *
+     * @param x The x-coordinate.
+     * @param y The y-coordinate.
+     * @return The index of the cell.
+     */
+    private int cell(float x, float y) {
+        int column = Math.max(0, Math.min(gridWidth - 1, (int) x / cellSize));
+        int row = Math.max(0, Math.min(gridHeight - 1, (int) y / cellSize));
+        return row * gridWidth + column;
+    }
+
+    /**
+     * Adds one array of counts to another.
+     *
+     * @param into  The counts added to.
+     * @param other The counts to add.
+     */
+    private static void add(long[] into, long[] other) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] += other[i];
+        }
+    }
+
+    /**
+     * Prints the outcomes, how long each level took to clear and the cells where Mario died most.
+     *
+     * @param result  The merged results.
+     * @param seconds How long the scan took.
+     */
+    private void print(Result result, double seconds) {
+        System.out.printf("Scanned %d traces (%d corrupt), %.1f hours of play, %.1f MB in %.2f s: %.0f MB/s read, "
+                        + "%.0f MB/s inflated%n", result.traces, result.corrupt,
+                (double) result.ticks / TICKS_PER_SECOND / 3600, result.bytes / 1e6, seconds,
+                result.bytes / 1e6 / seconds, result.inflatedBytes / 1e6 / seconds);
+        System.out.printf("Outcomes: %d won, %d game over, %d unfinished%n", result.outcomes[TraceRecorder.WIN],
+                result.outcomes[TraceRecorder.GAME_OVER], result.outcomes[TraceRecorder.UNFINISHED]);
+
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            long[] times = result.clearSeconds[level];
+            if (times != null) {
+                long count = Arrays.stream(times).sum();
+                System.out.printf("Level %d cleared %d times in seconds: min %d, median %d, p90 %d, max %d%n", level,
+                        count, percentile(times, count, 0), percentile(times, count, 0.5),
+                        percentile(times, count, 0.9), percentile(times, count, 1));
+            }
+        }
+
+        Integer[] cells = new Integer[result.deaths.length];
+        Arrays.setAll(cells, i -> i);
+        Arrays.sort(cells, (a, b) -> Long.compare(result.deaths[b], result.deaths[a]));
+        System.out.println("Most deaths:");
+        for (int i = 0; i < TOP_DEATHS && result.deaths[cells[i]] > 0; i++) {
+            int cell = cells[i];
+            System.out.printf("  %4d deaths around (%d, %d)%n", result.deaths[cell],
+                    cell % gridWidth * cellSize + cellSize / 2, cell / gridWidth * cellSize + cellSize / 2);
+        }
+    }
+
+    /**
+     * Returns a percentile of a distribution counted per whole second.
+     *
+     * @param counts   The number of values in each second.
+     * @param total    The number of values.
+     * @param fraction The percentile, from 0 for the smallest value to 1 for the largest.
+     * @return The second the percentile falls in.
+     */
+    private static int percentile(long[] counts, long total, double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int second = 0; second < counts.length; second++) {
+            seen += counts[second];
+            if (seen >= rank) {
+                return second;
+            }
+        }
+        return counts.length - 1;
+    }
+
+    /**
+     * Draws the heatmap, brighter where Mario spent more time and red where he died, on a log scale.
+     *
+     * @param result The merged results.
+     * @param file   The PNG file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeHeatmap(Result result, File file) throws IOException {
+        double maxPositions = Math.log1p(Arrays.stream(result.positions).max().orElse(0));
+        double maxDeaths = Math.log1p(Arrays.stream(result.deaths).max().orElse(0));
+        BufferedImage image = new BufferedImage(gridWidth, gridHeight, BufferedImage.TYPE_INT_RGB);
+        for (int cell = 0; cell < result.positions.length; cell++) {
+            int grey = maxPositions > 0 ? (int) (255 * Math.log1p(result.positions[cell]) / maxPositions) : 0;
+            int red = maxDeaths > 0 ? (int) (255 * Math.log1p(result.deaths[cell]) / maxDeaths) : 0;
+            int rgb = red > 0 ? (Math.max(grey, red) << 16) : (grey << 16 | grey << 8 | grey);
+            image.setRGB(cell % gridWidth, cell / gridWidth, rgb);
+        }
+        ImageIO.write(image, "png", file);
+    }
+
+    /**
+     * Scans every trace in a directory and prints what they show, optionally writing a heatmap.
+     * Usage: {@code TraceQuery [directory] [heatmap.png]}
+     *
+     * @param args The trace directory, by default the one in the config, and the heatmap file to write.
+     */
+    public static void main(String[] args) {
+        Properties props = IOUtils.readPropertiesFile(Game.CONFIG_FILE);
+        Path directory = Paths.get(args.length > 0 ? args[0] : props.getProperty("trace.directory"));
+        File[] found = directory.toFile().listFiles((dir, name) -> name.endsWith(TraceRecorder.SUFFIX));
+        List<Path> files = new ArrayList<>();
+        for (File file : found == null ? new File[0] : found) {
+            files.add(file.toPath());
+        }
+
+        TraceQuery query = new TraceQuery(Integer.parseInt(props.getProperty("window.width")),
+                Integer.parseInt(props.getProperty("window.height")),
+                Integer.parseInt(props.getProperty("trace.cellSize")));
+        long start = System.nanoTime();
+        Result result = query.scanAll(files);
+        query.print(result, (System.nanoTime() - start) / 1e9);
+        if (args.length > 1) {
+            try {
+                query.writeHeatmap(result, new File(args[1]));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                System.exit(-1);
+            }
+        }
+    }
+}
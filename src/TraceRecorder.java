@@ -0,0 +1,349 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Records Mario's state on every tick of a game to a trace file, for balancing the levels.
+ *
+ * A trace is stored by column rather than by tick: the ticks are split into blocks, and within a block
+ * each column, such as Mario's x-coordinate or the score, is a separate array of primitives compressed
+ * on its own. A query that only needs positions inflates the two position columns and skips the rest,
+ * and similar values next to each other in a column compress far better than whole ticks would.
+ *
+ * The game thread fills one block while a background thread compresses and writes the previous one,
+ * so recording a tick is a handful of stores. The file ends with an index of the blocks and how the game
+ * ended. A trace cut short by a crash has no index, and is read up to its last whole block instead.
+ *
+ * File layout: a header of {@link #HEADER_BYTES} bytes; blocks, each the number of ticks, the compressed
+ * length of every column, then the compressed columns in order; the footer, the number of blocks, the
+ * offset and ticks of each, and the outcome; and last the offset of the footer and the magic number.
+ */
+public class TraceRecorder implements Closeable {
+
+    /** Column of the level number, one byte per tick. */
+    public static final int LEVEL = 0;
+
+    /** Column of Mario's x-coordinate, one float per tick. */
+    public static final int X = 1;
+
+    /** Column of Mario's y-coordinate, one float per tick. */
+    public static final int Y = 2;
+
+    /** Column of how far Mario moved horizontally since the previous tick, one float per tick. */
+    public static final int VELOCITY_X = 3;
+
+    /** Column of Mario's vertical velocity, one float per tick. */
+    public static final int VELOCITY_Y = 4;
+
+    /** Column of {@link #ON_GROUND} and {@link #CLIMBING} flags, one byte per tick. */
+    public static final int FLAGS = 5;
+
+    /** Column of the weapon Mario holds, such as {@link #HAMMER}, one byte per tick. */
+    public static final int WEAPON = 6;
+
+    /** Column of the total score including the current level, one int per tick. */
+    public static final int SCORE = 7;
+
+    /** Column of the distance from Mario to the nearest enemy, one float per tick. */
+    public static final int NEAREST_ENEMY = 8;
+
+    /** Number of columns. */
+    public static final int COLUMNS = 9;
+
+    /** Size in bytes of one tick of each column. */
+    public static final int[] COLUMN_BYTES = {1, 4, 4, 4, 4, 1, 1, 4, 4};
+
+    /** Flag set when Mario is standing on a platform. */
+    public static final byte ON_GROUND = 1;
+
+    /** Flag set when Mario is climbing a ladder. */
+    public static final byte CLIMBING = 2;
+
+    /** Weapon value when Mario holds no weapon. */
+    public static final byte NO_WEAPON = 0;
+
+    /** Weapon value when Mario holds a hammer. */
+    public static final byte HAMMER = 1;
+
+    /** Weapon value when Mario holds a blaster. */
+    public static final byte BLASTER = 2;
+
+    /** Outcome of a trace that was not finished, such as when the game was closed mid-level. */
+    public static final byte UNFINISHED = 0;
+
+    /** Outcome of a game that was won. */
+    public static final byte WIN = 1;
+
+    /** Outcome of a game that was lost. */
+    public static final byte GAME_OVER = 2;
+
+    /** Magic number at the start and end of a trace file. */
+    public static final int MAGIC = 0x44_4B_54_52;
+
+    /** Size of the file header in bytes: magic, version, columns, ticks per block, then the start time. */
+    public static final int HEADER_BYTES = 24;
+
+    /** Size of the trailer at the end of a finished file: the footer offset and the magic number. */
+    public static final int TRAILER_BYTES = 12;
+
+    /** Size of the header of each block: the number of ticks and the compressed length of each column. */
+    public static final int BLOCK_HEADER_BYTES = 4 + 4 * COLUMNS;
+
+    /** File name extension of trace files. */
+    public static final String SUFFIX = ".dkt";
+
+    private static final int VERSION = 1;
+
+    private final int blockTicks;
+    private final FileChannel channel;
+    private final ExecutorService writer;
+    private final Deflater deflater;
+    private final Block[] blocks = new Block[2];
+    private final Future<?>[] pending = new Future<?>[2];
+    private int current = 0;
+    private double previousX = Double.NaN;
+    private boolean finished = false;
+
+    // owned by the writer thread
+    private ByteBuffer compressed;
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+    private long[] blockOffsets = new long[16];
+    private int[] blockSizes = new int[16];
+    private int blockCount = 0;
+    private long fileSize = HEADER_BYTES;
+
+    /**
+     * The columns of one block of ticks, filled on the game thread and written on the writer thread.
+     */
+    private class Block {
+        private final ByteBuffer[] columns = new ByteBuffer[COLUMNS];
+        private int ticks = 0;
+
+        private Block() {
+            for (int column = 0; column < COLUMNS; column++) {
+                columns[column] = ByteBuffer.allocate(blockTicks * COLUMN_BYTES[column]);
+            }
+        }
+    }
+
+    /**
+     * Creates a trace file and starts recording to it.
+     *
+     * @param file        The trace file, replaced if it exists.
+     * @param blockTicks  The number of ticks in each compressed block.
+     * @param compression The compression level from 1 (fastest) to 9 (smallest).
+     * @throws IOException If the file cannot be created.
+     */
+    public TraceRecorder(Path file, int blockTicks, int compression) throws IOException {
+        this.blockTicks = blockTicks;
+        this.blocks[0] = new Block();
+        this.blocks[1] = new Block();
+        this.deflater = new Deflater(compression);
+        this.compressed = ByteBuffer.allocate(blockTicks * 32);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(COLUMNS).putInt(blockTicks).putLong(System.currentTimeMillis());
+        header.flip();
+        channel.write(header, 0);
+        // not a daemon, so a finished trace is written out before the game exits
+        this.writer = Executors.newSingleThreadExecutor(task -> new Thread(task, "trace-writer"));
+    }
+
+    /**
+     * Starts a new trace in the directory named in the config, named after the current time.
+     *
+     * @param props The game properties containing the trace settings.
+     * @return The trace recorder.
+     * @throws IOException If the directory or the file cannot be created.
+     */
+    public static TraceRecorder start(Properties props) throws IOException {
+        Path directory = Paths.get(props.getProperty("trace.directory"));
+        Files.createDirectories(directory);
+        Path file = directory.resolve("trace-" + System.currentTimeMillis() + SUFFIX);
+        return new TraceRecorder(file, Integer.parseInt(props.getProperty("trace.blockTicks")),
+                Integer.parseInt(props.getProperty("trace.compression")));
+    }
+
+    /**
+     * Records the state of Mario after a tick. Called only by the game thread.
+     *
+     * @param level The level being played.
+     * @param score The total score including the score of the current level.
+     */
+    public void record(Level level, int score) {
+        if (finished) {
+            return;
+        }
+        Block block = blocks[current];
+        int tick = block.ticks;
+        Mario mario = level.getMario();
+        Weapon weapon = mario.getCurrentWeapon();
+        double x = mario.getX();
+        ByteBuffer[] columns = block.columns;
+        columns[LEVEL].put(tick, (byte) level.getLevelId());
+        columns[X].putFloat(tick * 4, (float) x);
+        columns[Y].putFloat(tick * 4, (float) mario.getY());
+        columns[VELOCITY_X].putFloat(tick * 4, Double.isNaN(previousX) ? 0 : (float) (x - previousX));
+        columns[VELOCITY_Y].putFloat(tick * 4, (float) mario.getVerticalVelocity());
+        columns[FLAGS].put(tick, (byte) ((mario.isOnGround() ? ON_GROUND : 0) | (mario.isClimbing() ? CLIMBING : 0)));
+        columns[WEAPON].put(tick, weapon instanceof Hammer ? HAMMER : weapon instanceof Blaster ? BLASTER : NO_WEAPON);
+        columns[SCORE].putInt(tick * 4, score);
+        columns[NEAREST_ENEMY].putFloat(tick * 4, (float) level.getNearestEnemyDistance());
+        previousX = x;
+
+        block.ticks++;
+        if (block.ticks == blockTicks) {
+            submitBlock();
+        }
+    }
+
+    /**
+     * Hands the current block to the writer and switches to the other one, waiting for the writer
+     * to finish with it first if it is still being written.
+     */
+    private void submitBlock() {
+        Block full = blocks[current];
+        pending[current] = writer.submit(() -> writeBlock(full));
+        current ^= 1;
+        if (pending[current] != null) {
+            try {
+                pending[current].get();
+            } catch (InterruptedException | ExecutionException ex) {
+                ex.printStackTrace();
+            }
+            pending[current] = null;
+        }
+        blocks[current].ticks = 0;
+    }
+
+    /**
+     * Compresses each column of a block and appends the block to the file. If the file cannot be
+     * written, the block is lost but the game carries on.
+     *
+     * @param block The block to write.
+     */
+    private void writeBlock(Block block) {
+        compressed.clear();
+        blockHeader.clear();
+        blockHeader.putInt(block.ticks);
+        for (int column = 0; column < COLUMNS; column++) {
+            ByteBuffer input = block.columns[column];
+            input.clear().limit(block.ticks * COLUMN_BYTES[column]);
+            int start = compressed.position();
+            deflater.reset();
+            deflater.setInput(input);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (!compressed.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(compressed.capacity() * 2);
+                    compressed.flip();
+                    larger.put(compressed);
+                    compressed = larger;
+                }
+                deflater.deflate(compressed);
+            }
+            blockHeader.putInt(compressed.position() - start);
+        }
+        blockHeader.flip();
+        compressed.flip();
+
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+            blockSizes = Arrays.copyOf(blockSizes, blockCount * 2);
+        }
+        blockOffsets[blockCount] = fileSize;
+        blockSizes[blockCount] = block.ticks;
+        blockCount++;
+        try {
+            fileSize += write(blockHeader, fileSize);
+            fileSize += write(compressed, fileSize);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a buffer to the file at a position.
+     *
+     * @param buffer   The bytes to write.
+     * @param position The position in the file.
+     * @return The number of bytes written.
+     * @throws IOException If the file cannot be written.
+     */
+    private int write(ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Writes the index of blocks and the outcome, then closes the file.
+     *
+     * @param outcome How the game ended, such as {@link #WIN}.
+     */
+    private void writeFooter(byte outcome) {
+        ByteBuffer footer = ByteBuffer.allocate(4 + blockCount * 12 + 1 + TRAILER_BYTES);
+        footer.putInt(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            footer.putLong(blockOffsets[i]).putInt(blockSizes[i]);
+        }
+        footer.put(outcome);
+        footer.putLong(fileSize).putInt(MAGIC);
+        footer.flip();
+        try {
+            write(footer, fileSize);
+            channel.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        deflater.end();
+    }
+
+    /**
+     * Writes the ticks recorded so far and ends the trace with how the game ended. The file is
+     * finished on the writer thread, so this returns straight away.
+     *
+     * @param outcome How the game ended, such as {@link #WIN}.
+     */
+    public void finish(byte outcome) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        Block last = blocks[current];
+        if (last.ticks > 0) {
+            writer.submit(() -> writeBlock(last));
+        }
+        writer.submit(() -> writeFooter(outcome));
+        writer.shutdown();
+    }
+
+    /**
+     * Ends the trace as unfinished if it was not finished yet, and waits until the file is written.
+     */
+    @Override
+    public void close() {
+        finish(UNFINISHED);
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
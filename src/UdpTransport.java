@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * An input transport that sends packets as UDP datagrams over a non-blocking channel.
+ */
+public class UdpTransport implements InputTransport {
+    private final DatagramChannel channel;
+
+    /**
+     * Opens a UDP transport bound to a local port and connected to the other player.
+     *
+     * @param localPort  The local port to receive packets on.
+     * @param remoteHost The host name of the other player.
+     * @param remotePort The port the other player receives packets on.
+     * @throws IOException If the channel cannot be opened or bound.
+     */
+    public UdpTransport(int localPort, String remoteHost, int remotePort) throws IOException {
+        this.channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(localPort));
+        channel.connect(new InetSocketAddress(remoteHost, remotePort));
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Sends a packet as a single datagram. A datagram that cannot be sent is dropped,
+     * like any other lost packet.
+     *
+     * @param packet The packet to send.
+     */
+    @Override
+    public void send(ByteBuffer packet) {
+        try {
+            channel.write(packet);
+        } catch (IOException ex) {
+            // the other player is not listening yet, treat it as packet loss
+        }
+    }
+
+    /**
+     * Receives the next datagram if one is waiting.
+     *
+     * @param packet The buffer to receive into.
+     * @return True if a datagram was received.
+     */
+    @Override
+    public boolean receive(ByteBuffer packet) {
+        packet.clear();
+        try {
+            if (channel.receive(packet) == null) {
+                return false;
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+        packet.flip();
+        return true;
+    }
+
+    /**
+     * Closes the underlying channel.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
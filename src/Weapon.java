@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+
 /**
  * Abstract class representing a weapon in the game.
  * Weapons can be collected by the player.
@@ -30,4 +32,26 @@ public abstract class Weapon extends GameObject{
     public boolean isCollected(){
         return isCollected;
     }
+
+    /**
+     * Writes the weapon's position and collected state to the snapshot buffer.
+     *
+     * @param buffer The buffer to write the state to.
+     */
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        super.writeState(buffer);
+        buffer.put((byte) (isCollected ? 1 : 0));
+    }
+
+    /**
+     * Restores the weapon's position and collected state from the snapshot buffer.
+     *
+     * @param buffer The buffer to read the state from.
+     */
+    @Override
+    public void readState(ByteBuffer buffer) {
+        super.readState(buffer);
+        isCollected = buffer.get() != 0;
+    }
 }
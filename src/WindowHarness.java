@@ -0,0 +1,61 @@
+import bagel.AbstractGame;
+import bagel.Input;
+import bagel.Window;
+import java.util.Properties;
+
+/**
+ * Runs the checks and benchmarks in the {@code main} methods of other classes inside a game window.
+ * Game objects load their sprites when they are created, which needs the window that bagel opens,
+ * so code that creates them outside the game runs in the frames of a window sized from the config.
+ */
+public class WindowHarness {
+
+    /**
+     * The work done in each frame of the window. A frame is created before the window opens, so it
+     * creates anything that loads sprites in its first update rather than when it is constructed.
+     */
+    public interface Frame {
+        /**
+         * Does the work of one frame.
+         *
+         * @param input The input of the frame.
+         * @return True to keep the window open for another frame, false to close it.
+         */
+        boolean update(Input input);
+    }
+
+    /**
+     * Runs a task in the first frame of a game window, then closes the window.
+     *
+     * @param props The game properties giving the window size.
+     * @param title The window title.
+     * @param task  The task to run.
+     */
+    public static void runInFirstFrame(Properties props, String title, Runnable task) {
+        run(props, title, input -> {
+            task.run();
+            return false;
+        });
+    }
+
+    /**
+     * Opens a game window and does the work of a frame in each of its frames, until the work asks for
+     * the window to close.
+     *
+     * @param props The game properties giving the window size.
+     * @param title The window title.
+     * @param frame The work done in each frame.
+     */
+    public static void run(Properties props, String title, Frame frame) {
+        AbstractGame window = new AbstractGame(Integer.parseInt(props.getProperty("window.width")),
+                Integer.parseInt(props.getProperty("window.height")), title) {
+            @Override
+            protected void update(Input input) {
+                if (!frame.update(input)) {
+                    Window.close();
+                }
+            }
+        };
+        window.run();
+    }
+}